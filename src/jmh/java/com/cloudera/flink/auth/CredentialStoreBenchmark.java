@@ -0,0 +1,118 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long {@link CredentialStore#load} takes to read password files of different sizes.
+ * The heap retained by the loaded store is printed after every iteration, as measured by the heap
+ * usage after a garbage collection with and without the store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CredentialStoreBenchmark {
+
+    /** Every user gets a distinct salt and digest, so that nothing can be shared. */
+    private static final String DIGEST = "r1Lx2b8S21.Y97ohCvNTj/";
+
+    /** Number of users in the password file. */
+    @Param({"10000", "100000", "1000000"})
+    public int users;
+
+    private Path passwordFile;
+
+    private CredentialStore store;
+
+    @Setup
+    public void setup() throws IOException {
+        Configurator.setRootLevel(Level.OFF);
+        passwordFile = Files.createTempFile("htpasswd", null);
+        try (BufferedWriter writer =
+                Files.newBufferedWriter(passwordFile, StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < users; i++) {
+                String suffix = String.format("%08x", i);
+                writer.write("user");
+                writer.write(suffix);
+                writer.write(":$apr1$");
+                writer.write(suffix);
+                writer.write('$');
+                writer.write(DIGEST.substring(0, DIGEST.length() - 6));
+                writer.write(suffix.substring(2));
+                writer.write('\n');
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(passwordFile);
+    }
+
+    @TearDown(org.openjdk.jmh.annotations.Level.Iteration)
+    public void measureRetainedHeap() {
+        long withStore = usedHeap();
+        int size = store.size();
+        store = null;
+        long retained = withStore - usedHeap();
+        System.out.printf(
+                "%nRetained heap of %d users: %.1f MiB, %d bytes per user%n",
+                size, retained / (1024.0 * 1024.0), retained / size);
+    }
+
+    @Benchmark
+    public CredentialStore load() throws IOException {
+        store = CredentialStore.load(passwordFile);
+        return store;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
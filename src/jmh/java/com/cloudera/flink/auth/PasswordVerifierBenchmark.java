@@ -0,0 +1,72 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.apache.commons.codec.digest.Md5Crypt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the verification of an apr1 hash by {@link Apr1PasswordVerifier}, compared to computing
+ * the encoded hash with {@code Md5Crypt} and decoding its digest.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PasswordVerifierBenchmark {
+
+    private CredentialRecord record;
+
+    private byte[] password;
+
+    @Setup
+    public void setup() {
+        record = CredentialRecord.parse("testusr", "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/");
+        password = "testpwd".getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public boolean apr1() {
+        return record.verify(password);
+    }
+
+    @Benchmark
+    public boolean md5Crypt() {
+        String computed = Md5Crypt.apr1Crypt(password.clone(), record.getSetting());
+        return record.matchesDigest(
+                Crypt64.decodeCrypt(
+                        computed.substring(computed.lastIndexOf('$') + 1),
+                        Crypt64.MD5_GROUPS,
+                        Apr1PasswordVerifier.DIGEST_LENGTH));
+    }
+}
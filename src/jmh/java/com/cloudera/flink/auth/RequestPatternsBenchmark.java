@@ -0,0 +1,94 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the authorization of a request by {@link RequestPatterns}, which is done for every
+ * request of a user with permissions. The rules resemble the REST API of Flink, every rule naming
+ * another job below {@code /jobs}, so that the trie branches at the job id.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestPatternsBenchmark {
+
+    /** Number of patterns of the user. */
+    @Param({"10", "100", "1000"})
+    public int rules;
+
+    private RequestPatterns patterns;
+
+    private String permittedUri;
+
+    private String wildcardUri;
+
+    private String forbiddenUri;
+
+    @Setup
+    public void setup() {
+        List<String> list = new ArrayList<>();
+        list.add("GET,HEAD /overview");
+        list.add("GET /jobs/*/status");
+        for (int i = 2; i < rules; i++) {
+            list.add((i % 2 == 0 ? "GET " : "PATCH ") + "/jobs/" + jobId(i) + "/**");
+        }
+        patterns = RequestPatterns.compile(list);
+        permittedUri = "/jobs/" + jobId(rules - 2) + "/vertices/" + jobId(0) + "/metrics?get=x";
+        wildcardUri = "/jobs/" + jobId(rules + 1) + "/status";
+        forbiddenUri = "/jobs/" + jobId(rules + 1) + "/vertices";
+    }
+
+    private static String jobId(int i) {
+        return String.format("%032x", i * 0x9e3779b97f4a7c15L);
+    }
+
+    @Benchmark
+    public boolean permitted() {
+        return patterns.matches("GET", permittedUri);
+    }
+
+    @Benchmark
+    public boolean permittedByWildcard() {
+        return patterns.matches("GET", wildcardUri);
+    }
+
+    @Benchmark
+    public boolean forbidden() {
+        return patterns.matches("GET", forbiddenUri);
+    }
+}
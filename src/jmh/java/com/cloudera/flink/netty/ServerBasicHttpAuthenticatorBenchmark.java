@@ -0,0 +1,179 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.shaded.netty4.io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.DefaultFullHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.FullHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaderNames;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpMethod;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpVersion;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.LastHttpContent;
+import org.apache.flink.shaded.netty4.io.netty.util.ReferenceCountUtil;
+
+import com.cloudera.flink.auth.CredentialStore;
+import com.cloudera.flink.auth.VerifiedCredentialCache;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ServerBasicHttpAuthenticator#channelRead} for every outcome of an authentication.
+ * The handler and its cache are shared by all benchmark threads like they are shared by the
+ * connections of a REST endpoint, while every thread drives its own {@link EmbeddedChannel}.
+ *
+ * <p>Rejected requests close the connection, so the rejecting benchmarks include the creation of a
+ * new channel, just like a client has to reconnect. Logging is turned off, the console output of
+ * the rejections would otherwise dominate the results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServerBasicHttpAuthenticatorBenchmark {
+
+    private static final String HASH = "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/";
+
+    /** Handler shared by all threads. */
+    @State(Scope.Benchmark)
+    public static class Endpoint {
+
+        /** Number of users in the password file. */
+        @Param({"1", "1000", "100000"})
+        public int users;
+
+        private ServerBasicHttpAuthenticator authenticator;
+
+        @Setup
+        public void setup() {
+            Configurator.setRootLevel(Level.OFF);
+            Map<String, String> credentials = new HashMap<>();
+            credentials.put("testusr", HASH);
+            for (int i = 1; i < users; i++) {
+                credentials.put("user" + i, HASH);
+            }
+            authenticator =
+                    ServerBasicHttpAuthenticator.builder(
+                                    CredentialStore.of(credentials), Collections.emptyMap())
+                            .setCache(new VerifiedCredentialCache(1000, Duration.ofHours(1)))
+                            .setMaxHeaderLength(4096)
+                            .build();
+        }
+    }
+
+    /** Channel and requests of a single thread. */
+    @State(Scope.Thread)
+    public static class Connection {
+
+        private EmbeddedChannel channel;
+
+        private FullHttpRequest success;
+
+        private FullHttpRequest wrongPassword;
+
+        private FullHttpRequest unknownUser;
+
+        private FullHttpRequest malformedHeader;
+
+        @Setup
+        public void setup(Endpoint endpoint) {
+            channel = new EmbeddedChannel(endpoint.authenticator);
+            success = request(basic("testusr:testpwd"));
+            wrongPassword = request(basic("testusr:wrongpwd"));
+            unknownUser = request(basic("unknown:testpwd"));
+            malformedHeader = request("Basic !!!");
+        }
+
+        @TearDown
+        public void tearDown() {
+            channel.finishAndReleaseAll();
+        }
+
+        private Object read(Endpoint endpoint, Object msg) {
+            if (!channel.isOpen()) {
+                channel = new EmbeddedChannel(endpoint.authenticator);
+            }
+            // The handler takes over a reference to the message, which is reused
+            channel.pipeline().fireChannelRead(ReferenceCountUtil.retain(msg));
+            Object read = channel.readInbound();
+            ReferenceCountUtil.release(read);
+            channel.releaseOutbound();
+            return read;
+        }
+
+        private static String basic(String credentials) {
+            return "Basic "
+                    + Base64.getEncoder()
+                            .encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static FullHttpRequest request(String authorization) {
+            FullHttpRequest request =
+                    new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/overview");
+            request.headers().set(HttpHeaderNames.AUTHORIZATION, authorization);
+            return request;
+        }
+    }
+
+    @Benchmark
+    public Object success(Endpoint endpoint, Connection connection) {
+        return connection.read(endpoint, connection.success);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object wrongPassword(Endpoint endpoint, Connection connection) {
+        return connection.read(endpoint, connection.wrongPassword);
+    }
+
+    @Benchmark
+    public Object unknownUser(Endpoint endpoint, Connection connection) {
+        return connection.read(endpoint, connection.unknownUser);
+    }
+
+    @Benchmark
+    public Object malformedHeader(Endpoint endpoint, Connection connection) {
+        return connection.read(endpoint, connection.malformedHeader);
+    }
+
+    @Benchmark
+    public Object nonHttpMessage(Endpoint endpoint, Connection connection) {
+        return connection.read(endpoint, LastHttpContent.EMPTY_LAST_CONTENT);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.rest;
+
+import org.apache.flink.configuration.Configuration;
+
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpResponseStatus;
+
+import com.cloudera.flink.config.BasicAuthOptions;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a real REST endpoint with clients which send a wrong password for an existing user, while
+ * clients with good credentials keep using their cached authentication. Every group consists of one
+ * good client and three flooding clients, the results are reported per kind of client. The flooding
+ * clients reconnect after every rejection, like a password guessing script has to.
+ *
+ * <p>Without the throttle every flooding request verifies a password hash on the event loop, with
+ * the throttle most of them are rejected before hashing.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RestBasicAuthFloodBenchmark {
+
+    /** Endpoint shared by all clients. */
+    @State(Scope.Benchmark)
+    public static class Endpoint {
+
+        /** Whether failed authentications are throttled. */
+        @Param({"false", "true"})
+        public boolean throttle;
+
+        private RestLoadEndpoint endpoint;
+
+        @Setup
+        public void setup() throws Exception {
+            Configurator.setRootLevel(Level.OFF);
+            Configuration authOptions = new Configuration();
+            authOptions.set(BasicAuthOptions.BASIC_AUTH_THROTTLE_ENABLED, throttle);
+            endpoint = new RestLoadEndpoint(true, authOptions);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            endpoint.close();
+        }
+    }
+
+    /** Client with good credentials. */
+    @State(Scope.Thread)
+    public static class GoodClient {
+
+        private RestLoadEndpoint.Client client;
+
+        @Setup
+        public void setup(Endpoint endpoint) {
+            client = endpoint.endpoint.newClient("testusr:testpwd", true);
+        }
+    }
+
+    /** Client with a wrong password. */
+    @State(Scope.Thread)
+    public static class BadClient {
+
+        private RestLoadEndpoint.Client client;
+
+        @Setup
+        public void setup(Endpoint endpoint) {
+            client = endpoint.endpoint.newClient("testusr:wrongpwd", true);
+        }
+    }
+
+    @Benchmark
+    @Group("flood")
+    @GroupThreads(1)
+    public HttpResponseStatus request(GoodClient client) throws Exception {
+        return RestLoadEndpoint.expect(HttpResponseStatus.OK, client.client.get());
+    }
+
+    @Benchmark
+    @Group("flood")
+    @GroupThreads(3)
+    public HttpResponseStatus badCredentials(BadClient client) throws Exception {
+        HttpResponseStatus status = client.client.get();
+        if (HttpResponseStatus.OK.equals(status)) {
+            throw new IllegalStateException("Bad credentials were accepted");
+        }
+        return status;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.rest;
+
+import org.apache.flink.configuration.Configuration;
+
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpResponseStatus;
+
+import com.cloudera.flink.config.BasicAuthOptions;
+import com.cloudera.flink.provider.SimulatedDirectoryCredentialProviderFactory;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a real REST endpoint with authenticated requests. Every benchmark thread is a client with
+ * its own connection and {@code ClientBasicHttpAuthenticator}, so {@code jmh.threads} sets the
+ * number of concurrent requests. The throughput mode reports the requests per millisecond the
+ * endpoint serves, the sample time mode the latency percentiles of a request.
+ *
+ * <p>The scenarios are:
+ *
+ * <ul>
+ *   <li>{@code disabled}: basic auth is disabled, the baseline of the endpoint itself
+ *   <li>{@code cold}: the cache is disabled and every request opens a new connection, so every
+ *       request verifies the password hash
+ *   <li>{@code cached}: keep-alive connections with the default cache, so only the first request of
+ *       a connection is verified
+ *   <li>{@code directory}: like {@code cold}, but the credentials come from the simulated directory
+ *       with its default latency, so only the lookups which miss the cache of the provider wait
+ * </ul>
+ *
+ * <p>{@link RestBasicAuthFloodBenchmark} adds clients with bad credentials to the cached scenario.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RestBasicAuthLoadBenchmark {
+
+    /** Endpoint shared by all clients. */
+    @State(Scope.Benchmark)
+    public static class Endpoint {
+
+        @Param({"disabled", "cold", "cached", "directory"})
+        public String scenario;
+
+        private RestLoadEndpoint endpoint;
+
+        @Setup
+        public void setup() throws Exception {
+            Configurator.setRootLevel(Level.OFF);
+            Configuration authOptions = new Configuration();
+            if ("cold".equals(scenario) || "directory".equals(scenario)) {
+                authOptions.set(BasicAuthOptions.BASIC_AUTH_CACHE_MAX_SIZE, 0);
+            }
+            if ("directory".equals(scenario)) {
+                authOptions.set(
+                        BasicAuthOptions.BASIC_AUTH_PROVIDER,
+                        SimulatedDirectoryCredentialProviderFactory.IDENTIFIER);
+            }
+            endpoint = new RestLoadEndpoint(!"disabled".equals(scenario), authOptions);
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            endpoint.close();
+        }
+    }
+
+    /** Client of a single thread. */
+    @State(Scope.Thread)
+    public static class Client {
+
+        private RestLoadEndpoint.Client client;
+
+        @Setup
+        public void setup(Endpoint endpoint) {
+            client =
+                    endpoint.endpoint.newClient(
+                            "testusr:testpwd",
+                            "disabled".equals(endpoint.scenario)
+                                    || "cached".equals(endpoint.scenario));
+        }
+    }
+
+    @Benchmark
+    public HttpResponseStatus request(Client client) throws Exception {
+        return RestLoadEndpoint.expect(HttpResponseStatus.OK, client.client.get());
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.rest;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.configuration.RestOptions;
+import org.apache.flink.runtime.rest.util.TestRestServerEndpoint;
+import org.apache.flink.runtime.rpc.RpcUtils;
+import org.apache.flink.runtime.webmonitor.RestfulGateway;
+import org.apache.flink.runtime.webmonitor.TestingRestfulGateway;
+
+import org.apache.flink.shaded.netty4.io.netty.bootstrap.Bootstrap;
+import org.apache.flink.shaded.netty4.io.netty.channel.Channel;
+import org.apache.flink.shaded.netty4.io.netty.channel.ChannelHandlerContext;
+import org.apache.flink.shaded.netty4.io.netty.channel.ChannelInitializer;
+import org.apache.flink.shaded.netty4.io.netty.channel.SimpleChannelInboundHandler;
+import org.apache.flink.shaded.netty4.io.netty.channel.nio.NioEventLoopGroup;
+import org.apache.flink.shaded.netty4.io.netty.channel.socket.SocketChannel;
+import org.apache.flink.shaded.netty4.io.netty.channel.socket.nio.NioSocketChannel;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.DefaultFullHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.FullHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.FullHttpResponse;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpClientCodec;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaderNames;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaderValues;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpMethod;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpObjectAggregator;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpResponseStatus;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpVersion;
+import org.apache.flink.shaded.netty4.io.netty.util.concurrent.DefaultThreadFactory;
+
+import com.cloudera.flink.config.BasicAuthOptions;
+import com.cloudera.flink.netty.ClientBasicHttpAuthenticator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A REST endpoint set up like the one of {@link RestBasicAuthTest}, together with the event loop of
+ * the clients which load it. Both live in the same process, so a load test needs nothing but the
+ * local machine.
+ */
+final class RestLoadEndpoint implements AutoCloseable {
+
+    private static final String PASSWORD_FILE =
+            requireNonNull(RestLoadEndpoint.class.getResource("/.htpasswd")).getFile();
+
+    private static final int MAX_CONTENT_LENGTH = 64 * 1024;
+
+    private static final long RESPONSE_TIMEOUT_SECONDS = 30;
+
+    private final RestServerEndpoint serverEndpoint;
+
+    private final InetSocketAddress address;
+
+    private final String uri;
+
+    private final NioEventLoopGroup clientGroup;
+
+    /**
+     * Starts the endpoint.
+     *
+     * @param authEnabled Whether the endpoint authenticates its requests
+     * @param authOptions Further basic auth options of the endpoint
+     */
+    RestLoadEndpoint(boolean authEnabled, Configuration authOptions) throws Exception {
+        Configuration serverConfig = new Configuration();
+        serverConfig.setString(RestOptions.BIND_PORT, "0");
+        serverConfig.setString(RestOptions.ADDRESS, "localhost");
+        serverConfig.set(BasicAuthOptions.BASIC_AUTH_ENABLED, authEnabled);
+        serverConfig.set(BasicAuthOptions.BASIC_AUTH_PWD_FILE, PASSWORD_FILE);
+        serverConfig.addAll(authOptions);
+
+        RestfulGateway restfulGateway = new TestingRestfulGateway.Builder().build();
+        RestServerEndpointITCase.TestVersionHandler testVersionHandler =
+                new RestServerEndpointITCase.TestVersionHandler(
+                        () -> CompletableFuture.completedFuture(restfulGateway),
+                        RpcUtils.INF_TIMEOUT);
+        serverEndpoint =
+                TestRestServerEndpoint.builder(serverConfig)
+                        .withHandler(testVersionHandler.getMessageHeaders(), testVersionHandler)
+                        .build();
+        serverEndpoint.start();
+        address = requireNonNull(serverEndpoint.getServerAddress());
+        uri = "/v1" + testVersionHandler.getMessageHeaders().getTargetRestEndpointURL();
+        // Daemon threads, a failed benchmark must not keep its fork alive
+        clientGroup = new NioEventLoopGroup(0, new DefaultThreadFactory("rest-load-client", true));
+    }
+
+    /**
+     * Creates a client which sends its requests with the given credentials.
+     *
+     * @param credentials The credentials in the form user:password
+     * @param keepAlive Whether to reuse the connection for the next request, otherwise every
+     *     request is sent on a new connection like the requests of a command line client
+     */
+    Client newClient(String credentials, boolean keepAlive) {
+        return new Client(credentials, keepAlive);
+    }
+
+    /**
+     * Checks the status of a response, a load test must not silently measure errors.
+     *
+     * @return The status
+     */
+    static HttpResponseStatus expect(HttpResponseStatus expected, HttpResponseStatus status) {
+        if (!expected.equals(status)) {
+            throw new IllegalStateException("Expected " + expected + " but got " + status);
+        }
+        return status;
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            clientGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        } finally {
+            serverEndpoint.closeAsync().get();
+        }
+    }
+
+    /**
+     * A single connection to the endpoint. Requests are sent one after the other, so the number of
+     * clients is the number of concurrent requests. The connection is closed with the endpoint, JMH
+     * may tear down the endpoint before the clients of other threads.
+     */
+    final class Client {
+
+        private final Bootstrap bootstrap;
+
+        private final boolean keepAlive;
+
+        private Channel channel;
+
+        private ResponseHandler responseHandler;
+
+        private Client(String credentials, boolean keepAlive) {
+            ClientBasicHttpAuthenticator authenticator =
+                    new ClientBasicHttpAuthenticator(credentials);
+            this.keepAlive = keepAlive;
+            this.bootstrap =
+                    new Bootstrap()
+                            .group(clientGroup)
+                            .channel(NioSocketChannel.class)
+                            .handler(
+                                    new ChannelInitializer<SocketChannel>() {
+                                        @Override
+                                        protected void initChannel(SocketChannel ch) {
+                                            ch.pipeline()
+                                                    .addLast(new HttpClientCodec())
+                                                    .addLast(
+                                                            new HttpObjectAggregator(
+                                                                    MAX_CONTENT_LENGTH))
+                                                    .addLast(authenticator)
+                                                    .addLast(new ResponseHandler());
+                                        }
+                                    });
+        }
+
+        /**
+         * Sends a request and waits for its response. The connection is reopened if the endpoint
+         * rejected the previous request, since rejections close the connection.
+         *
+         * @return The status of the response
+         */
+        HttpResponseStatus get() throws Exception {
+            if (channel == null || !channel.isActive()) {
+                channel = bootstrap.connect(address).sync().channel();
+                responseHandler = channel.pipeline().get(ResponseHandler.class);
+            }
+            CompletableFuture<HttpResponseStatus> response = new CompletableFuture<>();
+            responseHandler.pending = response;
+            FullHttpRequest request =
+                    new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+            request.headers()
+                    .set(HttpHeaderNames.HOST, address.getHostString())
+                    .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            channel.writeAndFlush(request);
+            HttpResponseStatus status = response.get(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!keepAlive || !HttpResponseStatus.OK.equals(status)) {
+                // Closed by the client as well, the next request must not race the server
+                channel.close().sync();
+            }
+            return status;
+        }
+    }
+
+    /** Completes the pending request of its connection. */
+    private static final class ResponseHandler
+            extends SimpleChannelInboundHandler<FullHttpResponse> {
+
+        private volatile CompletableFuture<HttpResponseStatus> pending;
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+            pending.complete(response.status());
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            CompletableFuture<HttpResponseStatus> response = pending;
+            if (response != null) {
+                response.completeExceptionally(new ClosedChannelException());
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            CompletableFuture<HttpResponseStatus> response = pending;
+            if (response != null) {
+                response.completeExceptionally(new IOException("Request failed", cause));
+            }
+            ctx.close();
+        }
+    }
+}
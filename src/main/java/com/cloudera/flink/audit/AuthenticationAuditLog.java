@@ -0,0 +1,469 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.audit;
+
+import org.apache.flink.util.concurrent.ExecutorThreadFactory;
+
+import com.cloudera.flink.metrics.AuthenticationOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+
+/**
+ * Records the authentication outcomes of an endpoint off the event loop. Recording an event writes
+ * it to a slot of a bounded ring buffer, the bounded queue of Dmitry Vyukov, without locking or
+ * allocating. A background thread drains the buffer and writes the records in batches. If the
+ * buffer is full, events are dropped and counted instead of blocking the event loop.
+ *
+ * <p>Failures repeat: a scanner tries thousands of passwords, a misconfigured client retries
+ * forever. The first failure of an outcome, user and address within a summary interval is written
+ * as is, its repetitions are only counted and written as a single summary at the end of the
+ * interval. The number of dropped events is written with the summaries as well.
+ */
+public final class AuthenticationAuditLog implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuthenticationAuditLog.class);
+
+    /** Logger of the records, so that they can be routed to their own file. */
+    private static final Logger AUDIT = LoggerFactory.getLogger("com.cloudera.flink.audit");
+
+    /** Maximum number of records written at once. */
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    /** Time the background thread sleeps while the buffer is empty. */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /** Maximum number of distinct failures counted per summary interval. */
+    private static final int MAX_SUMMARIES = 10000;
+
+    /** Maximum number of characters of a user or a path in a record. */
+    private static final int MAX_VALUE_LENGTH = 256;
+
+    private final int mask;
+
+    /** Sequence of every slot, telling producers and the consumer whose turn it is. */
+    private final AtomicLongArray sequences;
+
+    private final AuthenticationOutcome[] outcomes;
+
+    private final String[] users;
+
+    private final Object[] addresses;
+
+    private final String[] paths;
+
+    private final long[] latencies;
+
+    private final long[] timestamps;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final long summaryIntervalNanos;
+
+    private final Sink sink;
+
+    /** Position of the next slot to drain, only accessed by the draining thread. */
+    private long head;
+
+    /** Repeated failures of the current summary interval, only accessed by the draining thread. */
+    private final Map<Repetition.Key, Repetition> repetitions = new HashMap<>();
+
+    private long unsummarized;
+
+    private long droppedReported;
+
+    private long nextSummaryNanos;
+
+    @Nullable private volatile Thread thread;
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates an audit log which is drained by calling {@link #drain} until {@link #start} is
+     * called.
+     *
+     * @param capacity Number of events the buffer holds, rounded up to a power of two
+     * @param summaryInterval Interval in which repeated failures are summarized
+     * @param sink Receives the records
+     */
+    public AuthenticationAuditLog(int capacity, Duration summaryInterval, Sink sink) {
+        checkArgument(capacity > 0, "Audit log must hold at least one event.");
+        checkArgument(capacity <= 1 << 30, "Audit log capacity is too large.");
+        checkArgument(!summaryInterval.isNegative(), "Summary interval must not be negative.");
+        int size = Integer.highestOneBit(capacity);
+        size = size < capacity ? size << 1 : size;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.outcomes = new AuthenticationOutcome[size];
+        this.users = new String[size];
+        this.addresses = new Object[size];
+        this.paths = new String[size];
+        this.latencies = new long[size];
+        this.timestamps = new long[size];
+        this.summaryIntervalNanos = summaryInterval.toNanos();
+        this.sink = sink;
+        this.nextSummaryNanos = System.nanoTime() + summaryIntervalNanos;
+    }
+
+    /**
+     * Creates an audit log writing to the {@code com.cloudera.flink.audit} logger and starts its
+     * thread.
+     */
+    public static AuthenticationAuditLog start(int capacity, Duration summaryInterval) {
+        AuthenticationAuditLog auditLog =
+                new AuthenticationAuditLog(
+                        capacity, summaryInterval, records -> records.forEach(AUDIT::info));
+        auditLog.start();
+        return auditLog;
+    }
+
+    /** Starts the thread draining the buffer. */
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new ExecutorThreadFactory("flink-basic-auth-audit").newThread(this::run);
+            thread.start();
+        }
+    }
+
+    /**
+     * Records the outcome of an authentication. Never blocks, the event is dropped if the buffer is
+     * full.
+     *
+     * @param outcome The outcome of the authentication
+     * @param user The authenticated user, null if unknown
+     * @param address The address the request came from, null if unknown
+     * @param path The URI of the request
+     * @param latencyNanos Time it took to authenticate the request
+     * @return False if the event was dropped
+     */
+    public boolean record(
+            AuthenticationOutcome outcome,
+            @Nullable String user,
+            @Nullable Object address,
+            @Nullable String path,
+            long latencyNanos) {
+        long position = tail.get();
+        int slot;
+        while (true) {
+            slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The consumer has not yet drained the slot of the previous round
+                dropped.increment();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        outcomes[slot] = outcome;
+        users[slot] = user;
+        addresses[slot] = address;
+        paths[slot] = path;
+        latencies[slot] = latencyNanos;
+        timestamps[slot] = System.currentTimeMillis();
+        // Publishes the fields to the consumer
+        sequences.lazySet(slot, position + 1);
+        return true;
+    }
+
+    /** Returns the number of events which were dropped because the buffer was full. */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Drains the buffered events and writes their records, summarizing the repeated failures once
+     * the summary interval has passed. Must only be called by a single thread at a time.
+     *
+     * @param nowNanos The current {@link System#nanoTime()}
+     * @return The number of drained events
+     */
+    public int drain(long nowNanos) {
+        List<String> records = new ArrayList<>();
+        int drained = 0;
+        int slot;
+        while (records.size() < MAX_BATCH_SIZE
+                && sequences.get(slot = (int) head & mask) == head + 1) {
+            add(records, slot);
+            outcomes[slot] = null;
+            users[slot] = null;
+            addresses[slot] = null;
+            paths[slot] = null;
+            // Hands the slot to the producers of the next round
+            sequences.lazySet(slot, head + mask + 1);
+            head++;
+            drained++;
+        }
+        if (nowNanos - nextSummaryNanos >= 0) {
+            summarize(records);
+            nextSummaryNanos = nowNanos + summaryIntervalNanos;
+        }
+        if (!records.isEmpty()) {
+            sink.write(records);
+        }
+        return drained;
+    }
+
+    private void add(List<String> records, int slot) {
+        AuthenticationOutcome outcome = outcomes[slot];
+        if (outcome != AuthenticationOutcome.SUCCESS) {
+            Repetition.Key key = new Repetition.Key(outcome, users[slot], addresses[slot]);
+            Repetition repetition = repetitions.get(key);
+            if (repetition != null) {
+                repetition.count++;
+                repetition.lastPath = paths[slot];
+                return;
+            }
+            if (repetitions.size() < MAX_SUMMARIES) {
+                repetitions.put(key, new Repetition(key));
+            } else {
+                unsummarized++;
+            }
+        }
+        StringBuilder record = new StringBuilder(128);
+        record.append("time=").append(Instant.ofEpochMilli(timestamps[slot]));
+        appendEvent(record, outcome, users[slot], addresses[slot]);
+        record.append(" path=");
+        appendPath(record, paths[slot]);
+        record.append(" latencyMicros=").append(TimeUnit.NANOSECONDS.toMicros(latencies[slot]));
+        records.add(record.toString());
+    }
+
+    private void summarize(List<String> records) {
+        String interval = Duration.ofNanos(summaryIntervalNanos).toString();
+        for (Repetition repetition : repetitions.values()) {
+            if (repetition.count > 0) {
+                StringBuilder record = new StringBuilder(128);
+                record.append("summary=").append(interval);
+                appendEvent(
+                        record,
+                        repetition.key.outcome,
+                        repetition.key.user,
+                        repetition.key.address);
+                record.append(" repeated=").append(repetition.count).append(" lastPath=");
+                appendPath(record, repetition.lastPath);
+                records.add(record.toString());
+            }
+        }
+        repetitions.clear();
+        if (unsummarized > 0) {
+            records.add(
+                    "summary="
+                            + interval
+                            + " unsummarized="
+                            + unsummarized
+                            + " reason=too many distinct failures");
+            unsummarized = 0;
+        }
+        long droppedTotal = dropped.sum();
+        if (droppedTotal > droppedReported) {
+            records.add(
+                    "summary="
+                            + interval
+                            + " dropped="
+                            + (droppedTotal - droppedReported)
+                            + " reason=buffer full");
+            droppedReported = droppedTotal;
+        }
+    }
+
+    private static void appendEvent(
+            StringBuilder record,
+            AuthenticationOutcome outcome,
+            @Nullable String user,
+            @Nullable Object address) {
+        record.append(" outcome=").append(outcome.getMetricName()).append(" user=");
+        appendValue(record, user);
+        record.append(" address=");
+        appendValue(
+                record,
+                address instanceof InetAddress
+                        ? ((InetAddress) address).getHostAddress()
+                        : address == null ? null : address.toString());
+    }
+
+    /** Appends the path of a URI, the query may carry secrets. */
+    private static void appendPath(StringBuilder record, @Nullable String uri) {
+        int query = uri == null ? -1 : uri.indexOf('?');
+        appendValue(record, query < 0 ? uri : uri.substring(0, query));
+    }
+
+    /**
+     * Appends a value which may come from a client. Values containing whitespace, quotes or control
+     * characters are quoted and escaped, so that a client cannot forge records.
+     */
+    static void appendValue(StringBuilder record, @Nullable String value) {
+        if (value == null) {
+            record.append('-');
+            return;
+        }
+        boolean truncated = value.length() > MAX_VALUE_LENGTH;
+        String shown = truncated ? value.substring(0, MAX_VALUE_LENGTH) : value;
+        boolean quote = shown.isEmpty() || truncated;
+        for (int i = 0; i < shown.length() && !quote; i++) {
+            char c = shown.charAt(i);
+            quote = c <= ' ' || c == '"' || c == '\\' || c == '=' || c >= 0x7F;
+        }
+        if (!quote) {
+            record.append(shown);
+            return;
+        }
+        record.append('"');
+        for (int i = 0; i < shown.length(); i++) {
+            char c = shown.charAt(i);
+            if (c == '"' || c == '\\') {
+                record.append('\\').append(c);
+            } else if (c < ' ' || c == 0x7F) {
+                record.append(String.format("\\u%04x", (int) c));
+            } else {
+                record.append(c);
+            }
+        }
+        record.append(truncated ? "...\"" : "\"");
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (drain(System.nanoTime()) == 0) {
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+                }
+            } catch (Throwable t) {
+                LOG.error("Unexpected error while writing the authentication audit log", t);
+            }
+        }
+    }
+
+    /** Stops the thread, writing the remaining events and summaries. */
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        Thread current = thread;
+        if (current != null) {
+            LockSupport.unpark(current);
+            current.join();
+        }
+        while (drain(System.nanoTime()) > 0) {
+            // Drained in batches
+        }
+        nextSummaryNanos = System.nanoTime();
+        drain(nextSummaryNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "AuthenticationAuditLog{capacity="
+                + (mask + 1)
+                + ", summaryInterval="
+                + Duration.ofNanos(summaryIntervalNanos)
+                + ", dropped="
+                + getDroppedCount()
+                + '}';
+    }
+
+    /** Receives the records of the audit log. */
+    @FunctionalInterface
+    public interface Sink {
+
+        /**
+         * Writes a batch of records, called by the draining thread.
+         *
+         * @param records The records, one line each
+         */
+        void write(List<String> records);
+    }
+
+    /** The repetitions of a failure within the current summary interval. */
+    private static final class Repetition {
+
+        private final Key key;
+
+        private long count;
+
+        @Nullable private String lastPath;
+
+        private Repetition(Key key) {
+            this.key = key;
+        }
+
+        private static final class Key {
+
+            private final AuthenticationOutcome outcome;
+
+            @Nullable private final String user;
+
+            @Nullable private final Object address;
+
+            private Key(
+                    AuthenticationOutcome outcome,
+                    @Nullable String user,
+                    @Nullable Object address) {
+                this.outcome = outcome;
+                this.user = user;
+                this.address = address;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) {
+                    return true;
+                }
+                if (!(o instanceof Key)) {
+                    return false;
+                }
+                Key that = (Key) o;
+                return outcome == that.outcome
+                        && Objects.equals(user, that.user)
+                        && Objects.equals(address, that.address);
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(outcome, user, address);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+
+/**
+ * Bounds the authentications which wait for a password verification or a credential lookup. Every
+ * waiting request is retained until its result arrives, so without a bound a login storm against a
+ * slow provider or a saturated verification executor would pile up requests until the heap runs
+ * out. Requests beyond the bound are shed right away and asked to retry later.
+ *
+ * <p>Requests authenticated by their connection, a session cookie or the verified cache never wait
+ * and so never take a permit. They are the fast lane which keeps serving known clients while new
+ * logins are shed.
+ */
+public final class AdmissionControl {
+
+    private final int maxPending;
+
+    private final Duration retryAfter;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Creates the admission control.
+     *
+     * @param maxPending Maximum number of authentications waiting at the same time
+     * @param retryAfter Time after which a shed request should be retried
+     */
+    public AdmissionControl(int maxPending, Duration retryAfter) {
+        checkArgument(maxPending > 0, "At least one pending authentication must be admitted.");
+        checkArgument(!retryAfter.isNegative(), "Retry after must not be negative.");
+        this.maxPending = maxPending;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Takes a permit for an authentication which is about to wait. Every admitted authentication
+     * must be completed with {@link #release()}.
+     *
+     * @return True if the authentication is admitted, false if it must be shed
+     */
+    public boolean tryAdmit() {
+        int current;
+        do {
+            current = pending.get();
+            if (current >= maxPending) {
+                return false;
+            }
+        } while (!pending.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /** Returns the permit of an admitted authentication once it has completed. */
+    public void release() {
+        pending.decrementAndGet();
+    }
+
+    /** Returns the number of authentications waiting right now. */
+    public int getPending() {
+        return pending.get();
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionControl{maxPending="
+                + maxPending
+                + ", retryAfter="
+                + retryAfter
+                + ", pending="
+                + pending.get()
+                + '}';
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Verifies salted MD5 hashes as described in
+ * http://httpd.apache.org/docs/2.2/misc/password_encryptions.html.
+ *
+ * <p>The 1000 rounds of MD5 are computed on a digest instance and a buffer of the verifying thread,
+ * taking the salt from the record as it was decoded from the password file. Unlike {@code
+ * Md5Crypt.apr1Crypt} no new digest, no temporary arrays and no encoded hash are created per
+ * verification, the computed digest is compared to the stored one directly.
+ */
+final class Apr1PasswordVerifier implements PasswordVerifier {
+
+    static final String PREFIX = "$apr1$";
+
+    static final int DIGEST_LENGTH = 16;
+
+    private static final byte[] MAGIC = PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+    private static final int ROUNDS = 1000;
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    @Override
+    public boolean verify(CredentialRecord record, byte[] password) {
+        State state = STATE.get();
+        MessageDigest md5 = state.md5;
+        byte[] digest = state.digest;
+
+        // The alternate sum of password, salt and password
+        md5.update(password);
+        record.updateWithSalt(md5);
+        md5.update(password);
+        state.finish();
+
+        md5.update(password);
+        md5.update(MAGIC);
+        record.updateWithSalt(md5);
+        for (int remaining = password.length; remaining > 0; remaining -= DIGEST_LENGTH) {
+            md5.update(digest, 0, Math.min(remaining, DIGEST_LENGTH));
+        }
+        // Every set bit of the length adds a zero byte, every cleared one the first password byte
+        for (int length = password.length; length > 0; length >>>= 1) {
+            md5.update((length & 1) != 0 ? 0 : password[0]);
+        }
+        state.finish();
+
+        for (int i = 0; i < ROUNDS; i++) {
+            if ((i & 1) != 0) {
+                md5.update(password);
+            } else {
+                md5.update(digest, 0, DIGEST_LENGTH);
+            }
+            if (i % 3 != 0) {
+                record.updateWithSalt(md5);
+            }
+            if (i % 7 != 0) {
+                md5.update(password);
+            }
+            if ((i & 1) != 0) {
+                md5.update(digest, 0, DIGEST_LENGTH);
+            } else {
+                md5.update(password);
+            }
+            state.finish();
+        }
+        return record.matchesDigest(digest);
+    }
+
+    /** The digest instance and the intermediate digest of a thread. */
+    private static final class State {
+
+        private final MessageDigest md5;
+
+        private final byte[] digest = new byte[DIGEST_LENGTH];
+
+        private State() {
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 is not available", e);
+            }
+        }
+
+        /** Completes the digest into the buffer and resets the instance. */
+        private void finish() {
+            try {
+                md5.digest(digest, 0, DIGEST_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalStateException("Unexpected MD5 digest length", e);
+            }
+        }
+    }
+}
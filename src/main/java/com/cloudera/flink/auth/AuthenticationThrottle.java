@@ -0,0 +1,239 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import javax.annotation.Nullable;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+
+/**
+ * Limits the failed authentications per source address and per user, so that guessing passwords
+ * cannot make the endpoint spend its CPU on hashing. Every failure takes a token from the buckets
+ * of its address and its user, and a bucket regains one token per refill interval up to its burst
+ * size. Authentications whose bucket is empty are rejected before the password is hashed.
+ *
+ * <p>A bucket is stored as the time at which it is full again, the generic cell rate algorithm, so
+ * an entry is a single number. The buckets are split into segments like the {@link
+ * VerifiedCredentialCache}, each of which is bounded. Buckets which are full again carry no
+ * information and are evicted when their segment records the next failure.
+ */
+public final class AuthenticationThrottle {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    @Nullable private final TokenBuckets<Object> addresses;
+
+    @Nullable private final TokenBuckets<String> users;
+
+    /**
+     * Creates the throttle.
+     *
+     * @param addressBurst Failures allowed per address in a row, 0 disables the address limit
+     * @param addressRefillInterval Time after which an address may fail once more
+     * @param userBurst Failures allowed per user in a row, 0 disables the user limit
+     * @param userRefillInterval Time after which a user may fail once more
+     * @param maxEntries Maximum number of addresses and of users tracked at the same time
+     */
+    public AuthenticationThrottle(
+            int addressBurst,
+            Duration addressRefillInterval,
+            int userBurst,
+            Duration userRefillInterval,
+            int maxEntries) {
+        checkArgument(maxEntries > 0, "Throttle must track at least one entry.");
+        this.addresses =
+                addressBurst > 0
+                        ? new TokenBuckets<>(addressBurst, addressRefillInterval, maxEntries)
+                        : null;
+        this.users =
+                userBurst > 0
+                        ? new TokenBuckets<>(userBurst, userRefillInterval, maxEntries)
+                        : null;
+    }
+
+    /**
+     * Checks whether an authentication must be rejected without verifying its password.
+     *
+     * @param address Source address of the request, null if unknown
+     * @param user User of the request, null if the user is unknown
+     * @param nowNanos The current {@link System#nanoTime()}
+     * @return True if the address or the user failed too often recently
+     */
+    public boolean isThrottled(@Nullable Object address, @Nullable String user, long nowNanos) {
+        return (addresses != null && address != null && addresses.isEmpty(address, nowNanos))
+                || (users != null && user != null && users.isEmpty(user, nowNanos));
+    }
+
+    /**
+     * Records a failed authentication.
+     *
+     * @param address Source address of the request, null if unknown
+     * @param user User of the request, null if the user is unknown
+     * @param nowNanos The current {@link System#nanoTime()}
+     */
+    public void recordFailure(@Nullable Object address, @Nullable String user, long nowNanos) {
+        if (addresses != null && address != null) {
+            addresses.take(address, nowNanos);
+        }
+        if (users != null && user != null) {
+            users.take(user, nowNanos);
+        }
+    }
+
+    /** Returns the time until a throttled request should be retried at the latest. */
+    public Duration getRetryAfter() {
+        long nanos =
+                Math.max(
+                        addresses == null ? 0 : addresses.refillIntervalNanos,
+                        users == null ? 0 : users.refillIntervalNanos);
+        return Duration.ofNanos(nanos);
+    }
+
+    /** Returns the number of tracked addresses and users. */
+    public int size() {
+        return (addresses == null ? 0 : addresses.size()) + (users == null ? 0 : users.size());
+    }
+
+    @Override
+    public String toString() {
+        return "AuthenticationThrottle{addresses="
+                + (addresses == null ? "unlimited" : addresses)
+                + ", users="
+                + (users == null ? "unlimited" : users)
+                + '}';
+    }
+
+    private static final class TokenBuckets<K> {
+
+        private final int burst;
+
+        private final long refillIntervalNanos;
+
+        /** How far the full time of a bucket may lie in the future for it to have a token. */
+        private final long maxDelayNanos;
+
+        private final Segment<K>[] segments;
+
+        @SuppressWarnings("unchecked")
+        private TokenBuckets(int burst, Duration refillInterval, int maxEntries) {
+            checkArgument(
+                    !refillInterval.isNegative() && !refillInterval.isZero(),
+                    "Throttle refill interval must be positive.");
+            this.burst = burst;
+            this.refillIntervalNanos = refillInterval.toNanos();
+            this.maxDelayNanos = (burst - 1) * refillIntervalNanos;
+            int segmentCount = Math.min(SEGMENT_COUNT, maxEntries);
+            this.segments = new Segment[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                // Distribute the remainder so that the total capacity is exactly maxEntries
+                int capacity = maxEntries / segmentCount + (i < maxEntries % segmentCount ? 1 : 0);
+                segments[i] = new Segment<>(capacity);
+            }
+        }
+
+        boolean isEmpty(K key, long now) {
+            return segmentFor(key).isEmpty(key, now, maxDelayNanos);
+        }
+
+        void take(K key, long now) {
+            segmentFor(key).take(key, now, refillIntervalNanos);
+        }
+
+        int size() {
+            int size = 0;
+            for (Segment<K> segment : segments) {
+                size += segment.size();
+            }
+            return size;
+        }
+
+        private Segment<K> segmentFor(K key) {
+            int h = key.hashCode();
+            return segments[Math.floorMod(h ^ (h >>> 16), segments.length)];
+        }
+
+        @Override
+        public String toString() {
+            return "{burst="
+                    + burst
+                    + ", refillInterval="
+                    + Duration.ofNanos(refillIntervalNanos)
+                    + ", size="
+                    + size()
+                    + '}';
+        }
+    }
+
+    private static final class Segment<K> {
+
+        private final LinkedHashMap<K, Bucket> buckets;
+
+        private Segment(int capacity) {
+            this.buckets =
+                    new LinkedHashMap<K, Bucket>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<K, Bucket> eldest) {
+                            return size() > capacity;
+                        }
+                    };
+        }
+
+        synchronized boolean isEmpty(K key, long now, long maxDelayNanos) {
+            Bucket bucket = buckets.get(key);
+            return bucket != null && bucket.fullAt - now > maxDelayNanos;
+        }
+
+        synchronized void take(K key, long now, long refillIntervalNanos) {
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket(now);
+                buckets.put(key, bucket);
+            }
+            bucket.fullAt = Math.max(bucket.fullAt, now) + refillIntervalNanos;
+
+            // The least recently used buckets come first, the idle ones among them are dropped
+            Iterator<Bucket> iterator = buckets.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().fullAt - now > 0) {
+                    break;
+                }
+                iterator.remove();
+            }
+        }
+
+        synchronized int size() {
+            return buckets.size();
+        }
+    }
+
+    private static final class Bucket {
+
+        /** The {@link System#nanoTime()} at which the bucket is full again. */
+        private long fullAt;
+
+        private Bucket(long fullAt) {
+            this.fullAt = fullAt;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.apache.flink.util.concurrent.FutureUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.flink.util.Preconditions.checkArgument;
+
+/**
+ * Provides the credentials of a slow backend, like a remote directory, from a cache. Unknown users
+ * are cached as well, so repeated attempts with an unknown user do not reach the backend.
+ *
+ * <p>Users missing from the cache are looked up in batches. A batch is sent as soon as a lookup
+ * arrives while fewer than the maximum number of batches are in flight, so a single lookup is not
+ * delayed. Lookups arriving while the maximum number of batches is in flight are queued and sent
+ * together once a batch completes, so the number of round trips drops as the load grows. Concurrent
+ * lookups of the same user share a single future. A batch the backend does not answer within the
+ * lookup timeout fails, so a hung backend cannot hold the batches in flight forever.
+ *
+ * <p>Cached users are keyed by their UTF-8 encoded name and looked up with a key owned by the
+ * calling thread, so {@link #getIfPresent} and {@link #isCurrent} do not allocate.
+ */
+public final class CachingCredentialProvider implements CredentialProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingCredentialProvider.class);
+
+    private static final ThreadLocal<UserKey> PROBE_KEY = ThreadLocal.withInitial(UserKey::new);
+
+    /** Backend looking up the credentials of several users in one round trip. */
+    @FunctionalInterface
+    public interface BatchLookup {
+
+        /**
+         * Looks up the credentials of users. Must not block, the lookup is started on the netty
+         * event loop.
+         *
+         * @param users The users to look up
+         * @return Future of the credentials of the users which exist by their name
+         */
+        CompletableFuture<Map<String, CredentialRecord>> lookup(Set<String> users);
+
+        /** Releases the resources of the backend, like its connections and threads. */
+        default void close() {}
+    }
+
+    private final BatchLookup backend;
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final int maxBatchSize;
+
+    private final int maxBatchesInFlight;
+
+    private final long lookupTimeoutNanos;
+
+    private final Map<UserKey, Entry> entries = new ConcurrentHashMap<>();
+
+    /** Lookups of users which are queued or in flight, guarded by itself. */
+    private final Map<String, CompletableFuture<CredentialRecord>> pending = new HashMap<>();
+
+    /** Users waiting for the next batch, guarded by {@link #pending}. */
+    private final Set<String> queued = new LinkedHashSet<>();
+
+    /** Guarded by {@link #pending}. */
+    private int batchesInFlight;
+
+    private final LongAdder batchCount = new LongAdder();
+
+    private final LongAdder lookupCount = new LongAdder();
+
+    /**
+     * Creates the provider.
+     *
+     * @param backend The backend looking up the credentials
+     * @param maxSize Maximum number of cached users
+     * @param ttl Time after which the credentials of a user are looked up again
+     * @param maxBatchSize Maximum number of users looked up in one round trip
+     * @param maxBatchesInFlight Maximum number of concurrent round trips
+     * @param lookupTimeout Time after which a round trip which is still in flight fails
+     */
+    public CachingCredentialProvider(
+            BatchLookup backend,
+            int maxSize,
+            Duration ttl,
+            int maxBatchSize,
+            int maxBatchesInFlight,
+            Duration lookupTimeout) {
+        checkArgument(maxSize > 0, "Cache size must be positive.");
+        checkArgument(!ttl.isNegative() && !ttl.isZero(), "Cache TTL must be positive.");
+        checkArgument(maxBatchSize > 0, "Batch size must be positive.");
+        checkArgument(maxBatchesInFlight > 0, "Batches in flight must be positive.");
+        checkArgument(
+                !lookupTimeout.isNegative() && !lookupTimeout.isZero(),
+                "Lookup timeout must be positive.");
+        this.backend = requireNonNull(backend);
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchesInFlight = maxBatchesInFlight;
+        this.lookupTimeoutNanos = lookupTimeout.toNanos();
+    }
+
+    @Nullable
+    @Override
+    public CredentialRecord getIfPresent(byte[] user, int offset, int length) {
+        UserKey probe = PROBE_KEY.get();
+        probe.set(user, offset, length, UserIndex.hash(user, offset, length));
+        Entry entry = get(probe);
+        return entry != null && entry.isValid(System.nanoTime()) ? entry.credentials : null;
+    }
+
+    @Override
+    public CompletableFuture<CredentialRecord> lookup(String user) {
+        Entry entry = entries.get(UserKey.of(user));
+        if (entry != null && entry.isValid(System.nanoTime())) {
+            return CompletableFuture.completedFuture(entry.credentials);
+        }
+        CompletableFuture<CredentialRecord> lookup;
+        Set<String> batch;
+        synchronized (pending) {
+            lookup = pending.get(user);
+            if (lookup != null) {
+                return lookup;
+            }
+            lookup = new CompletableFuture<>();
+            pending.put(user, lookup);
+            queued.add(user);
+            batch = nextBatch();
+        }
+        if (batch != null) {
+            send(batch);
+        }
+        return lookup;
+    }
+
+    @Override
+    public boolean isCurrent(CredentialRecord credentials) {
+        UserKey probe = PROBE_KEY.get();
+        probe.set(credentials);
+        Entry entry = get(probe);
+        return entry != null
+                && entry.credentials == credentials
+                && entry.isValid(System.nanoTime());
+    }
+
+    /** Closes the backend, lookups sent afterwards fail. */
+    @Override
+    public void close() {
+        backend.close();
+    }
+
+    /** Returns the number of round trips to the backend. */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    /** Returns the number of users looked up in the backend. */
+    public long getLookupCount() {
+        return lookupCount.sum();
+    }
+
+    /** Returns the number of cached users, including expired ones. */
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return "CachingCredentialProvider{backend="
+                + backend
+                + ", maxSize="
+                + maxSize
+                + ", ttl="
+                + Duration.ofNanos(ttlNanos)
+                + ", maxBatchSize="
+                + maxBatchSize
+                + ", maxBatchesInFlight="
+                + maxBatchesInFlight
+                + ", lookupTimeout="
+                + Duration.ofNanos(lookupTimeoutNanos)
+                + '}';
+    }
+
+    /** Looks up the probe and clears it, so that it does not keep the request buffer alive. */
+    @Nullable
+    private Entry get(UserKey probe) {
+        try {
+            return entries.get(probe);
+        } finally {
+            probe.clear();
+        }
+    }
+
+    /** Takes the next batch from the queue if another batch may be sent. */
+    @Nullable
+    private Set<String> nextBatch() {
+        if (queued.isEmpty() || batchesInFlight >= maxBatchesInFlight) {
+            return null;
+        }
+        Set<String> batch = new LinkedHashSet<>();
+        Iterator<String> users = queued.iterator();
+        while (users.hasNext() && batch.size() < maxBatchSize) {
+            batch.add(users.next());
+            users.remove();
+        }
+        batchesInFlight++;
+        return batch;
+    }
+
+    private void send(Set<String> batch) {
+        batchCount.increment();
+        lookupCount.add(batch.size());
+        CompletableFuture<Map<String, CredentialRecord>> result = new CompletableFuture<>();
+        try {
+            FutureUtils.forward(backend.lookup(batch), result);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        // An answer arriving after the timeout is ignored, the batch has failed already
+        FutureUtils.orTimeout(
+                result,
+                lookupTimeoutNanos,
+                TimeUnit.NANOSECONDS,
+                "Lookup of " + batch.size() + " users timed out");
+        result.whenComplete((found, failure) -> complete(batch, found, failure));
+    }
+
+    private void complete(
+            Set<String> batch,
+            @Nullable Map<String, CredentialRecord> found,
+            @Nullable Throwable failure) {
+        if (failure == null) {
+            long expiry = System.nanoTime() + ttlNanos;
+            for (String user : batch) {
+                entries.put(UserKey.of(user), new Entry(found.get(user), expiry));
+            }
+            evict();
+        } else {
+            LOG.warn("Failed to look up the credentials of {} users", batch.size(), failure);
+        }
+        List<CompletableFuture<CredentialRecord>> lookups = new ArrayList<>(batch.size());
+        Set<String> next;
+        synchronized (pending) {
+            for (String user : batch) {
+                lookups.add(pending.remove(user));
+            }
+            batchesInFlight--;
+            next = nextBatch();
+        }
+        Iterator<String> users = batch.iterator();
+        for (CompletableFuture<CredentialRecord> lookup : lookups) {
+            String user = users.next();
+            if (failure == null) {
+                lookup.complete(found.get(user));
+            } else {
+                lookup.completeExceptionally(failure);
+            }
+        }
+        if (next != null) {
+            send(next);
+        }
+    }
+
+    /** Removes expired entries once the cache is full, and arbitrary ones if that is not enough. */
+    private void evict() {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> !entry.isValid(now));
+        Iterator<UserKey> users = entries.keySet().iterator();
+        while (entries.size() > maxSize && users.hasNext()) {
+            users.next();
+            users.remove();
+        }
+    }
+
+    /**
+     * UTF-8 encoded name of a user. Keys of the cache own their bytes, while the key owned by each
+     * thread points at the name in the request or at the name of stored credentials. Both hash like
+     * {@link UserIndex}.
+     */
+    private static final class UserKey {
+
+        @Nullable private byte[] bytes;
+
+        private int offset;
+
+        private int length;
+
+        @Nullable private CredentialRecord credentials;
+
+        private int hashCode;
+
+        private static UserKey of(String user) {
+            byte[] bytes = user.getBytes(StandardCharsets.UTF_8);
+            UserKey key = new UserKey();
+            key.set(bytes, 0, bytes.length, UserIndex.hash(bytes, 0, bytes.length));
+            return key;
+        }
+
+        private void set(byte[] bytes, int offset, int length, int hashCode) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+            this.hashCode = hashCode;
+        }
+
+        private void set(CredentialRecord credentials) {
+            this.credentials = credentials;
+            this.hashCode = credentials.userHash();
+        }
+
+        private void clear() {
+            bytes = null;
+            credentials = null;
+        }
+
+        private boolean isUser(byte[] other, int otherOffset, int otherLength) {
+            if (credentials != null) {
+                return credentials.isUser(other, otherOffset, otherLength);
+            }
+            if (length != otherLength) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[offset + i] != other[otherOffset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            UserKey that = (UserKey) o;
+            if (hashCode != that.hashCode) {
+                return false;
+            }
+            // Keys of the cache always own their bytes, only one side may be a probe
+            return that.credentials == null
+                    ? isUser(that.bytes, that.offset, that.length)
+                    : that.isUser(bytes, offset, length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /** Credentials of a user, null if the user does not exist. */
+    private static final class Entry {
+
+        @Nullable private final CredentialRecord credentials;
+
+        private final long expiryNanos;
+
+        private Entry(@Nullable CredentialRecord credentials, long expiryNanos) {
+            this.credentials = credentials;
+            this.expiryNanos = expiryNanos;
+        }
+
+        private boolean isValid(long nowNanos) {
+            return expiryNanos - nowNanos > 0;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packs the credentials of many users into a single byte array. Every entry holds the UTF-8 encoded
+ * user name, the hash as stored in the password file and its decoded salt and digest, which the
+ * {@link CredentialRecord records} built at the end refer to by offset. Compared to a string and
+ * two arrays per record, this saves the object headers and references, which make up most of the
+ * memory of short entries.
+ */
+final class CredentialArena {
+
+    /** Offset, user length, hash length, algorithm, setting, salt and digest length, cost. */
+    private static final int FIELDS = 8;
+
+    private static final HashAlgorithm[] ALGORITHMS = HashAlgorithm.values();
+
+    private byte[] data;
+
+    private int size;
+
+    private int[] entries = new int[FIELDS * 16];
+
+    private RequestPatterns[] permissions = new RequestPatterns[16];
+
+    private int count;
+
+    /** @param expectedBytes Expected size of all entries, the array grows if it is exceeded */
+    CredentialArena(int expectedBytes) {
+        this.data = new byte[Math.max(64, expectedBytes)];
+    }
+
+    /**
+     * Decodes a password hash and appends it to the arena.
+     *
+     * @param user Buffer holding the UTF-8 encoded user name
+     * @param userOffset Offset of the user name in the buffer
+     * @param userLength Length of the user name in bytes
+     * @param encodedHash The password hash as stored in the password file
+     * @param permissions The requests the user may make, null for any
+     * @throws IllegalArgumentException Thrown, if the hash is malformed or of an unsupported
+     *     format. The message does not reveal the hash and leaves the user to the caller.
+     */
+    void add(
+            byte[] user,
+            int userOffset,
+            int userLength,
+            String encodedHash,
+            @Nullable RequestPatterns permissions) {
+        CredentialRecord.DecodedHash hash = CredentialRecord.decode(encodedHash);
+        int length = userLength + encodedHash.length() + hash.salt.length + hash.digest.length;
+        if (size + length > data.length) {
+            data = Arrays.copyOf(data, Math.max(size + length, data.length * 2));
+        }
+        if ((count + 1) * FIELDS > entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+            this.permissions = Arrays.copyOf(this.permissions, this.permissions.length * 2);
+        }
+        this.permissions[count] = permissions;
+
+        int entry = count++ * FIELDS;
+        entries[entry] = size;
+        entries[entry + 1] = userLength;
+        entries[entry + 2] = encodedHash.length();
+        entries[entry + 3] = hash.algorithm.ordinal();
+        entries[entry + 4] = hash.settingLength;
+        entries[entry + 5] = hash.salt.length;
+        entries[entry + 6] = hash.digest.length;
+        entries[entry + 7] = hash.cost;
+
+        System.arraycopy(user, userOffset, data, size, userLength);
+        size += userLength;
+        for (int i = 0; i < encodedHash.length(); i++) {
+            data[size++] = (byte) encodedHash.charAt(i);
+        }
+        System.arraycopy(hash.salt, 0, data, size, hash.salt.length);
+        size += hash.salt.length;
+        System.arraycopy(hash.digest, 0, data, size, hash.digest.length);
+        size += hash.digest.length;
+    }
+
+    /** Creates the records of all entries added so far, in the order they were added. */
+    List<CredentialRecord> build() {
+        byte[] packed = size == data.length ? data : Arrays.copyOf(data, size);
+        List<CredentialRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int entry = i * FIELDS;
+            records.add(
+                    new CredentialRecord(
+                            packed,
+                            entries[entry],
+                            entries[entry + 1],
+                            entries[entry + 2],
+                            ALGORITHMS[entries[entry + 3]],
+                            entries[entry + 4],
+                            entries[entry + 5],
+                            entries[entry + 6],
+                            entries[entry + 7],
+                            permissions[i]));
+        }
+        return records;
+    }
+
+    /**
+     * Copies records into a new array of their exact size. A record keeps the whole array of its
+     * arena alive, so the few records which changed by a reload are copied out of the arrays of the
+     * reloaded file.
+     */
+    static List<CredentialRecord> repack(List<CredentialRecord> records) {
+        int length = 0;
+        for (CredentialRecord record : records) {
+            length += record.packedLength();
+        }
+        byte[] packed = new byte[length];
+        List<CredentialRecord> copies = new ArrayList<>(records.size());
+        int offset = 0;
+        for (CredentialRecord record : records) {
+            copies.add(record.copyTo(packed, offset));
+            offset += record.packedLength();
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import javax.annotation.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Source of the stored credentials of users. The default provider reads a password file, other
+ * providers are created by a {@code CredentialProviderFactory} discovered with the service loader.
+ *
+ * <p>All methods are called on the netty event loop and must not block. Credentials which are not
+ * available in memory are looked up asynchronously, the authenticator suspends reading from the
+ * connection until the lookup completes. The passwords never leave the authenticator, a provider
+ * only hands out the stored hashes, which are verified like the hashes of a password file.
+ */
+public interface CredentialProvider {
+
+    /**
+     * Returns the credentials of a user if they are available without a lookup, like the
+     * credentials of a password file or credentials a provider has cached.
+     *
+     * @param user Buffer holding the UTF-8 encoded user name
+     * @param offset Offset of the user name in the buffer
+     * @param length Length of the user name in bytes
+     * @return The credentials or null if the user is unknown or must be looked up
+     */
+    @Nullable
+    CredentialRecord getIfPresent(byte[] user, int offset, int length);
+
+    /**
+     * Looks up the credentials of a user. The returned future is already complete if the
+     * credentials are available in memory. Once a lookup completed, its result must be available
+     * from {@link #getIfPresent} and from completed futures of this method for a while, since the
+     * authenticator processes the request again after the lookup.
+     *
+     * @param user The user name
+     * @return Future of the credentials, completed with null if the user is unknown
+     */
+    CompletableFuture<CredentialRecord> lookup(String user);
+
+    /**
+     * Checks whether credentials returned before are still the credentials of their user. Cached
+     * verifications and authenticated connections of credentials which are no longer current are
+     * verified again.
+     */
+    boolean isCurrent(CredentialRecord credentials);
+
+    /**
+     * Hands the credentials held in memory to an action, like the records of a password file.
+     * Providers looking up their credentials on demand hold none in advance.
+     */
+    default void forEachLoaded(Consumer<CredentialRecord> action) {}
+
+    /**
+     * Returns the cache of verified credentials of an endpoint. Providers shared by several
+     * endpoints may share the cache as well.
+     *
+     * @param maxSize Maximum number of cached verifications, 0 disables the cache
+     * @param ttl Time after which a cached verification expires
+     */
+    default VerifiedCredentialCache getCache(int maxSize, Duration ttl) {
+        return new VerifiedCredentialCache(maxSize, ttl);
+    }
+
+    /**
+     * Releases the resources of the provider, like the threads of its backend. Called once by every
+     * endpoint which created the provider, when the endpoint shuts down.
+     */
+    default void close() {}
+}
@@ -0,0 +1,447 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * The stored credentials of a user, parsed once when the password file is loaded. It holds the hash
+ * algorithm, its parameters and the expected digest, so that verifying a password does not need to
+ * parse the stored hash again.
+ *
+ * <p>The user name, the stored hash and the decoded salt and digest are not kept in objects of
+ * their own but in a byte array shared by many records, see {@link CredentialArena}. Password files
+ * with millions of users thereby cost a few objects per user less, which dominated the heap
+ * retained by large files.
+ */
+public final class CredentialRecord {
+
+    private static final String BCRYPT_PREFIX = "$2";
+
+    private static final int BCRYPT_SALT_CHARS = 22;
+
+    private static final int BCRYPT_HASH_CHARS = 31;
+
+    private static final int SHA1_DIGEST_LENGTH = 20;
+
+    /** Holds the user name, the encoded hash, the salt and the digest one after another. */
+    private final byte[] data;
+
+    private final int offset;
+
+    private final int userLength;
+
+    private final int hashLength;
+
+    /** Length of the hash prefix, parameters and salt as expected by the crypt implementations. */
+    private final int settingLength;
+
+    private final byte saltLength;
+
+    private final byte digestLength;
+
+    private final HashAlgorithm algorithm;
+
+    private final int cost;
+
+    /** Requests the user may make, null if the user may make any request. */
+    @Nullable private final RequestPatterns permissions;
+
+    /** Created on first use, most users of a large password file never log in. */
+    @Nullable private String user;
+
+    CredentialRecord(
+            byte[] data,
+            int offset,
+            int userLength,
+            int hashLength,
+            HashAlgorithm algorithm,
+            int settingLength,
+            int saltLength,
+            int digestLength,
+            int cost,
+            @Nullable RequestPatterns permissions) {
+        this.data = data;
+        this.offset = offset;
+        this.userLength = userLength;
+        this.hashLength = hashLength;
+        this.algorithm = algorithm;
+        this.settingLength = settingLength;
+        this.saltLength = (byte) saltLength;
+        this.digestLength = (byte) digestLength;
+        this.cost = cost;
+        this.permissions = permissions;
+    }
+
+    /**
+     * Parses the stored password hash of a user.
+     *
+     * @param user The user name
+     * @param encodedHash The password hash as stored in the password file
+     * @return The parsed credentials
+     * @throws IllegalArgumentException Thrown, if the hash is malformed or of an unsupported format
+     */
+    public static CredentialRecord parse(String user, String encodedHash) {
+        byte[] userBytes = user.getBytes(StandardCharsets.UTF_8);
+        CredentialArena arena = new CredentialArena(userBytes.length + encodedHash.length() * 2);
+        try {
+            arena.add(userBytes, 0, userBytes.length, encodedHash, null);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(e.getMessage() + " of user " + user);
+        }
+        return arena.build().get(0);
+    }
+
+    /**
+     * Decodes a password hash as stored in the password file. The messages of the exceptions
+     * describe the problem without revealing the hash.
+     *
+     * @throws IllegalArgumentException Thrown, if the hash is malformed or of an unsupported format
+     */
+    static DecodedHash decode(String encodedHash) {
+        for (int i = 0; i < encodedHash.length(); i++) {
+            if (encodedHash.charAt(i) > 0x7f) {
+                throw new IllegalArgumentException("Non-ASCII character in password hash");
+            }
+        }
+        if (encodedHash.startsWith(Apr1PasswordVerifier.PREFIX)) {
+            return decodeApr1(encodedHash);
+        } else if (encodedHash.startsWith(ShaCryptPasswordVerifier.SHA256.getPrefix())) {
+            return decodeShaCrypt(
+                    encodedHash, HashAlgorithm.SHA256_CRYPT, ShaCryptPasswordVerifier.SHA256);
+        } else if (encodedHash.startsWith(ShaCryptPasswordVerifier.SHA512.getPrefix())) {
+            return decodeShaCrypt(
+                    encodedHash, HashAlgorithm.SHA512_CRYPT, ShaCryptPasswordVerifier.SHA512);
+        } else if (encodedHash.startsWith(BCRYPT_PREFIX)) {
+            return decodeBcrypt(encodedHash);
+        } else if (encodedHash.startsWith(Sha1PasswordVerifier.PREFIX)) {
+            return decodeSha1(encodedHash);
+        }
+        throw new IllegalArgumentException("Unsupported password hash format");
+    }
+
+    /** Decodes {@code $apr1$<salt>$<digest>}. */
+    private static DecodedHash decodeApr1(String encodedHash) {
+        int saltEnd = encodedHash.indexOf('$', Apr1PasswordVerifier.PREFIX.length());
+        if (saltEnd < 0 || saltEnd - Apr1PasswordVerifier.PREFIX.length() > 8) {
+            throw new IllegalArgumentException("Malformed apr1 hash");
+        }
+        byte[] digest =
+                decode(
+                        () ->
+                                Crypt64.decodeCrypt(
+                                        encodedHash.substring(saltEnd + 1),
+                                        Crypt64.MD5_GROUPS,
+                                        Apr1PasswordVerifier.DIGEST_LENGTH));
+        return new DecodedHash(
+                HashAlgorithm.APR1,
+                saltEnd,
+                encodedHash
+                        .substring(Apr1PasswordVerifier.PREFIX.length(), saltEnd)
+                        .getBytes(StandardCharsets.US_ASCII),
+                1000,
+                digest);
+    }
+
+    /** Decodes {@code $5$[rounds=<n>$]<salt>$<digest>} and its SHA-512 counterpart. */
+    private static DecodedHash decodeShaCrypt(
+            String encodedHash, HashAlgorithm algorithm, ShaCryptPasswordVerifier verifier) {
+        int saltStart = verifier.getPrefix().length();
+        int rounds = 5000;
+        if (encodedHash.startsWith("rounds=", saltStart)) {
+            int roundsEnd = encodedHash.indexOf('$', saltStart);
+            if (roundsEnd < 0) {
+                throw new IllegalArgumentException("Malformed SHA crypt hash");
+            }
+            String roundsParameter = encodedHash.substring(saltStart + 7, roundsEnd);
+            rounds = decode(() -> Integer.parseInt(roundsParameter));
+            saltStart = roundsEnd + 1;
+        }
+        int saltEnd = encodedHash.lastIndexOf('$');
+        if (saltEnd < saltStart) {
+            throw new IllegalArgumentException("Malformed SHA crypt hash");
+        }
+        byte[] digest = decode(() -> verifier.decodeDigest(encodedHash.substring(saltEnd + 1)));
+        return new DecodedHash(
+                algorithm,
+                saltEnd,
+                encodedHash.substring(saltStart, saltEnd).getBytes(StandardCharsets.US_ASCII),
+                rounds,
+                digest);
+    }
+
+    /** Decodes {@code $2y$<cost>$<salt><digest>}, accepting the 2a and 2b variants as well. */
+    private static DecodedHash decodeBcrypt(String encodedHash) {
+        // $2y$10$ followed by 22 characters of salt and 31 characters of hash
+        int expectedLength = 7 + BCRYPT_SALT_CHARS + BCRYPT_HASH_CHARS;
+        char variant = encodedHash.length() > 2 ? encodedHash.charAt(2) : 0;
+        if (encodedHash.length() != expectedLength
+                || (variant != 'a' && variant != 'b' && variant != 'y')
+                || encodedHash.charAt(3) != '$'
+                || encodedHash.charAt(6) != '$') {
+            throw new IllegalArgumentException("Malformed bcrypt hash");
+        }
+        int cost = decode(() -> Integer.parseInt(encodedHash.substring(4, 6)));
+        if (cost < Bcrypt.MIN_COST || cost > Bcrypt.MAX_COST) {
+            throw new IllegalArgumentException("Invalid bcrypt cost");
+        }
+        byte[] salt =
+                decode(
+                        () ->
+                                Crypt64.decodeBcrypt(
+                                        encodedHash.substring(7, 7 + BCRYPT_SALT_CHARS),
+                                        Bcrypt.SALT_LENGTH));
+        byte[] digest =
+                decode(
+                        () ->
+                                Crypt64.decodeBcrypt(
+                                        encodedHash.substring(7 + BCRYPT_SALT_CHARS),
+                                        Bcrypt.HASH_LENGTH));
+        return new DecodedHash(HashAlgorithm.BCRYPT, 7 + BCRYPT_SALT_CHARS, salt, cost, digest);
+    }
+
+    /** Decodes {@code {SHA}<base 64 digest>}. */
+    private static DecodedHash decodeSha1(String encodedHash) {
+        byte[] digest =
+                decode(
+                        () ->
+                                Base64.getDecoder()
+                                        .decode(
+                                                encodedHash.substring(
+                                                        Sha1PasswordVerifier.PREFIX.length())));
+        if (digest.length != SHA1_DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Malformed SHA-1 hash");
+        }
+        return new DecodedHash(
+                HashAlgorithm.SHA1, Sha1PasswordVerifier.PREFIX.length(), new byte[0], 1, digest);
+    }
+
+    /** Reports decoding failures without revealing the stored hash. */
+    private static <T> T decode(Supplier<T> supplier) {
+        try {
+            return supplier.get();
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed password hash");
+        }
+    }
+
+    /**
+     * Checks whether a password matches these credentials.
+     *
+     * @param password The password provided by the user
+     * @return True if the password is correct
+     */
+    public boolean verify(byte[] password) {
+        return algorithm.getVerifier().verify(this, password);
+    }
+
+    public String getUser() {
+        String name = user;
+        if (name == null) {
+            // Racy but safe, every thread decodes an equal immutable string
+            name = new String(data, offset, userLength, StandardCharsets.UTF_8);
+            user = name;
+        }
+        return name;
+    }
+
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    String getSetting() {
+        return new String(data, offset + userLength, settingLength, StandardCharsets.US_ASCII);
+    }
+
+    byte[] getSalt() {
+        int saltOffset = offset + userLength + hashLength;
+        return Arrays.copyOfRange(data, saltOffset, saltOffset + saltLength);
+    }
+
+    /** Feeds the decoded salt to a digest without copying it. */
+    void updateWithSalt(MessageDigest digest) {
+        digest.update(data, offset + userLength + hashLength, saltLength);
+    }
+
+    /** Returns the cost parameter, the rounds of the crypt schemes or the bcrypt work factor. */
+    public int getCost() {
+        return cost;
+    }
+
+    /** Compares a computed digest to the stored one in time independent of their contents. */
+    boolean matchesDigest(byte[] digest) {
+        if (digest.length != digestLength) {
+            return false;
+        }
+        int digestOffset = offset + userLength + hashLength + saltLength;
+        int difference = 0;
+        for (int i = 0; i < digest.length; i++) {
+            difference |= digest[i] ^ data[digestOffset + i];
+        }
+        return difference == 0;
+    }
+
+    /**
+     * Returns the requests the user may make, as listed after the hash in the password file.
+     *
+     * @return The permissions or null if the user may make any request
+     */
+    @Nullable
+    public RequestPatterns getPermissions() {
+        return permissions;
+    }
+
+    /**
+     * Checks whether the user may make a request.
+     *
+     * @param method The name of the HTTP method
+     * @param uri The request URI
+     * @return True if the user has no permissions listed or one of them matches
+     */
+    public boolean isPermitted(String method, CharSequence uri) {
+        return permissions == null || permissions.matches(method, uri);
+    }
+
+    /** Returns the hash as stored in the password file. */
+    public String getEncodedHash() {
+        return new String(data, offset + userLength, hashLength, StandardCharsets.US_ASCII);
+    }
+
+    /** Feeds the hash as stored in the password file to a MAC without creating a string. */
+    void updateWithEncodedHash(Mac mac) {
+        mac.update(data, offset + userLength, hashLength);
+    }
+
+    /** Returns the number of bytes of the record in its array. */
+    int packedLength() {
+        return userLength + hashLength + saltLength + digestLength;
+    }
+
+    /** Copies the record to another array, see {@link CredentialArena#repack}. */
+    CredentialRecord copyTo(byte[] target, int targetOffset) {
+        System.arraycopy(data, offset, target, targetOffset, packedLength());
+        CredentialRecord copy =
+                new CredentialRecord(
+                        target,
+                        targetOffset,
+                        userLength,
+                        hashLength,
+                        algorithm,
+                        settingLength,
+                        saltLength,
+                        digestLength,
+                        cost,
+                        permissions);
+        copy.user = user;
+        return copy;
+    }
+
+    /** Hashes the UTF-8 encoded user name like {@link UserIndex}. */
+    int userHash() {
+        return UserIndex.hash(data, offset, userLength);
+    }
+
+    /** Checks whether the UTF-8 encoded user name equals the given bytes. */
+    boolean isUser(byte[] bytes, int bytesOffset, int length) {
+        return regionEquals(data, offset, userLength, bytes, bytesOffset, length);
+    }
+
+    boolean isSameUser(CredentialRecord other) {
+        return other.isUser(data, offset, userLength);
+    }
+
+    private static boolean regionEquals(
+            byte[] a, int aOffset, int aLength, byte[] b, int bOffset, int bLength) {
+        if (aLength != bLength) {
+            return false;
+        }
+        for (int i = 0; i < aLength; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CredentialRecord that = (CredentialRecord) o;
+        return isSameUser(that)
+                && Objects.equals(permissions, that.permissions)
+                && regionEquals(
+                        data,
+                        offset + userLength,
+                        hashLength,
+                        that.data,
+                        that.offset + that.userLength,
+                        that.hashLength);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = offset; i < offset + userLength + hashLength; i++) {
+            hash = 31 * hash + data[i];
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "CredentialRecord{user=" + getUser() + ", algorithm=" + algorithm + '}';
+    }
+
+    /** A password hash decoded into the fields of a record. */
+    static final class DecodedHash {
+
+        final HashAlgorithm algorithm;
+
+        /** Length of the prefix of the encoded hash expected by the crypt implementations. */
+        final int settingLength;
+
+        final byte[] salt;
+
+        final int cost;
+
+        final byte[] digest;
+
+        private DecodedHash(
+                HashAlgorithm algorithm, int settingLength, byte[] salt, int cost, byte[] digest) {
+            this.algorithm = algorithm;
+            this.settingLength = settingLength;
+            this.salt = salt;
+            this.cost = cost;
+            this.digest = digest;
+        }
+    }
+}
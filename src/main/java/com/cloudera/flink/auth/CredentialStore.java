@@ -0,0 +1,257 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Credentials of the users read from an htpasswd file. Every line is parsed once into a {@link
+ * CredentialRecord}. The records are published as an immutable snapshot, so lookups are a single
+ * volatile read without any locking while a reload builds the next snapshot. The snapshot indexes
+ * the users by their UTF-8 encoded name, so that the user of a decoded authorization header can be
+ * looked up without creating a string.
+ *
+ * <p>Password files with millions of users are read in parallel chunks, see {@link
+ * PasswordFileParser}, and the records of a chunk share a single byte array.
+ *
+ * <p>As a {@link CredentialProvider}, all credentials are available without a lookup.
+ */
+public final class CredentialStore implements CredentialProvider, PasswordFileWatcher.Reloadable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CredentialStore.class);
+
+    @Nullable private final Path passwordFile;
+
+    private final List<Consumer<Set<String>>> changeListeners = new CopyOnWriteArrayList<>();
+
+    private volatile UserIndex snapshot;
+
+    /** Modification time and size of the file the current snapshot was read from. */
+    private long lastModified;
+
+    private long lastSize;
+
+    private CredentialStore(@Nullable Path passwordFile, List<CredentialRecord> credentials) {
+        this.passwordFile = passwordFile;
+        this.snapshot = UserIndex.of(credentials);
+    }
+
+    /**
+     * Creates a store with fixed credentials which is never reloaded.
+     *
+     * @param credentials The password hashes by user
+     * @return The store holding the parsed credentials
+     */
+    public static CredentialStore of(Map<String, String> credentials) {
+        CredentialArena arena = new CredentialArena(credentials.size() * 64);
+        credentials.forEach(
+                (user, hash) -> {
+                    byte[] userBytes = user.getBytes(StandardCharsets.UTF_8);
+                    try {
+                        arena.add(userBytes, 0, userBytes.length, hash, null);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException(e.getMessage() + " of user " + user);
+                    }
+                });
+        return new CredentialStore(null, arena.build());
+    }
+
+    /**
+     * Reads the credentials from an htpasswd file.
+     *
+     * @param passwordFile The password file
+     * @return The store holding the credentials of the file
+     * @throws IOException Thrown, if the file cannot be read
+     */
+    public static CredentialStore load(Path passwordFile) throws IOException {
+        BasicFileAttributes attributes =
+                Files.readAttributes(passwordFile, BasicFileAttributes.class);
+        CredentialStore store =
+                new CredentialStore(passwordFile, PasswordFileParser.parse(passwordFile));
+        store.lastModified = attributes.lastModifiedTime().toMillis();
+        store.lastSize = attributes.size();
+        return store;
+    }
+
+    @Nullable
+    public Path getPasswordFile() {
+        return passwordFile;
+    }
+
+    /**
+     * Looks up the stored credentials of a user. Records of users whose password did not change are
+     * kept by a reload, so a record can be compared by identity to detect a change.
+     *
+     * @param user The user name
+     * @return The credentials or null if the user is unknown
+     */
+    @Nullable
+    public CredentialRecord getCredentials(String user) {
+        return snapshot.get(user);
+    }
+
+    /**
+     * Looks up the stored credentials of a user by the UTF-8 encoded name.
+     *
+     * @param user Buffer holding the user name
+     * @param offset Offset of the user name in the buffer
+     * @param length Length of the user name in bytes
+     * @return The credentials or null if the user is unknown
+     */
+    @Nullable
+    public CredentialRecord getCredentials(byte[] user, int offset, int length) {
+        return snapshot.get(user, offset, length);
+    }
+
+    @Nullable
+    @Override
+    public CredentialRecord getIfPresent(byte[] user, int offset, int length) {
+        return snapshot.get(user, offset, length);
+    }
+
+    @Override
+    public CompletableFuture<CredentialRecord> lookup(String user) {
+        return CompletableFuture.completedFuture(snapshot.get(user));
+    }
+
+    /**
+     * Checks whether a record is still the stored credentials of its user, that is neither the
+     * password of the user was changed nor the user was removed by a reload since the record was
+     * looked up.
+     */
+    @Override
+    public boolean isCurrent(CredentialRecord credentials) {
+        return snapshot.get(credentials) == credentials;
+    }
+
+    @Override
+    public void forEachLoaded(Consumer<CredentialRecord> action) {
+        snapshot.forEach(action);
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * Registers a listener which is notified with the users whose password hash changed or who were
+     * removed by a reload.
+     */
+    public void addChangeListener(Consumer<Set<String>> listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Reloads the password file if its modification time or size changed since it was last read.
+     *
+     * @param force Reloads the file even if the modification time and size are unchanged
+     * @return True if a new snapshot was published
+     */
+    @Override
+    public synchronized boolean reloadIfModified(boolean force) {
+        if (passwordFile == null) {
+            return false;
+        }
+        try {
+            BasicFileAttributes attributes =
+                    Files.readAttributes(passwordFile, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (!force && modified == lastModified && attributes.size() == lastSize) {
+                return false;
+            }
+            List<CredentialRecord> reloaded = PasswordFileParser.parse(passwordFile);
+            lastModified = modified;
+            lastSize = attributes.size();
+            return publish(reloaded);
+        } catch (Exception e) {
+            // Keep serving the previous snapshot until the file can be read again
+            LOG.error("Failed to reload password file {}", passwordFile, e);
+            return false;
+        }
+    }
+
+    private boolean publish(List<CredentialRecord> reloaded) {
+        UserIndex current = snapshot;
+        UserIndex parsed = UserIndex.of(reloaded);
+        Set<String> changedUsers = new HashSet<>();
+        List<CredentialRecord> next = new ArrayList<>(parsed.size());
+        List<CredentialRecord> added = new ArrayList<>();
+        parsed.forEach(
+                record -> {
+                    CredentialRecord currentRecord = current.get(record);
+                    if (record.equals(currentRecord)) {
+                        next.add(currentRecord);
+                    } else {
+                        added.add(record);
+                        if (currentRecord != null) {
+                            changedUsers.add(record.getUser());
+                        }
+                    }
+                });
+        // Unless the whole file changed, most of the reloaded records are garbage already
+        next.addAll(next.isEmpty() ? added : CredentialArena.repack(added));
+        current.forEach(
+                record -> {
+                    if (parsed.get(record) == null) {
+                        changedUsers.add(record.getUser());
+                    }
+                });
+        if (changedUsers.isEmpty() && added.isEmpty()) {
+            LOG.debug("Password file {} reloaded without changes", passwordFile);
+            return false;
+        }
+
+        snapshot = UserIndex.of(next);
+        LOG.info(
+                "Reloaded password file {} with {} users, {} changed or removed",
+                passwordFile,
+                next.size(),
+                changedUsers.size());
+        if (!changedUsers.isEmpty()) {
+            Set<String> notified = Collections.unmodifiableSet(changedUsers);
+            for (Consumer<Set<String>> listener : changeListeners) {
+                listener.accept(notified);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "CredentialStore{passwordFile=" + passwordFile + ", users=" + size() + '}';
+    }
+}
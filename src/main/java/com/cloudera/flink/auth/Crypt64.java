@@ -0,0 +1,133 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+/**
+ * Decoding of the base 64 variants used by crypt style password hashes. The MD5 and SHA-2 based
+ * schemes encode groups of three permuted digest bytes with the least significant six bits first,
+ * while bcrypt uses the regular bit order with its own alphabet.
+ */
+final class Crypt64 {
+
+    private static final String CRYPT_ALPHABET =
+            "./0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    private static final String BCRYPT_ALPHABET =
+            "./ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    /**
+     * Groups of the MD5 crypt encoding. Each group lists the indices of the digest bytes which
+     * become the high, middle and low byte of a 24 bit value, -1 standing for zero, followed by the
+     * number of characters the value is encoded with.
+     */
+    static final int[][] MD5_GROUPS = {
+        {0, 6, 12, 4}, {1, 7, 13, 4}, {2, 8, 14, 4}, {3, 9, 15, 4}, {4, 10, 5, 4}, {-1, -1, 11, 2},
+    };
+
+    /** Groups of the SHA-256 crypt encoding, see {@link #MD5_GROUPS}. */
+    static final int[][] SHA256_GROUPS = {
+        {0, 10, 20, 4}, {21, 1, 11, 4}, {12, 22, 2, 4}, {3, 13, 23, 4},
+        {24, 4, 14, 4}, {15, 25, 5, 4}, {6, 16, 26, 4}, {27, 7, 17, 4},
+        {18, 28, 8, 4}, {9, 19, 29, 4}, {-1, 31, 30, 3},
+    };
+
+    /** Groups of the SHA-512 crypt encoding, see {@link #MD5_GROUPS}. */
+    static final int[][] SHA512_GROUPS = {
+        {0, 21, 42, 4}, {22, 43, 1, 4}, {44, 2, 23, 4}, {3, 24, 45, 4},
+        {25, 46, 4, 4}, {47, 5, 26, 4}, {6, 27, 48, 4}, {28, 49, 7, 4},
+        {50, 8, 29, 4}, {9, 30, 51, 4}, {31, 52, 10, 4}, {53, 11, 32, 4},
+        {12, 33, 54, 4}, {34, 55, 13, 4}, {56, 14, 35, 4}, {15, 36, 57, 4},
+        {37, 58, 16, 4}, {59, 17, 38, 4}, {18, 39, 60, 4}, {40, 61, 19, 4},
+        {62, 20, 41, 4}, {-1, -1, 63, 2},
+    };
+
+    private Crypt64() {}
+
+    /** Returns the number of characters of the crypt encoding described by the groups. */
+    static int encodedLength(int[][] groups) {
+        int length = 0;
+        for (int[] group : groups) {
+            length += group[3];
+        }
+        return length;
+    }
+
+    /**
+     * Decodes the digest of an MD5 or SHA-2 crypt hash.
+     *
+     * @param encoded The encoded digest, the part following the last '$'
+     * @param groups The byte order of the scheme
+     * @param length The length of the digest in bytes
+     * @return The digest
+     */
+    static byte[] decodeCrypt(CharSequence encoded, int[][] groups, int length) {
+        if (encoded.length() != encodedLength(groups)) {
+            throw new IllegalArgumentException("Invalid digest length " + encoded.length());
+        }
+        byte[] digest = new byte[length];
+        int pos = 0;
+        for (int[] group : groups) {
+            int value = 0;
+            for (int i = 0; i < group[3]; i++) {
+                value |= decodeChar(CRYPT_ALPHABET, encoded.charAt(pos++)) << (6 * i);
+            }
+            for (int i = 0; i < 3; i++) {
+                if (group[i] >= 0) {
+                    digest[group[i]] = (byte) (value >>> (16 - 8 * i));
+                }
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * Decodes the bcrypt variant of base 64.
+     *
+     * @param encoded The encoded bytes
+     * @param length The number of bytes to decode
+     * @return The decoded bytes
+     */
+    static byte[] decodeBcrypt(CharSequence encoded, int length) {
+        int expectedChars = (length * 8 + 5) / 6;
+        if (encoded.length() != expectedChars) {
+            throw new IllegalArgumentException("Invalid encoded length " + encoded.length());
+        }
+        byte[] decoded = new byte[length];
+        int bits = 0;
+        int bitCount = 0;
+        int out = 0;
+        for (int i = 0; i < encoded.length() && out < length; i++) {
+            bits = (bits << 6) | decodeChar(BCRYPT_ALPHABET, encoded.charAt(i));
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                decoded[out++] = (byte) (bits >>> bitCount);
+            }
+        }
+        return decoded;
+    }
+
+    private static int decodeChar(String alphabet, char c) {
+        int value = alphabet.indexOf(c);
+        if (value < 0) {
+            throw new IllegalArgumentException("Invalid character in encoded hash");
+        }
+        return value;
+    }
+}
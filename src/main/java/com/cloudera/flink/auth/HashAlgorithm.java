@@ -0,0 +1,51 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+/**
+ * Password hash algorithms supported in password files. They differ widely in cost, so the
+ * algorithm can be chosen per user, for example a cheap one for service accounts issuing many
+ * requests.
+ */
+public enum HashAlgorithm {
+    /** The Apache specific MD5 crypt variant, the default of the htpasswd command. */
+    APR1(new Apr1PasswordVerifier()),
+
+    /** The bcrypt key derivation, produced by htpasswd -B. */
+    BCRYPT(new BcryptPasswordVerifier()),
+
+    /** SHA-256 based crypt as used by glibc. */
+    SHA256_CRYPT(ShaCryptPasswordVerifier.SHA256),
+
+    /** SHA-512 based crypt as used by glibc. */
+    SHA512_CRYPT(ShaCryptPasswordVerifier.SHA512),
+
+    /** Unsalted SHA-1, produced by htpasswd -s. */
+    SHA1(new Sha1PasswordVerifier());
+
+    private final PasswordVerifier verifier;
+
+    HashAlgorithm(PasswordVerifier verifier) {
+        this.verifier = verifier;
+    }
+
+    public PasswordVerifier getVerifier() {
+        return verifier;
+    }
+}
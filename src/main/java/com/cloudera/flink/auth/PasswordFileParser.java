@@ -0,0 +1,227 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reads the records of an htpasswd file. The file is streamed in chunks of whole lines, which are
+ * parsed in parallel on the common pool while the next chunk is read, every chunk packing its
+ * records into one {@link CredentialArena}. A line may list the requests the user is permitted to
+ * make after the hash, as {@code ;} separated {@link RequestPatterns}. Malformed lines are skipped
+ * like users of unsupported hash formats and reported with their line number, without revealing the
+ * hash.
+ */
+final class PasswordFileParser {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PasswordFileParser.class);
+
+    static final int CHUNK_SIZE = 1 << 20;
+
+    /** Malformed lines reported individually, the others are only counted. */
+    private static final int MAX_REPORTED_LINES = 20;
+
+    private PasswordFileParser() {}
+
+    /**
+     * Parses a password file.
+     *
+     * @param passwordFile The password file
+     * @return The records in the order of the file, users may occur more than once
+     * @throws IOException Thrown, if the file cannot be read
+     */
+    static List<CredentialRecord> parse(Path passwordFile) throws IOException {
+        List<CompletableFuture<Chunk>> chunks = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(passwordFile)) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int length = 0;
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) >= 0) {
+                length += read;
+                if (length < buffer.length) {
+                    continue;
+                }
+                int end = lastLineEnd(buffer, length);
+                if (end == 0) {
+                    // A single line longer than a chunk
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+                chunks.add(submit(buffer, end));
+                byte[] next = new byte[Math.max(CHUNK_SIZE, (length - end) * 2)];
+                System.arraycopy(buffer, end, next, 0, length - end);
+                buffer = next;
+                length -= end;
+            }
+            if (length > 0) {
+                chunks.add(submit(buffer, length));
+            }
+        }
+
+        List<CredentialRecord> records = new ArrayList<>();
+        int linesBefore = 0;
+        int malformedLines = 0;
+        for (CompletableFuture<Chunk> future : chunks) {
+            Chunk chunk = future.join();
+            records.addAll(chunk.records);
+            for (int i = 0; i < chunk.errorLines.size(); i++) {
+                if (++malformedLines <= MAX_REPORTED_LINES) {
+                    // The user cannot log in, as it is the case for unknown formats
+                    LOG.error(
+                            "Ignoring line {} of password file {}: {}",
+                            linesBefore + chunk.errorLines.get(i),
+                            passwordFile,
+                            chunk.errors.get(i));
+                }
+            }
+            linesBefore += chunk.lines;
+        }
+        if (malformedLines > MAX_REPORTED_LINES) {
+            LOG.error(
+                    "Ignored {} malformed lines of password file {}, only the first {} are logged",
+                    malformedLines,
+                    passwordFile,
+                    MAX_REPORTED_LINES);
+        }
+        return records;
+    }
+
+    private static int lastLineEnd(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static CompletableFuture<Chunk> submit(byte[] buffer, int length) {
+        return CompletableFuture.supplyAsync(
+                () -> parseChunk(buffer, length), ForkJoinPool.commonPool());
+    }
+
+    /** Parses the lines of a chunk, the numbers of the lines in errors are relative to it. */
+    static Chunk parseChunk(byte[] buffer, int length) {
+        Chunk chunk = new Chunk();
+        // Decoded salts and digests are shorter than their encoding
+        CredentialArena arena = new CredentialArena(length + length / 2);
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            while (end < length && buffer[end] != '\n') {
+                end++;
+            }
+            chunk.lines++;
+            int lineEnd = end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+            if (lineEnd > start) {
+                parseLine(buffer, start, lineEnd, arena, chunk);
+            }
+            start = end + 1;
+        }
+        chunk.records = arena.build();
+        return chunk;
+    }
+
+    private static void parseLine(
+            byte[] buffer, int start, int end, CredentialArena arena, Chunk chunk) {
+        int colon = start;
+        while (colon < end && buffer[colon] != ':') {
+            colon++;
+        }
+        if (colon == end) {
+            chunk.error("Missing ':' between user and password hash");
+        } else if (colon == start) {
+            chunk.error("Empty user name");
+        } else {
+            int hashEnd = colon + 1;
+            while (hashEnd < end && buffer[hashEnd] != ':') {
+                hashEnd++;
+            }
+            String encodedHash =
+                    new String(buffer, colon + 1, hashEnd - colon - 1, StandardCharsets.ISO_8859_1);
+            try {
+                RequestPatterns permissions =
+                        hashEnd == end
+                                ? null
+                                : chunk.permissions(
+                                        new String(
+                                                buffer,
+                                                hashEnd + 1,
+                                                end - hashEnd - 1,
+                                                StandardCharsets.UTF_8));
+                arena.add(buffer, start, colon - start, encodedHash, permissions);
+            } catch (IllegalArgumentException e) {
+                chunk.error(
+                        e.getMessage()
+                                + " of user "
+                                + new String(buffer, start, colon - start, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /** The records and malformed lines of a chunk. */
+    static final class Chunk {
+
+        List<CredentialRecord> records;
+
+        int lines;
+
+        final List<Integer> errorLines = new ArrayList<>();
+
+        final List<String> errors = new ArrayList<>();
+
+        /** Many users share the same permissions, they are compiled once per chunk. */
+        private final Map<String, RequestPatterns> compiledPermissions = new HashMap<>();
+
+        private void error(String message) {
+            errorLines.add(lines);
+            errors.add(message);
+        }
+
+        /** Compiles the {@code ;} separated request patterns following the hash of a user. */
+        private RequestPatterns permissions(String patterns) {
+            RequestPatterns compiled = compiledPermissions.get(patterns);
+            if (compiled == null) {
+                List<String> split = new ArrayList<>();
+                for (String pattern : patterns.split(";")) {
+                    if (!pattern.trim().isEmpty()) {
+                        split.add(pattern);
+                    }
+                }
+                compiled = RequestPatterns.compile(split);
+                compiledPermissions.put(patterns, compiled);
+            }
+            return compiled;
+        }
+    }
+}
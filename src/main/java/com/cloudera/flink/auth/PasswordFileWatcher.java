@@ -0,0 +1,266 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.apache.flink.annotation.VisibleForTesting;
+import org.apache.flink.util.concurrent.ExecutorThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reloads password files when they change. A single daemon thread serves all registered stores. It
+ * reacts to {@link WatchService} events of the directory containing a password file and, since
+ * watch events are not delivered on every file system, additionally polls the modification time of
+ * every file. Stores are only weakly referenced so that a registration never keeps them alive.
+ *
+ * <p>Besides the password files of {@link CredentialStore}s, any other file read by a {@link
+ * Reloadable} can be watched, like the credentials file of a client.
+ */
+public final class PasswordFileWatcher implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PasswordFileWatcher.class);
+
+    /** Upper bound of the time the watcher thread blocks waiting for watch events. */
+    private static final long MAX_WAIT_MILLIS = 1000L;
+
+    /**
+     * Time without further events after which a changed file is read, so that a file which is still
+     * being written is not picked up half way.
+     */
+    private static final long QUIET_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private static final long QUIET_PERIOD_WAIT_MILLIS = 50L;
+
+    private static PasswordFileWatcher instance;
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    @Nullable private final WatchService watchService;
+
+    /**
+     * Creates a watcher whose thread is started by the caller.
+     *
+     * @param watchService The service delivering the changes of directories, null to only poll
+     */
+    @VisibleForTesting
+    PasswordFileWatcher(@Nullable WatchService watchService) {
+        this.watchService = watchService;
+    }
+
+    /** Returns the watcher of this process, starting its thread on first use. */
+    public static synchronized PasswordFileWatcher getInstance() {
+        if (instance == null) {
+            WatchService watchService = null;
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException | UnsupportedOperationException e) {
+                LOG.warn("File system watch service not available, falling back to polling", e);
+            }
+            instance = new PasswordFileWatcher(watchService);
+            new ExecutorThreadFactory("flink-basic-auth-password-file-watcher")
+                    .newThread(instance)
+                    .start();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts watching the password file of a store.
+     *
+     * @param store The store to reload when its password file changes
+     * @param pollInterval Interval in which the modification time of the file is checked
+     */
+    public void register(CredentialStore store, Duration pollInterval) {
+        register(requireNonNull(store.getPasswordFile()), store, pollInterval);
+    }
+
+    /**
+     * Starts watching a file.
+     *
+     * @param file The file to watch
+     * @param reloadable Reloads the file when it changes
+     * @param pollInterval Interval in which the modification time of the file is checked
+     */
+    public void register(Path file, Reloadable reloadable, Duration pollInterval) {
+        Path passwordFile = file.toAbsolutePath();
+        Path directory = passwordFile.getParent();
+        WatchKey watchKey = null;
+        if (watchService != null && directory != null) {
+            try {
+                watchKey =
+                        directory.register(
+                                watchService,
+                                StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_MODIFY,
+                                StandardWatchEventKinds.ENTRY_DELETE);
+            } catch (IOException e) {
+                LOG.warn("Cannot watch {}, falling back to polling", directory, e);
+            }
+        }
+        registrations.add(
+                new Registration(reloadable, directory, watchKey, pollInterval.toNanos()));
+        LOG.info("Watching {} for changes", passwordFile);
+    }
+
+    /**
+     * Stops watching the files of a reloadable. The directory of a file is no longer watched once
+     * no other registered file is in it.
+     *
+     * @param reloadable The reloadable passed to {@link #register}
+     */
+    public void unregister(Reloadable reloadable) {
+        for (Registration registration : registrations) {
+            if (registration.reloadable.get() == reloadable) {
+                registrations.remove(registration);
+                cancelIfUnused(registration.watchKey);
+            }
+        }
+    }
+
+    private void cancelIfUnused(@Nullable WatchKey watchKey) {
+        if (watchKey == null) {
+            return;
+        }
+        for (Registration registration : registrations) {
+            if (registration.watchKey == watchKey) {
+                return;
+            }
+        }
+        watchKey.cancel();
+        LOG.info("Stopped watching {} for changes", watchKey.watchable());
+    }
+
+    @Override
+    public void run() {
+        boolean changesPending = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                long waitMillis = changesPending ? QUIET_PERIOD_WAIT_MILLIS : MAX_WAIT_MILLIS;
+                WatchKey key =
+                        watchService == null
+                                ? null
+                                : watchService.poll(waitMillis, TimeUnit.MILLISECONDS);
+                if (watchService == null) {
+                    Thread.sleep(MAX_WAIT_MILLIS);
+                }
+                while (key != null) {
+                    // Secrets are often rotated by swapping symlinks, so any change of the
+                    // directory triggers a reload of the files it contains
+                    key.pollEvents();
+                    key.reset();
+                    markChanged((Path) key.watchable(), System.nanoTime());
+                    key = watchService.poll();
+                }
+                changesPending = checkRegistrations(System.nanoTime());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                LOG.error("Unexpected error while watching password files", t);
+            }
+        }
+    }
+
+    private void markChanged(Path directory, long now) {
+        for (Registration registration : registrations) {
+            if (directory.equals(registration.directory)) {
+                registration.changed = true;
+                registration.lastChangeNanos = now;
+            }
+        }
+    }
+
+    /** Reloads the files which are due and returns whether changes are still pending. */
+    private boolean checkRegistrations(long now) {
+        boolean changesPending = false;
+        for (Registration registration : registrations) {
+            Reloadable reloadable = registration.reloadable.get();
+            if (reloadable == null) {
+                registrations.remove(registration);
+                continue;
+            }
+            boolean changed = registration.changed;
+            if (changed && now - registration.lastChangeNanos < QUIET_PERIOD_NANOS) {
+                changesPending = true;
+            } else if (changed || now - registration.nextPollNanos >= 0) {
+                registration.changed = false;
+                registration.nextPollNanos = now + registration.pollIntervalNanos;
+                reloadable.reloadIfModified(changed);
+            }
+        }
+        return changesPending;
+    }
+
+    /** Holds the contents of a file which is read again when the file changes. */
+    public interface Reloadable {
+
+        /**
+         * Reloads the file if its modification time or size changed since it was last read.
+         *
+         * @param force Reloads the file even if the modification time and size are unchanged
+         * @return True if the reloaded contents were published
+         */
+        boolean reloadIfModified(boolean force);
+    }
+
+    private static final class Registration {
+
+        private final WeakReference<Reloadable> reloadable;
+
+        @Nullable private final Path directory;
+
+        @Nullable private final WatchKey watchKey;
+
+        private final long pollIntervalNanos;
+
+        private long nextPollNanos;
+
+        private boolean changed;
+
+        private long lastChangeNanos;
+
+        private Registration(
+                Reloadable reloadable,
+                @Nullable Path directory,
+                @Nullable WatchKey watchKey,
+                long pollIntervalNanos) {
+            this.reloadable = new WeakReference<>(reloadable);
+            this.directory = directory;
+            this.watchKey = watchKey;
+            this.pollIntervalNanos = pollIntervalNanos;
+            this.nextPollNanos = System.nanoTime() + pollIntervalNanos;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+/** Verifies a password against a stored credential record of a specific hash algorithm. */
+public interface PasswordVerifier {
+
+    /**
+     * Checks whether a password matches a stored credential record.
+     *
+     * @param record The stored credentials of the user
+     * @param password The password provided by the user
+     * @return True if the password hashes to the digest of the record
+     */
+    boolean verify(CredentialRecord record, byte[] password);
+}
@@ -0,0 +1,273 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A set of request patterns compiled into a trie over the request path. A pattern is an optional
+ * comma separated list of HTTP methods followed by a path, for example {@code GET,HEAD /assets/**}
+ * or {@code /config}. Path segments are matched literally, except {@code *} which matches any
+ * single segment and a trailing {@code /**} which matches the path and everything below it.
+ *
+ * <p>Matching walks the trie along the characters of the request path, so it takes time linear in
+ * the length of the path and allocates nothing. Paths which are not in normalized form, such as
+ * ones holding percent encodings, empty segments or dot segments, never match, so that a pattern
+ * cannot be used to reach other resources than the ones it names.
+ */
+public final class RequestPatterns {
+
+    /** Patterns which match no request. */
+    public static final RequestPatterns NONE = compile(Collections.emptyList());
+
+    private static final String[] METHODS = {
+        "GET", "HEAD", "POST", "PUT", "DELETE", "PATCH", "OPTIONS", "TRACE", "CONNECT"
+    };
+
+    private static final int ALL_METHODS = (1 << METHODS.length) - 1;
+
+    private final Node root;
+
+    private final List<String> patterns;
+
+    private RequestPatterns(Node root, List<String> patterns) {
+        this.root = root;
+        this.patterns = patterns;
+    }
+
+    /**
+     * Compiles request patterns.
+     *
+     * @param patterns The patterns, see the description of the class
+     * @return The compiled patterns
+     * @throws IllegalArgumentException Thrown, if a pattern is malformed
+     */
+    public static RequestPatterns compile(Collection<String> patterns) {
+        Node root = new Node();
+        List<String> trimmed = new ArrayList<>(patterns.size());
+        for (String pattern : patterns) {
+            trimmed.add(pattern.trim());
+            add(root, pattern.trim());
+        }
+        return new RequestPatterns(root, Collections.unmodifiableList(trimmed));
+    }
+
+    private static void add(Node root, String pattern) {
+        int space = pattern.indexOf(' ');
+        int methods = space < 0 ? ALL_METHODS : parseMethods(pattern, pattern.substring(0, space));
+        String path = space < 0 ? pattern : pattern.substring(space + 1).trim();
+        if (!path.startsWith("/")) {
+            throw new IllegalArgumentException(
+                    "Path of request pattern '" + pattern + "' must start with '/'");
+        }
+
+        Node node = root;
+        int start = 1;
+        while (true) {
+            int end = path.indexOf('/', start);
+            String segment = path.substring(start, end < 0 ? path.length() : end);
+            if (segment.equals("**")) {
+                if (end >= 0) {
+                    throw new IllegalArgumentException(
+                            "'**' must be the last segment of request pattern '" + pattern + "'");
+                }
+                node.subtreeMethods |= methods;
+                return;
+            }
+            node = node.child('/');
+            if (segment.equals("*")) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node();
+                }
+                node = node.wildcard;
+            } else if (segment.indexOf('*') >= 0) {
+                throw new IllegalArgumentException(
+                        "Wildcards must span a whole segment of request pattern '" + pattern + "'");
+            } else {
+                for (int i = 0; i < segment.length(); i++) {
+                    node = node.child(segment.charAt(i));
+                }
+            }
+            if (end < 0) {
+                node.exactMethods |= methods;
+                return;
+            }
+            start = end + 1;
+        }
+    }
+
+    private static int parseMethods(String pattern, String methods) {
+        int mask = 0;
+        for (String method : methods.split(",", -1)) {
+            int bit = method.equals("*") ? ALL_METHODS : methodBit(method);
+            if (bit == 0) {
+                throw new IllegalArgumentException(
+                        "Unknown method " + method + " in request pattern '" + pattern + "'");
+            }
+            mask |= bit;
+        }
+        return mask;
+    }
+
+    private static int methodBit(String method) {
+        for (int i = 0; i < METHODS.length; i++) {
+            if (METHODS[i].equals(method)) {
+                return 1 << i;
+            }
+        }
+        return 0;
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * Checks whether a request matches any of the patterns.
+     *
+     * @param method The name of the HTTP method
+     * @param uri The request URI in origin form, a query or fragment is ignored
+     * @return True if a pattern matches
+     */
+    public boolean matches(String method, CharSequence uri) {
+        int bit = methodBit(method);
+        if (bit == 0 || uri.length() == 0 || uri.charAt(0) != '/') {
+            return false;
+        }
+        int end = 0;
+        while (end < uri.length() && uri.charAt(end) != '?' && uri.charAt(end) != '#') {
+            end++;
+        }
+        return isNormalized(uri, end) && matches(root, uri, 0, end, bit);
+    }
+
+    private static boolean matches(Node node, CharSequence uri, int index, int end, int bit) {
+        while (true) {
+            if ((node.subtreeMethods & bit) != 0 && (index == end || uri.charAt(index) == '/')) {
+                return true;
+            }
+            if (index == end) {
+                return (node.exactMethods & bit) != 0;
+            }
+            if (node.wildcard != null && uri.charAt(index) != '/') {
+                int segmentEnd = index;
+                while (segmentEnd < end && uri.charAt(segmentEnd) != '/') {
+                    segmentEnd++;
+                }
+                if (matches(node.wildcard, uri, segmentEnd, end, bit)) {
+                    return true;
+                }
+            }
+            node = node.get(uri.charAt(index++));
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+
+    /** Rejects percent encodings, backslashes, empty segments and dot segments. */
+    private static boolean isNormalized(CharSequence uri, int end) {
+        for (int i = 0; i < end; i++) {
+            char c = uri.charAt(i);
+            if (c == '%' || c == '\\') {
+                return false;
+            }
+            if (c == '/' && i + 1 < end) {
+                int dots = 0;
+                int j = i + 1;
+                while (j < end && uri.charAt(j) == '.') {
+                    dots++;
+                    j++;
+                }
+                boolean segmentEnds = j == end || uri.charAt(j) == '/';
+                if (segmentEnds && dots <= 2) {
+                    // An empty segment or one of "." or ".."
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return patterns.equals(((RequestPatterns) o).patterns);
+    }
+
+    @Override
+    public int hashCode() {
+        return patterns.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RequestPatterns" + patterns;
+    }
+
+    /** A node of the trie, reached by the characters of the path leading to it. */
+    private static final class Node {
+
+        private char[] labels = new char[0];
+
+        private Node[] children = new Node[0];
+
+        /** Node following a {@code *} segment. */
+        @Nullable private Node wildcard;
+
+        /** Methods of the patterns ending at this node. */
+        private int exactMethods;
+
+        /** Methods of the patterns ending with {@code /**} at this node. */
+        private int subtreeMethods;
+
+        @Nullable
+        private Node get(char label) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == label) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node child(char label) {
+            Node child = get(label);
+            if (child == null) {
+                child = new Node();
+                labels = Arrays.copyOf(labels, labels.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                labels[labels.length - 1] = label;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+}
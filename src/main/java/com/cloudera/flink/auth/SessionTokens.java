@@ -0,0 +1,322 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+
+/**
+ * Issues and verifies HMAC-SHA256 signed session tokens, so that a user who authenticated once is
+ * not required to have the password hashed on every request. A token has the form {@code
+ * <user>.<expiry>.<key id>.<signature>}, where the user and signature are base 64 url encoded and
+ * the expiry is in epoch seconds. The signature additionally covers the stored password hash of the
+ * user, so changing or removing a password revokes all tokens of the user.
+ *
+ * <p>Tokens are signed with the first key only, while all keys are accepted. A new key is therefore
+ * rolled out by prepending it and the old key dropped once the tokens signed with it expired.
+ * Verifying a token does not allocate and takes a single HMAC computation.
+ */
+public final class SessionTokens {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final int SIGNATURE_LENGTH = 32;
+
+    private static final int KEY_ID_LENGTH = 8;
+
+    private static final byte[] BASE64_URL_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_URL_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_URL_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final List<SigningKey> keys;
+
+    private final long ttlSeconds;
+
+    /**
+     * Creates the signer.
+     *
+     * @param keys The signing keys, the first one signs new tokens
+     * @param ttl Time after which a token expires
+     */
+    public SessionTokens(List<byte[]> keys, Duration ttl) {
+        checkArgument(!keys.isEmpty(), "At least one session signing key is required.");
+        checkArgument(ttl.getSeconds() > 0, "Session TTL must be at least one second.");
+        this.keys = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            this.keys.add(new SigningKey(key));
+        }
+        this.ttlSeconds = ttl.getSeconds();
+    }
+
+    /** Creates a signer with a random key, whose tokens are only valid within this process. */
+    public static SessionTokens withRandomKey(Duration ttl) {
+        byte[] key = new byte[SIGNATURE_LENGTH];
+        new SecureRandom().nextBytes(key);
+        List<byte[]> keys = new ArrayList<>(1);
+        keys.add(key);
+        return new SessionTokens(keys, ttl);
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    /**
+     * Issues a token for a user who was just authenticated.
+     *
+     * @param credentials The stored credentials the user was verified against
+     * @param nowMillis The current time in epoch milliseconds
+     * @return The token
+     */
+    public String issue(CredentialRecord credentials, long nowMillis) {
+        SigningKey key = keys.get(0);
+        String payload =
+                Base64.getUrlEncoder()
+                                .withoutPadding()
+                                .encodeToString(
+                                        credentials.getUser().getBytes(StandardCharsets.UTF_8))
+                        + '.'
+                        + (nowMillis / 1000 + ttlSeconds)
+                        + '.'
+                        + key.id;
+        byte[] signature = new byte[SIGNATURE_LENGTH];
+        sign(key, payload, 0, payload.length(), credentials, signature);
+        return payload + '.' + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+    /**
+     * Verifies a token.
+     *
+     * @param token Sequence containing the token
+     * @param start Index of the first character of the token
+     * @param end Index after the last character of the token
+     * @param credentials The credentials the token is checked against
+     * @param nowMillis The current time in epoch milliseconds
+     * @return The credentials of the user or null if the token is invalid or expired
+     */
+    @Nullable
+    public CredentialRecord verify(
+            CharSequence token,
+            int start,
+            int end,
+            CredentialProvider credentials,
+            long nowMillis) {
+        int userEnd = indexOf(token, '.', start, end);
+        if (userEnd < 0) {
+            return null;
+        }
+        int expiryEnd = indexOf(token, '.', userEnd + 1, end);
+        if (expiryEnd < 0) {
+            return null;
+        }
+        int keyIdEnd = indexOf(token, '.', expiryEnd + 1, end);
+        if (keyIdEnd < 0 || keyIdEnd - expiryEnd - 1 != KEY_ID_LENGTH) {
+            return null;
+        }
+
+        long expiry = parseSeconds(token, userEnd + 1, expiryEnd);
+        if (expiry < 0 || expiry <= nowMillis / 1000) {
+            return null;
+        }
+        SigningKey key = null;
+        for (SigningKey candidate : keys) {
+            if (regionEquals(token, expiryEnd + 1, candidate.id)) {
+                key = candidate;
+                break;
+            }
+        }
+        if (key == null) {
+            return null;
+        }
+
+        Scratch scratch = SCRATCH.get();
+        int userLength = decodeBase64Url(token, start, userEnd, scratch.user);
+        if (userLength < 0) {
+            return null;
+        }
+        // Users which are not available without a lookup authenticate with their password
+        CredentialRecord stored = credentials.getIfPresent(scratch.user, 0, userLength);
+        if (stored == null) {
+            return null;
+        }
+        if (decodeBase64Url(token, keyIdEnd + 1, end, scratch.signature) != SIGNATURE_LENGTH) {
+            return null;
+        }
+        sign(key, token, start, keyIdEnd, stored, scratch.expected);
+        return constantTimeEquals(scratch.expected, scratch.signature) ? stored : null;
+    }
+
+    private static void sign(
+            SigningKey key,
+            CharSequence payload,
+            int start,
+            int end,
+            CredentialRecord credentials,
+            byte[] signature) {
+        Mac mac = key.macs.get();
+        for (int i = start; i < end; i++) {
+            mac.update((byte) payload.charAt(i));
+        }
+        // Binds the token to the current password of the user
+        mac.update((byte) 0);
+        credentials.updateWithEncodedHash(mac);
+        try {
+            mac.doFinal(signature, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("Unexpected HMAC length", e);
+        }
+    }
+
+    private static int indexOf(CharSequence sequence, char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (sequence.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Parses a non negative number of at most 12 digits, returns -1 if it is malformed. */
+    private static long parseSeconds(CharSequence sequence, int start, int end) {
+        if (end <= start || end - start > 12) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = sequence.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean regionEquals(CharSequence sequence, int start, String expected) {
+        for (int i = 0; i < expected.length(); i++) {
+            if (sequence.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Decodes unpadded base 64 url, returns the length or -1 if the input is malformed. */
+    private static int decodeBase64Url(CharSequence sequence, int start, int end, byte[] out) {
+        int chars = end - start;
+        if (chars % 4 == 1 || (chars / 4 * 3 + Math.max(chars % 4 - 1, 0)) > out.length) {
+            return -1;
+        }
+        int bits = 0;
+        int bitCount = 0;
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = sequence.charAt(i);
+            int value = c < BASE64_URL_VALUES.length ? BASE64_URL_VALUES[c] : -1;
+            if (value < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                out[length++] = (byte) (bits >>> bitCount);
+            }
+        }
+        return length;
+    }
+
+    private static boolean constantTimeEquals(byte[] a, byte[] b) {
+        int difference = 0;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            difference |= a[i] ^ b[i];
+        }
+        return difference == 0;
+    }
+
+    private static final class SigningKey {
+
+        /** Hex encoded prefix of the SHA-256 digest of the key. */
+        private final String id;
+
+        private final ThreadLocal<Mac> macs;
+
+        private SigningKey(byte[] key) {
+            SecretKeySpec keySpec = new SecretKeySpec(key, HMAC_ALGORITHM);
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(key);
+                StringBuilder id = new StringBuilder();
+                for (int i = 0; i < KEY_ID_LENGTH / 2; i++) {
+                    id.append(String.format("%02x", digest[i]));
+                }
+                this.id = id.toString();
+                Mac.getInstance(HMAC_ALGORITHM).init(keySpec);
+            } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+                throw new IllegalArgumentException("Invalid session signing key", e);
+            }
+            this.macs =
+                    ThreadLocal.withInitial(
+                            () -> {
+                                try {
+                                    Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                                    mac.init(keySpec);
+                                    return mac;
+                                } catch (GeneralSecurityException e) {
+                                    throw new IllegalStateException(
+                                            "Cannot initialize " + HMAC_ALGORITHM, e);
+                                }
+                            });
+        }
+    }
+
+    /** Buffers of the verifying thread. */
+    private static final class Scratch {
+
+        /** User names are limited by the cookie size, which browsers cap at 4 kB. */
+        private final byte[] user = new byte[4096];
+
+        private final byte[] signature = new byte[SIGNATURE_LENGTH + 3];
+
+        private final byte[] expected = new byte[SIGNATURE_LENGTH];
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** Verifies unsalted SHA-1 hashes. */
+final class Sha1PasswordVerifier implements PasswordVerifier {
+
+    static final String PREFIX = "{SHA}";
+
+    private static final ThreadLocal<MessageDigest> SHA_1 =
+            ThreadLocal.withInitial(
+                    () -> {
+                        try {
+                            return MessageDigest.getInstance("SHA-1");
+                        } catch (NoSuchAlgorithmException e) {
+                            throw new IllegalStateException("SHA-1 is not available", e);
+                        }
+                    });
+
+    @Override
+    public boolean verify(CredentialRecord record, byte[] password) {
+        return record.matchesDigest(SHA_1.get().digest(password));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.apache.commons.codec.digest.Sha2Crypt;
+
+/** Verifies SHA-256 and SHA-512 crypt hashes. */
+final class ShaCryptPasswordVerifier implements PasswordVerifier {
+
+    static final ShaCryptPasswordVerifier SHA256 =
+            new ShaCryptPasswordVerifier("$5$", Crypt64.SHA256_GROUPS, 32);
+
+    static final ShaCryptPasswordVerifier SHA512 =
+            new ShaCryptPasswordVerifier("$6$", Crypt64.SHA512_GROUPS, 64);
+
+    private final String prefix;
+
+    private final int[][] groups;
+
+    private final int digestLength;
+
+    private ShaCryptPasswordVerifier(String prefix, int[][] groups, int digestLength) {
+        this.prefix = prefix;
+        this.groups = groups;
+        this.digestLength = digestLength;
+    }
+
+    String getPrefix() {
+        return prefix;
+    }
+
+    byte[] decodeDigest(CharSequence encoded) {
+        return Crypt64.decodeCrypt(encoded, groups, digestLength);
+    }
+
+    @Override
+    public boolean verify(CredentialRecord record, byte[] password) {
+        String computed =
+                this == SHA256
+                        ? Sha2Crypt.sha256Crypt(password, record.getSetting())
+                        : Sha2Crypt.sha512Crypt(password, record.getSetting());
+        byte[] digest = decodeDigest(computed.substring(computed.lastIndexOf('$') + 1));
+        return record.matchesDigest(digest);
+    }
+}
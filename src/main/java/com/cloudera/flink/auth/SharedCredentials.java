@@ -0,0 +1,181 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The credentials of a password file shared by all endpoints of a process. The REST endpoint, the
+ * HistoryServer and other web monitors each create their own handler factory, but handlers of the
+ * same password file should not each parse the file, cache verified credentials and watch the file
+ * on their own. Password files are identified by their canonical path, so different spellings of
+ * the same file share the credentials, which are read through the path registered first. Every
+ * endpoint closes the credentials it obtained, and the last one to close releases the store, the
+ * caches and the watch of the file.
+ *
+ * <p>This is the default {@link CredentialProvider}.
+ */
+public final class SharedCredentials implements CredentialProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedCredentials.class);
+
+    private static final Map<Path, SharedCredentials> REGISTRY = new HashMap<>();
+
+    private final Path canonicalPath;
+
+    private final CredentialStore store;
+
+    /** Number of endpoints using the credentials, guarded by {@link #REGISTRY}. */
+    private int references;
+
+    /** Caches by their maximum size and time to live. */
+    private final Map<List<Object>, VerifiedCredentialCache> caches = new HashMap<>();
+
+    @Nullable private Duration reloadInterval;
+
+    private SharedCredentials(Path canonicalPath, CredentialStore store) {
+        this.canonicalPath = canonicalPath;
+        this.store = store;
+    }
+
+    /**
+     * Returns the shared credentials of a password file, reading the file on first use. The caller
+     * must {@link #close()} the credentials once it no longer uses them.
+     *
+     * @param passwordFile The password file
+     * @return The credentials shared by all users of the file
+     * @throws IOException Thrown, if the file cannot be read
+     */
+    public static SharedCredentials of(Path passwordFile) throws IOException {
+        Path canonicalPath = passwordFile.toRealPath();
+        synchronized (REGISTRY) {
+            SharedCredentials shared = REGISTRY.get(canonicalPath);
+            if (shared == null) {
+                shared = new SharedCredentials(canonicalPath, CredentialStore.load(passwordFile));
+                REGISTRY.put(canonicalPath, shared);
+                LOG.info("Loaded {}", shared.store);
+            } else {
+                LOG.info("Sharing already loaded {}", shared.store);
+            }
+            shared.references++;
+            return shared;
+        }
+    }
+
+    public CredentialStore getStore() {
+        return store;
+    }
+
+    @Nullable
+    @Override
+    public CredentialRecord getIfPresent(byte[] user, int offset, int length) {
+        return store.getIfPresent(user, offset, length);
+    }
+
+    @Override
+    public CompletableFuture<CredentialRecord> lookup(String user) {
+        return store.lookup(user);
+    }
+
+    @Override
+    public boolean isCurrent(CredentialRecord credentials) {
+        return store.isCurrent(credentials);
+    }
+
+    @Override
+    public void forEachLoaded(Consumer<CredentialRecord> action) {
+        store.forEachLoaded(action);
+    }
+
+    /**
+     * Returns the cache of verified credentials with the given settings. Endpoints configured with
+     * the same settings share a cache, which is invalidated for users whose password changed.
+     *
+     * @param maxSize The maximum number of cached credentials
+     * @param ttl The time after which cached credentials must be verified again
+     * @return The shared cache
+     */
+    @Override
+    public synchronized VerifiedCredentialCache getCache(int maxSize, Duration ttl) {
+        return caches.computeIfAbsent(
+                Arrays.asList(maxSize, ttl),
+                settings -> {
+                    VerifiedCredentialCache cache = new VerifiedCredentialCache(maxSize, ttl);
+                    // Users whose password changed must verify again
+                    store.addChangeListener(users -> users.forEach(cache::invalidateUser));
+                    LOG.info("Created verified credential cache {}", cache);
+                    return cache;
+                });
+    }
+
+    /**
+     * Reloads the password file when it changes. The file is only watched once, the interval of the
+     * first call applies.
+     *
+     * @param pollInterval Interval in which the modification time of the file is checked
+     */
+    public synchronized void watch(Duration pollInterval) {
+        if (reloadInterval == null) {
+            reloadInterval = pollInterval;
+            PasswordFileWatcher.getInstance().register(store, pollInterval);
+        } else if (!reloadInterval.equals(pollInterval)) {
+            LOG.info(
+                    "Password file {} is already checked for changes every {}",
+                    store.getPasswordFile(),
+                    reloadInterval);
+        }
+    }
+
+    /** Releases the credentials once the last endpoint using them closes them. */
+    @Override
+    public void close() {
+        synchronized (REGISTRY) {
+            if (--references > 0) {
+                return;
+            }
+            REGISTRY.remove(canonicalPath, this);
+        }
+        synchronized (this) {
+            if (reloadInterval != null) {
+                PasswordFileWatcher.getInstance().unregister(store);
+                reloadInterval = null;
+            }
+            caches.clear();
+        }
+        LOG.info("Released {}", store);
+    }
+
+    @Override
+    public String toString() {
+        return "SharedCredentials{store=" + store + ", caches=" + caches.size() + '}';
+    }
+}
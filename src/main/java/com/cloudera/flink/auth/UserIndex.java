@@ -0,0 +1,129 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import javax.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Open addressing table of credentials keyed by the UTF-8 encoded user name. It allows looking up
+ * the user of a decoded authorization header directly from its bytes, without creating a string.
+ * The hash of every slot is kept next to the records, so that probing past other users only reads
+ * the arrays of the table and not the user names packed in the {@link CredentialArena}.
+ */
+final class UserIndex {
+
+    private final CredentialRecord[] records;
+
+    private final int[] hashes;
+
+    private final int mask;
+
+    private int size;
+
+    private UserIndex(int capacity) {
+        this.records = new CredentialRecord[capacity];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Indexes the given records. If a user occurs more than once, the last record wins like the
+     * last line of a password file does.
+     */
+    static UserIndex of(List<CredentialRecord> credentials) {
+        // Keep the load factor at or below one half so that probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(1, credentials.size()) * 2 - 1) << 1;
+        UserIndex index = new UserIndex(capacity);
+        for (CredentialRecord record : credentials) {
+            int hash = record.userHash();
+            int slot = hash & index.mask;
+            CredentialRecord candidate;
+            while ((candidate = index.records[slot]) != null
+                    && (index.hashes[slot] != hash || !candidate.isSameUser(record))) {
+                slot = (slot + 1) & index.mask;
+            }
+            if (candidate == null) {
+                index.size++;
+            }
+            index.records[slot] = record;
+            index.hashes[slot] = hash;
+        }
+        return index;
+    }
+
+    @Nullable
+    CredentialRecord get(byte[] user, int offset, int length) {
+        int hash = hash(user, offset, length);
+        int slot = hash & mask;
+        CredentialRecord candidate;
+        while ((candidate = records[slot]) != null) {
+            if (hashes[slot] == hash && candidate.isUser(user, offset, length)) {
+                return candidate;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    @Nullable
+    CredentialRecord get(String user) {
+        byte[] bytes = user.getBytes(StandardCharsets.UTF_8);
+        return get(bytes, 0, bytes.length);
+    }
+
+    /** Looks up the record of the same user as the given one, which may be of another index. */
+    @Nullable
+    CredentialRecord get(CredentialRecord record) {
+        int hash = record.userHash();
+        int slot = hash & mask;
+        CredentialRecord candidate;
+        while ((candidate = records[slot]) != null) {
+            if (hashes[slot] == hash && candidate.isSameUser(record)) {
+                return candidate;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(Consumer<CredentialRecord> action) {
+        for (CredentialRecord record : records) {
+            if (record != null) {
+                action.accept(record);
+            }
+        }
+    }
+
+    static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ bytes[i]) * 0x01000193;
+        }
+        // Spread the bits, the table index only uses the low ones
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+
+/**
+ * Bounded cache of successfully verified authorization headers. Entries are keyed by a salted
+ * SHA-256 digest of the header so that no plaintext credentials are kept in memory. The cache is
+ * split into segments, each of which is an access ordered {@link LinkedHashMap} evicting its least
+ * recently used entry when full. Entries expire after a fixed time to live.
+ *
+ * <p>Looking up a header does not allocate, the digest is computed into a key owned by the calling
+ * thread. Only a key which is going to be stored is allocated, see {@link #keyOf(CharSequence)}.
+ */
+public final class VerifiedCredentialCache {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private static final int DIGEST_LENGTH = 32;
+
+    /** Precedes the two bytes of a character from 0xff upwards, keeping the encoding unique. */
+    private static final byte WIDE_CHAR = (byte) 0xff;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 =
+            ThreadLocal.withInitial(
+                    () -> {
+                        try {
+                            return MessageDigest.getInstance("SHA-256");
+                        } catch (NoSuchAlgorithmException e) {
+                            throw new IllegalStateException("SHA-256 is not available", e);
+                        }
+                    });
+
+    private static final ThreadLocal<Key> PROBE_KEY =
+            ThreadLocal.withInitial(() -> new Key(new byte[DIGEST_LENGTH]));
+
+    private final byte[] keySalt;
+
+    private final long ttlNanos;
+
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public VerifiedCredentialCache(int maxSize, Duration ttl) {
+        checkArgument(maxSize >= 0, "Cache size must not be negative.");
+        checkArgument(!ttl.isNegative(), "Cache TTL must not be negative.");
+        this.keySalt = new byte[16];
+        new SecureRandom().nextBytes(keySalt);
+        this.ttlNanos = ttl.toNanos();
+        if (maxSize == 0 || ttlNanos == 0) {
+            this.segments = new Segment[0];
+        } else {
+            int segmentCount = Math.min(SEGMENT_COUNT, maxSize);
+            this.segments = new Segment[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                // Distribute the remainder so that the total capacity is exactly maxSize
+                int capacity = maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0);
+                segments[i] = new Segment(capacity, evictions);
+            }
+        }
+    }
+
+    /** Creates a cache which never holds any entry. */
+    public static VerifiedCredentialCache disabled() {
+        return new VerifiedCredentialCache(0, Duration.ZERO);
+    }
+
+    public boolean isEnabled() {
+        return segments.length > 0;
+    }
+
+    /**
+     * Computes the cache key of an authorization header.
+     *
+     * @param authorizationHeader The raw value of the authorization header
+     * @return The salted digest of the header
+     */
+    public Key keyOf(CharSequence authorizationHeader) {
+        Key key = new Key(new byte[DIGEST_LENGTH]);
+        digest(authorizationHeader, key);
+        return key;
+    }
+
+    /**
+     * Looks up a previously verified header.
+     *
+     * @param authorizationHeader The raw value of the authorization header
+     * @return The cached verification or null if the header is unknown or the entry has expired
+     */
+    public Entry get(CharSequence authorizationHeader) {
+        if (!isEnabled()) {
+            return null;
+        }
+        return get(probe(authorizationHeader));
+    }
+
+    /**
+     * Computes the key of an authorization header without allocating. The key is owned by the
+     * calling thread and overwritten by its next lookup, {@link Key#copy()} keeps it.
+     *
+     * @param authorizationHeader The raw value of the authorization header
+     * @return The salted digest of the header
+     */
+    public Key probe(CharSequence authorizationHeader) {
+        Key probe = PROBE_KEY.get();
+        digest(authorizationHeader, probe);
+        return probe;
+    }
+
+    /**
+     * Looks up a previously verified header.
+     *
+     * @param key Key of the authorization header
+     * @return The cached verification or null if the header is unknown or the entry has expired
+     */
+    public Entry get(Key key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry entry = segmentFor(key).get(key, System.nanoTime());
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Records a successful verification.
+     *
+     * @param key Key of the authorization header
+     * @param credentials The stored credentials the header was verified against
+     */
+    public void put(Key key, CredentialRecord credentials) {
+        if (!isEnabled()) {
+            return;
+        }
+        segmentFor(key).put(key, new Entry(credentials, System.nanoTime() + ttlNanos));
+    }
+
+    /** Removes all entries belonging to the given user. */
+    public void invalidateUser(String user) {
+        for (Segment segment : segments) {
+            segment.removeUser(user);
+        }
+    }
+
+    /** Removes all entries. */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "VerifiedCredentialCache{size="
+                + size()
+                + ", hits="
+                + getHitCount()
+                + ", misses="
+                + getMissCount()
+                + ", evictions="
+                + getEvictionCount()
+                + '}';
+    }
+
+    private void digest(CharSequence authorizationHeader, Key key) {
+        MessageDigest digest = SHA_256.get();
+        digest.update(keySalt);
+        // Header values are ISO-8859-1, wider characters are escaped to keep the encoding unique
+        for (int i = 0; i < authorizationHeader.length(); i++) {
+            char c = authorizationHeader.charAt(i);
+            if (c < 0xff) {
+                digest.update((byte) c);
+            } else {
+                digest.update(WIDE_CHAR);
+                digest.update((byte) (c >>> 8));
+                digest.update((byte) c);
+            }
+        }
+        try {
+            digest.digest(key.digest, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException("Unexpected SHA-256 digest length", e);
+        }
+        key.hashCode = Arrays.hashCode(key.digest);
+    }
+
+    private Segment segmentFor(Key key) {
+        return segments[Math.floorMod(key.hashCode, segments.length)];
+    }
+
+    /**
+     * Salted digest of an authorization header. Keys handed out by {@link #keyOf(CharSequence)}
+     * never change, only the per-thread lookup key is overwritten.
+     */
+    public static final class Key {
+
+        private final byte[] digest;
+
+        private int hashCode;
+
+        private Key(byte[] digest) {
+            this.digest = digest;
+        }
+
+        /** Copies the key, so that it can be kept after the next lookup of this thread. */
+        public Key copy() {
+            Key copy = new Key(digest.clone());
+            copy.hashCode = hashCode;
+            return copy;
+        }
+
+        /** Compares the digests in constant time. */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            return MessageDigest.isEqual(digest, ((Key) o).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /** A successful verification of an authorization header. */
+    public static final class Entry {
+
+        private final CredentialRecord credentials;
+
+        private final long expiresAtNanos;
+
+        private Entry(CredentialRecord credentials, long expiresAtNanos) {
+            this.credentials = credentials;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        public String getUser() {
+            return credentials.getUser();
+        }
+
+        public CredentialRecord getCredentials() {
+            return credentials;
+        }
+    }
+
+    private static final class Segment {
+
+        private final LinkedHashMap<Key, Entry> entries;
+
+        private Segment(int capacity, LongAdder evictions) {
+            this.entries =
+                    new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                            if (size() > capacity) {
+                                evictions.increment();
+                                return true;
+                            }
+                            return false;
+                        }
+                    };
+        }
+
+        synchronized Entry get(Key key, long now) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAtNanos - now <= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        synchronized void put(Key key, Entry entry) {
+            entries.put(key, entry);
+        }
+
+        synchronized void removeUser(String user) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getUser().equals(user)) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
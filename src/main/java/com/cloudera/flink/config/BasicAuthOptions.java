@@ -21,6 +21,9 @@ package com.cloudera.flink.config;
 import org.apache.flink.annotation.docs.Documentation;
 import org.apache.flink.configuration.ConfigOption;
 
+import java.time.Duration;
+import java.util.List;
+
 import static org.apache.flink.configuration.ConfigOptions.key;
 
 /** The set of configuration options relating to basic authentication. */
@@ -42,6 +45,104 @@ public class BasicAuthOptions {
                     .noDefaultValue()
                     .withDescription("Basic authentication password file.");
 
+    /** Whether the password file is reloaded when it changes. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Boolean> BASIC_AUTH_PWD_FILE_RELOAD_ENABLED =
+            key("security.basic.auth.password.file.reload.enabled")
+                    .booleanType()
+                    .defaultValue(true)
+                    .withDescription(
+                            "Reloads the basic authentication password file and the client"
+                                    + " credentials file when they change, so that users and"
+                                    + " secrets can be rotated without a restart.");
+
+    /** Interval in which the password file is checked for changes. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Duration> BASIC_AUTH_PWD_FILE_RELOAD_INTERVAL =
+            key("security.basic.auth.password.file.reload.interval")
+                    .durationType()
+                    .defaultValue(Duration.ofSeconds(10))
+                    .withDescription(
+                            "Interval in which the modification time of the password file and"
+                                    + " the client credentials file is checked. Changes reported by the file system are picked up"
+                                    + " immediately, polling covers file systems without change"
+                                    + " notifications.");
+
+    /** Identifier of the provider of the credentials. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<String> BASIC_AUTH_PROVIDER =
+            key("security.basic.auth.provider")
+                    .stringType()
+                    .defaultValue("file")
+                    .withDescription(
+                            "Provider of the stored credentials. 'file' reads the password file,"
+                                    + " 'simulated-directory' serves the password file like a"
+                                    + " remote directory with a fixed latency for load tests."
+                                    + " Further providers are discovered via the service loader"
+                                    + " of com.cloudera.flink.provider.CredentialProviderFactory.");
+
+    /** Maximum number of users cached by a provider with a remote backend. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Integer> BASIC_AUTH_PROVIDER_CACHE_MAX_SIZE =
+            key("security.basic.auth.provider.cache.max-size")
+                    .intType()
+                    .defaultValue(10000)
+                    .withDescription(
+                            "Maximum number of users whose stored credentials a provider with a"
+                                    + " remote backend keeps in memory, including unknown users.");
+
+    /** Time after which a provider with a remote backend looks up a user again. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Duration> BASIC_AUTH_PROVIDER_CACHE_TTL =
+            key("security.basic.auth.provider.cache.ttl")
+                    .durationType()
+                    .defaultValue(Duration.ofMinutes(1))
+                    .withDescription(
+                            "Time after which a provider with a remote backend looks up the stored"
+                                    + " credentials of a user again. Changes of the backend take"
+                                    + " effect after this time.");
+
+    /** Maximum number of users a provider looks up in one round trip. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Integer> BASIC_AUTH_PROVIDER_BATCH_MAX_SIZE =
+            key("security.basic.auth.provider.batch.max-size")
+                    .intType()
+                    .defaultValue(100)
+                    .withDescription(
+                            "Maximum number of users a provider with a remote backend looks up in"
+                                    + " one round trip.");
+
+    /** Maximum number of concurrent round trips of a provider. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Integer> BASIC_AUTH_PROVIDER_BATCH_MAX_IN_FLIGHT =
+            key("security.basic.auth.provider.batch.max-in-flight")
+                    .intType()
+                    .defaultValue(4)
+                    .withDescription(
+                            "Maximum number of concurrent round trips of a provider with a remote"
+                                    + " backend. Lookups arriving while all round trips are in"
+                                    + " flight are sent together in the next one.");
+
+    /** Time after which a round trip of a provider fails. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Duration> BASIC_AUTH_PROVIDER_LOOKUP_TIMEOUT =
+            key("security.basic.auth.provider.lookup.timeout")
+                    .durationType()
+                    .defaultValue(Duration.ofSeconds(5))
+                    .withDescription(
+                            "Time after which a round trip of a provider with a remote backend"
+                                    + " fails if the backend has not answered. The requests waiting"
+                                    + " for it are rejected with 503.");
+
+    /** Latency of the simulated directory. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Duration> BASIC_AUTH_PROVIDER_SIMULATED_LATENCY =
+            key("security.basic.auth.provider.simulated-directory.latency")
+                    .durationType()
+                    .defaultValue(Duration.ofMillis(50))
+                    .withDescription(
+                            "Time the 'simulated-directory' provider takes for every round trip.");
+
     /** Basic authentication client credentials user:pwd. */
     @Documentation.Section(Documentation.Sections.EXPERT_REST)
     public static final ConfigOption<String> BASIC_AUTH_CLIENT_CREDENTIALS =
@@ -49,4 +150,290 @@ public class BasicAuthOptions {
                     .stringType()
                     .noDefaultValue()
                     .withDescription("Basic authentication client credentials user:pwd.");
+
+    /** File with the basic authentication client credentials per endpoint. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<String> BASIC_AUTH_CLIENT_CREDENTIALS_FILE =
+            key("security.basic.auth.client.credentials.file")
+                    .stringType()
+                    .noDefaultValue()
+                    .withDescription(
+                            "File with the client credentials per endpoint, one '<endpoint>"
+                                    + " <user>:<pwd>' line each, where the endpoint is host:port,"
+                                    + " host, *:port or *. Endpoints which are not listed use"
+                                    + " security.basic.auth.client.credentials. The file is"
+                                    + " reloaded when it changes.");
+
+    /** Maximum length of an authorization header. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Integer> BASIC_AUTH_HEADER_MAX_LENGTH =
+            key("security.basic.auth.header.max-length")
+                    .intType()
+                    .defaultValue(4096)
+                    .withDescription(
+                            "Maximum number of characters of an authorization header. Longer"
+                                    + " headers are rejected without being decoded.");
+
+    /** Requests which are passed on without authentication. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<List<String>> BASIC_AUTH_UNAUTHENTICATED_REQUESTS =
+            key("security.basic.auth.unauthenticated.requests")
+                    .stringType()
+                    .asList()
+                    .noDefaultValue()
+                    .withDescription(
+                            "Requests which do not require authentication, like health checks and"
+                                    + " static assets. Every pattern is an optional comma separated"
+                                    + " list of methods followed by a path, for example 'GET,HEAD"
+                                    + " /assets/**'. A '*' segment matches any single path segment"
+                                    + " and a trailing '/**' the path and everything below it.");
+
+    /** Maximum number of successfully verified credentials kept in the cache. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Integer> BASIC_AUTH_CACHE_MAX_SIZE =
+            key("security.basic.auth.cache.max-size")
+                    .intType()
+                    .defaultValue(1000)
+                    .withDescription(
+                            "Maximum number of successfully verified authorization headers kept in"
+                                    + " memory. The least recently used entry is evicted when the"
+                                    + " cache is full. Set to 0 to disable the cache.");
+
+    /** Time after which a cached verification expires. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Duration> BASIC_AUTH_CACHE_TTL =
+            key("security.basic.auth.cache.ttl")
+                    .durationType()
+                    .defaultValue(Duration.ofMinutes(5))
+                    .withDescription(
+                            "Time after which a cached verification expires and the password has"
+                                    + " to be verified again.");
+
+    /** Whether credentials are verified outside of the netty event loop. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Boolean> BASIC_AUTH_VERIFICATION_ASYNC =
+            key("security.basic.auth.verification.async")
+                    .booleanType()
+                    .defaultValue(false)
+                    .withDescription(
+                            "Verifies passwords on a dedicated thread pool instead of the netty"
+                                    + " event loop, so that hashing does not delay other"
+                                    + " connections served by the same event loop.");
+
+    /** Number of threads verifying credentials. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Integer> BASIC_AUTH_VERIFICATION_THREADS =
+            key("security.basic.auth.verification.threads")
+                    .intType()
+                    .defaultValue(2)
+                    .withDescription(
+                            "Number of threads verifying passwords if asynchronous verification is"
+                                    + " enabled.");
+
+    /** Maximum number of credential verifications waiting for a thread. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Integer> BASIC_AUTH_VERIFICATION_QUEUE_SIZE =
+            key("security.basic.auth.verification.queue-size")
+                    .intType()
+                    .defaultValue(1000)
+                    .withDescription(
+                            "Maximum number of password verifications waiting for a thread if"
+                                    + " asynchronous verification is enabled. Requests exceeding"
+                                    + " this limit are rejected with 503 Service Unavailable.");
+
+    /** Whether the authentication is warmed up when the endpoint accepts its first connection. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Boolean> BASIC_AUTH_WARM_UP_ENABLED =
+            key("security.basic.auth.warm-up.enabled")
+                    .booleanType()
+                    .defaultValue(false)
+                    .withDescription(
+                            "Authenticates synthetic requests on a background thread when the"
+                                    + " endpoint accepts its first connection, so that the first"
+                                    + " logins do not run interpreted code. The measured cost of a"
+                                    + " password hash is logged along with recommended verification"
+                                    + " and cache settings. The warm-up keeps a processor busy"
+                                    + " hashing for up to the configured maximum duration while the"
+                                    + " first requests of the endpoint are served, which slows them"
+                                    + " down on machines with few processors.");
+
+    /** Maximum time spent warming up. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Duration> BASIC_AUTH_WARM_UP_MAX_DURATION =
+            key("security.basic.auth.warm-up.max-duration")
+                    .durationType()
+                    .defaultValue(Duration.ofSeconds(2))
+                    .withDescription("Maximum time the warm-up of the authentication takes.");
+
+    /** Maximum number of authentications waiting for a verification or a lookup. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Integer> BASIC_AUTH_ADMISSION_MAX_PENDING =
+            key("security.basic.auth.admission.max-pending")
+                    .intType()
+                    .defaultValue(1000)
+                    .withDescription(
+                            "Maximum number of requests waiting for the verification of their"
+                                    + " password or the lookup of their user. Requests exceeding"
+                                    + " this limit are rejected with 503 Service Unavailable,"
+                                    + " requests with cached credentials are always served. 0"
+                                    + " disables the limit.");
+
+    /** Time after which a request rejected by the admission control should be retried. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Duration> BASIC_AUTH_ADMISSION_RETRY_AFTER =
+            key("security.basic.auth.admission.retry-after")
+                    .durationType()
+                    .defaultValue(Duration.ofSeconds(1))
+                    .withDescription(
+                            "Retry-After of the 503 Service Unavailable responses to requests"
+                                    + " rejected because too many authentications are pending.");
+
+    /** Whether the authentication outcomes are written to the audit log. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Boolean> BASIC_AUTH_AUDIT_ENABLED =
+            key("security.basic.auth.audit.enabled")
+                    .booleanType()
+                    .defaultValue(false)
+                    .withDescription(
+                            "Writes logins and rejected requests to the com.cloudera.flink.audit"
+                                    + " logger. The records are written by a background thread of"
+                                    + " the endpoint, repeated failures are summarized.");
+
+    /** Number of audit events buffered for the background thread. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Integer> BASIC_AUTH_AUDIT_CAPACITY =
+            key("security.basic.auth.audit.capacity")
+                    .intType()
+                    .defaultValue(8192)
+                    .withDescription(
+                            "Number of audit events buffered for the thread writing the audit log."
+                                    + " Events exceeding it are dropped and counted.");
+
+    /** Interval in which repeated failures are summarized in the audit log. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Duration> BASIC_AUTH_AUDIT_SUMMARY_INTERVAL =
+            key("security.basic.auth.audit.summary-interval")
+                    .durationType()
+                    .defaultValue(Duration.ofMinutes(1))
+                    .withDescription(
+                            "Interval in which repeated failures of the same user and address are"
+                                    + " written as a single summary to the audit log.");
+
+    /** Whether the authentication metrics are registered as MBean. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Boolean> BASIC_AUTH_METRICS_JMX_ENABLED =
+            key("security.basic.auth.metrics.jmx.enabled")
+                    .booleanType()
+                    .defaultValue(true)
+                    .withDescription(
+                            "Registers the authentication outcome counters and the password hash"
+                                    + " latency as MBean of the platform MBean server.");
+
+    /** Reporters publishing the authentication metrics. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<List<String>> BASIC_AUTH_METRICS_REPORTERS =
+            key("security.basic.auth.metrics.reporters")
+                    .stringType()
+                    .asList()
+                    .noDefaultValue()
+                    .withDescription(
+                            "Class names of com.cloudera.flink.metrics.AuthenticationMetricsReporter"
+                                    + " implementations which publish the authentication metrics,"
+                                    + " for example to a Flink metric group.");
+
+    /** Whether a session cookie is issued after a successful authentication. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Boolean> BASIC_AUTH_SESSION_ENABLED =
+            key("security.basic.auth.session.enabled")
+                    .booleanType()
+                    .defaultValue(false)
+                    .withDescription(
+                            "Issues a signed session cookie after a successful authentication."
+                                    + " Requests carrying a valid cookie are accepted without"
+                                    + " verifying the password again.");
+
+    /** Lifetime of a session cookie. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Duration> BASIC_AUTH_SESSION_TTL =
+            key("security.basic.auth.session.ttl")
+                    .durationType()
+                    .defaultValue(Duration.ofMinutes(15))
+                    .withDescription("Time after which a session cookie expires.");
+
+    /** Keys signing the session cookies. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<List<String>> BASIC_AUTH_SESSION_SECRETS =
+            key("security.basic.auth.session.secrets")
+                    .stringType()
+                    .asList()
+                    .noDefaultValue()
+                    .withDescription(
+                            "Secrets signing the session cookies. The first secret signs new"
+                                    + " cookies, all of them are accepted, which allows rotating"
+                                    + " the secrets without logging out the users. If not set, a"
+                                    + " random secret is generated and the cookies are only valid"
+                                    + " for this process.");
+
+    /** Whether failed authentications are throttled. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Boolean> BASIC_AUTH_THROTTLE_ENABLED =
+            key("security.basic.auth.throttle.enabled")
+                    .booleanType()
+                    .defaultValue(false)
+                    .withDescription(
+                            "Rejects authentications from addresses and of users which failed too"
+                                    + " often recently with 429 Too Many Requests, before their"
+                                    + " password is hashed.");
+
+    /** Failed authentications allowed per source address in a row. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Integer> BASIC_AUTH_THROTTLE_ADDRESS_BURST =
+            key("security.basic.auth.throttle.address.burst")
+                    .intType()
+                    .defaultValue(20)
+                    .withDescription(
+                            "Number of failed authentications a source address may make in a row"
+                                    + " before it is throttled. 0 disables throttling by"
+                                    + " address.");
+
+    /** Time after which a source address may fail once more. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Duration> BASIC_AUTH_THROTTLE_ADDRESS_REFILL_INTERVAL =
+            key("security.basic.auth.throttle.address.refill-interval")
+                    .durationType()
+                    .defaultValue(Duration.ofSeconds(1))
+                    .withDescription(
+                            "Time after which a throttled source address may make one more"
+                                    + " attempt.");
+
+    /** Failed authentications allowed per user in a row. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Integer> BASIC_AUTH_THROTTLE_USER_BURST =
+            key("security.basic.auth.throttle.user.burst")
+                    .intType()
+                    .defaultValue(10)
+                    .withDescription(
+                            "Number of failed authentications of a user in a row before the user"
+                                    + " is throttled. Users whose credentials are cached are not"
+                                    + " affected. 0 disables throttling by user.");
+
+    /** Time after which a user may fail once more. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Duration> BASIC_AUTH_THROTTLE_USER_REFILL_INTERVAL =
+            key("security.basic.auth.throttle.user.refill-interval")
+                    .durationType()
+                    .defaultValue(Duration.ofSeconds(6))
+                    .withDescription(
+                            "Time after which a throttled user may make one more attempt.");
+
+    /** Maximum number of tracked addresses and users. */
+    @Documentation.Section(Documentation.Sections.EXPERT_REST)
+    public static final ConfigOption<Integer> BASIC_AUTH_THROTTLE_MAX_ENTRIES =
+            key("security.basic.auth.throttle.max-entries")
+                    .intType()
+                    .defaultValue(10000)
+                    .withDescription(
+                            "Maximum number of source addresses and of users whose failures are"
+                                    + " tracked. The least recently failing ones are forgotten"
+                                    + " first.");
 }
@@ -0,0 +1,225 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.metrics;
+
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.HistogramStatistics;
+import org.apache.flink.metrics.MetricGroup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters of the authentication outcomes and the latency of computing password hashes. Recording
+ * only increments striped counters, so the metrics add no contention to the request path.
+ */
+public final class AuthenticationMetrics implements AuthenticationMetricsMXBean {
+
+    /** Name of the metric group the metrics are registered under. */
+    public static final String GROUP_NAME = "basicAuthentication";
+
+    private static final double NANOS_PER_MICRO = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private final LongAdder[] outcomes = new LongAdder[AuthenticationOutcome.values().length];
+
+    private final LatencyHistogram hashLatency = new LatencyHistogram();
+
+    private volatile IntSupplier pendingAuthentications = () -> 0;
+
+    private volatile LongSupplier cacheHits = () -> 0L;
+
+    private volatile LongSupplier cacheMisses = () -> 0L;
+
+    public AuthenticationMetrics() {
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+    }
+
+    public void record(AuthenticationOutcome outcome) {
+        outcomes[outcome.ordinal()].increment();
+    }
+
+    /**
+     * Records the time it took to compute a password hash.
+     *
+     * @param nanos The duration in nanoseconds
+     */
+    public void recordHashLatency(long nanos) {
+        hashLatency.update(nanos);
+    }
+
+    /**
+     * Sets the source of the number of authentications waiting for a verification or a lookup,
+     * which is owned by the admission control of the endpoint.
+     */
+    public void setPendingAuthentications(IntSupplier pendingAuthentications) {
+        this.pendingAuthentications = pendingAuthentications;
+    }
+
+    /**
+     * Sets the sources of the hits and misses of the verified credential cache, which may be shared
+     * with the other endpoints using the same password file.
+     */
+    public void setCacheCounts(LongSupplier cacheHits, LongSupplier cacheMisses) {
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+    }
+
+    public long getCount(AuthenticationOutcome outcome) {
+        return outcomes[outcome.ordinal()].sum();
+    }
+
+    public LatencyHistogram getHashLatency() {
+        return hashLatency;
+    }
+
+    /**
+     * Registers the metrics in a Flink metric group. Every outcome becomes a gauge of its count and
+     * the hash latency a histogram in nanoseconds. The pending authentications become a gauge of
+     * their current number, the hits and misses of the cache gauges of their counts.
+     *
+     * @param parent The group to add the {@value #GROUP_NAME} group to
+     */
+    public void register(MetricGroup parent) {
+        MetricGroup group = parent.addGroup(GROUP_NAME);
+        for (AuthenticationOutcome outcome : AuthenticationOutcome.values()) {
+            group.gauge(outcome.getMetricName(), (Gauge<Long>) () -> getCount(outcome));
+        }
+        group.histogram("hashLatency", hashLatency);
+        group.gauge("pendingAuthentications", (Gauge<Integer>) this::getPendingAuthentications);
+        group.gauge("cacheHits", (Gauge<Long>) this::getCacheHitCount);
+        group.gauge("cacheMisses", (Gauge<Long>) this::getCacheMissCount);
+    }
+
+    @Override
+    public long getSuccessCount() {
+        return getCount(AuthenticationOutcome.SUCCESS);
+    }
+
+    @Override
+    public long getMissingHeaderCount() {
+        return getCount(AuthenticationOutcome.MISSING_HEADER);
+    }
+
+    @Override
+    public long getUnknownSchemeCount() {
+        return getCount(AuthenticationOutcome.UNKNOWN_SCHEME);
+    }
+
+    @Override
+    public long getMalformedHeaderCount() {
+        return getCount(AuthenticationOutcome.MALFORMED_HEADER);
+    }
+
+    @Override
+    public long getUnknownUserCount() {
+        return getCount(AuthenticationOutcome.UNKNOWN_USER);
+    }
+
+    @Override
+    public long getInvalidPasswordCount() {
+        return getCount(AuthenticationOutcome.INVALID_PASSWORD);
+    }
+
+    @Override
+    public long getForbiddenCount() {
+        return getCount(AuthenticationOutcome.FORBIDDEN);
+    }
+
+    @Override
+    public long getThrottledCount() {
+        return getCount(AuthenticationOutcome.THROTTLED);
+    }
+
+    @Override
+    public long getOverloadedCount() {
+        return getCount(AuthenticationOutcome.OVERLOADED);
+    }
+
+    @Override
+    public long getErrorCount() {
+        return getCount(AuthenticationOutcome.ERROR);
+    }
+
+    @Override
+    public int getPendingAuthentications() {
+        return pendingAuthentications.getAsInt();
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return cacheHits.getAsLong();
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return cacheMisses.getAsLong();
+    }
+
+    @Override
+    public long getHashCount() {
+        return hashLatency.getCount();
+    }
+
+    @Override
+    public double getHashLatencyMeanMicros() {
+        return hashLatency.getStatistics().getMean() / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public double getHashLatencyP50Micros() {
+        return getHashLatencyQuantileMicros(0.5);
+    }
+
+    @Override
+    public double getHashLatencyP99Micros() {
+        return getHashLatencyQuantileMicros(0.99);
+    }
+
+    @Override
+    public double getHashLatencyP999Micros() {
+        return getHashLatencyQuantileMicros(0.999);
+    }
+
+    @Override
+    public double getHashLatencyMaxMicros() {
+        return hashLatency.getStatistics().getMax() / NANOS_PER_MICRO;
+    }
+
+    private double getHashLatencyQuantileMicros(double quantile) {
+        HistogramStatistics statistics = hashLatency.getStatistics();
+        return statistics.getQuantile(quantile) / NANOS_PER_MICRO;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("AuthenticationMetrics{");
+        for (AuthenticationOutcome outcome : AuthenticationOutcome.values()) {
+            builder.append(outcome.getMetricName()).append('=').append(getCount(outcome));
+            builder.append(", ");
+        }
+        builder.append("pending=").append(getPendingAuthentications()).append(", ");
+        builder.append("cacheHits=").append(getCacheHitCount()).append(", ");
+        builder.append("cacheMisses=").append(getCacheMissCount()).append(", ");
+        return builder.append("hashes=").append(getHashCount()).append('}').toString();
+    }
+}
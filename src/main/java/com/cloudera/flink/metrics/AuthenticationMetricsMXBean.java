@@ -0,0 +1,65 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.metrics;
+
+/** JMX view of the {@link AuthenticationMetrics} of an endpoint. */
+public interface AuthenticationMetricsMXBean {
+
+    long getSuccessCount();
+
+    long getMissingHeaderCount();
+
+    long getUnknownSchemeCount();
+
+    long getMalformedHeaderCount();
+
+    long getUnknownUserCount();
+
+    long getInvalidPasswordCount();
+
+    long getForbiddenCount();
+
+    long getThrottledCount();
+
+    long getOverloadedCount();
+
+    long getErrorCount();
+
+    /** Returns the number of authentications waiting for a verification or a lookup. */
+    int getPendingAuthentications();
+
+    /** Returns the number of logins served from the verified credential cache. */
+    long getCacheHitCount();
+
+    /** Returns the number of cache lookups which had to verify the password. */
+    long getCacheMissCount();
+
+    /** Returns the number of computed password hashes. */
+    long getHashCount();
+
+    double getHashLatencyMeanMicros();
+
+    double getHashLatencyP50Micros();
+
+    double getHashLatencyP99Micros();
+
+    double getHashLatencyP999Micros();
+
+    double getHashLatencyMaxMicros();
+}
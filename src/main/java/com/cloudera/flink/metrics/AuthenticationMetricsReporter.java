@@ -0,0 +1,38 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.metrics;
+
+/**
+ * Publishes the {@link AuthenticationMetrics} of an endpoint to a metric system. Reporters are
+ * configured by class name and need a public no-argument constructor. {@link
+ * AuthenticationMetrics#register(org.apache.flink.metrics.MetricGroup)} bridges the metrics to a
+ * Flink metric group.
+ */
+public interface AuthenticationMetricsReporter {
+
+    /**
+     * Called once when the metrics of an endpoint are created.
+     *
+     * @param metrics The metrics to report
+     */
+    void open(AuthenticationMetrics metrics);
+
+    /** Called once when the endpoint whose metrics are reported shuts down. */
+    default void close() {}
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.metrics;
+
+/** The outcome of authenticating a request. */
+public enum AuthenticationOutcome {
+    /** The credentials were verified or found in the cache. */
+    SUCCESS("success"),
+
+    /** The request had no authorization header. */
+    MISSING_HEADER("missingHeader"),
+
+    /** The authorization header used another scheme than basic. */
+    UNKNOWN_SCHEME("unknownScheme"),
+
+    /** The authorization header was too large, not valid base 64 or had no password. */
+    MALFORMED_HEADER("malformedHeader"),
+
+    /** The user is not contained in the password file. */
+    UNKNOWN_USER("unknownUser"),
+
+    /** The password did not match the stored hash. */
+    INVALID_PASSWORD("invalidPassword"),
+
+    /** The credentials were valid, but the user is not permitted to make the request. */
+    FORBIDDEN("forbidden"),
+
+    /** Too many authentications of the source address or user failed recently. */
+    THROTTLED("throttled"),
+
+    /** The request was rejected because too many verifications were pending. */
+    OVERLOADED("overloaded"),
+
+    /** An unexpected exception occurred while authenticating. */
+    ERROR("error");
+
+    private final String metricName;
+
+    AuthenticationOutcome(String metricName) {
+        this.metricName = metricName;
+    }
+
+    /** Returns the name of the counter of this outcome. */
+    public String getMetricName() {
+        return metricName;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.metrics;
+
+import org.apache.flink.metrics.Histogram;
+import org.apache.flink.metrics.HistogramStatistics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds with log-linear buckets. Every power of two is split into
+ * four buckets, so quantiles are accurate to 25% while recording a value only increments a striped
+ * counter. Values below a microsecond share the first bucket, values above the last power of two
+ * the last one. The raw values are not retained.
+ */
+public final class LatencyHistogram implements Histogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Exponent of the smallest tracked value, about a microsecond. */
+    private static final int MIN_EXPONENT = 10;
+
+    /** Exponent of the largest tracked value, about 18 minutes. */
+    private static final int MAX_EXPONENT = 40;
+
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    @Override
+    public void update(long nanos) {
+        long value = Math.max(nanos, 0L);
+        buckets[bucketOf(value)].increment();
+        sum.add(value);
+        min.accumulate(value);
+        max.accumulate(value);
+    }
+
+    @Override
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public HistogramStatistics getStatistics() {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        return new Statistics(counts, count, sum.sum(), min.get(), max.get());
+    }
+
+    static int bucketOf(long value) {
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent < MIN_EXPONENT) {
+            return 0;
+        } else if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    /** Returns the smallest value which falls into the bucket following the given one. */
+    static long upperBoundOf(int bucket) {
+        int exponent = bucket / SUB_BUCKETS + MIN_EXPONENT;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /** A snapshot of the bucket counts. */
+    private static final class Statistics extends HistogramStatistics {
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long sum;
+
+        private final long min;
+
+        private final long max;
+
+        private Statistics(long[] counts, long count, long sum, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = count == 0 ? 0 : min;
+            this.max = count == 0 ? 0 : max;
+        }
+
+        /** Returns the upper bound of the bucket containing the quantile. */
+        @Override
+        public double getQuantile(double quantile) {
+            if (count == 0) {
+                return 0.0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return Math.min(upperBoundOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        /** The raw values are not retained, so no values are returned. */
+        @Override
+        public long[] getValues() {
+            return new long[0];
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(count, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public double getMean() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        /** Estimates the standard deviation from the bucket midpoints. */
+        @Override
+        public double getStdDev() {
+            if (count < 2) {
+                return 0.0;
+            }
+            double mean = getMean();
+            double squares = 0.0;
+            long lowerBound = 0;
+            for (int i = 0; i < counts.length; i++) {
+                long upperBound = upperBoundOf(i);
+                if (counts[i] > 0) {
+                    double deviation = (lowerBound + upperBound) / 2.0 - mean;
+                    squares += counts[i] * deviation * deviation;
+                }
+                lowerBound = upperBound;
+            }
+            return Math.sqrt(squares / (count - 1));
+        }
+
+        @Override
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public long getMin() {
+            return min;
+        }
+    }
+}
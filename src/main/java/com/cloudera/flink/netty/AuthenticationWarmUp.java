@@ -0,0 +1,304 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.configuration.Configuration;
+
+import org.apache.flink.shaded.netty4.io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.DefaultFullHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.FullHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaderNames;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpMethod;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpVersion;
+
+import com.cloudera.flink.auth.CredentialProvider;
+import com.cloudera.flink.auth.CredentialRecord;
+import com.cloudera.flink.auth.CredentialStore;
+import com.cloudera.flink.auth.HashAlgorithm;
+import com.cloudera.flink.auth.VerifiedCredentialCache;
+import com.cloudera.flink.config.BasicAuthOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms up the authentication of an endpoint before its users log in. Synthetic requests are
+ * authenticated by a handler of their own, which shares nothing but the error responses with the
+ * handlers of the endpoint, so that the classes of the successful and the rejected paths are loaded
+ * and their code is compiled. Afterwards the cost of a password hash is measured for every
+ * algorithm and cost among the loaded credentials and logged along with the settings of the
+ * verification which do not fit the most expensive one.
+ */
+final class AuthenticationWarmUp implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuthenticationWarmUp.class);
+
+    private static final String USER = "warm-up";
+
+    private static final String PASSWORD = "testpwd";
+
+    private static final String HASH = "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/";
+
+    /** Requests authenticated at most, enough for the JIT to compile the hashing. */
+    private static final int MAX_REQUESTS = 5000;
+
+    /** Hashes timed at most once the code is compiled. */
+    private static final int MAX_MEASURED_HASHES = 500;
+
+    /** Cost of a hash from which it noticeably delays the other connections of an event loop. */
+    private static final long SLOW_HASH_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Configuration configuration;
+
+    private final Map<String, String> responseHeaders;
+
+    /** The credentials of the endpoint, whose hashes are measured. */
+    private final CredentialProvider credentials;
+
+    AuthenticationWarmUp(
+            Configuration configuration,
+            Map<String, String> responseHeaders,
+            CredentialProvider credentials) {
+        this.configuration = configuration;
+        this.responseHeaders = responseHeaders;
+        this.credentials = credentials;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        try {
+            List<HashCost> costs =
+                    warmUp(
+                            start
+                                    + configuration
+                                            .get(BasicAuthOptions.BASIC_AUTH_WARM_UP_MAX_DURATION)
+                                            .toNanos());
+            int threads = verificationThreads(configuration);
+            LOG.info(
+                    "Warmed up authentication in {} ms",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            HashCost mostExpensive = null;
+            for (HashCost cost : costs) {
+                LOG.info(
+                        "{} {} password hash of cost {} takes {} us, {} verify up to {} logins"
+                                + " per second",
+                        cost.loaded ? "A loaded" : "A synthetic",
+                        cost.algorithm,
+                        cost.cost,
+                        TimeUnit.NANOSECONDS.toMicros(cost.nanos),
+                        threads == 0 ? "every event loop can" : threads + " verification threads",
+                        Math.max(1, threads) * TimeUnit.SECONDS.toNanos(1) / cost.nanos);
+                if (cost.loaded && (mostExpensive == null || cost.nanos > mostExpensive.nanos)) {
+                    mostExpensive = cost;
+                }
+            }
+            if (mostExpensive == null) {
+                LOG.info(
+                        "The hashes of the users are not known in advance, the settings of the"
+                                + " verification are not checked against their cost");
+                return;
+            }
+            for (String recommendation :
+                    recommend(
+                            mostExpensive.nanos,
+                            configuration,
+                            Runtime.getRuntime().availableProcessors())) {
+                LOG.warn("{} (measured with {} hashes)", recommendation, mostExpensive.algorithm);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to warm up authentication", e);
+        }
+    }
+
+    /**
+     * Authenticates synthetic requests and measures the cost of a password hash of every algorithm
+     * and cost among the loaded credentials, both until the deadline at the latest. If no
+     * credentials are loaded in advance, the synthetic hash is measured instead.
+     *
+     * @param deadlineNanos The value of {@link System#nanoTime} at which the warm-up ends
+     * @return The average time of a password hash per algorithm and cost
+     */
+    List<HashCost> warmUp(long deadlineNanos) {
+        long start = System.nanoTime();
+        // The requests get half of the time, the measurement of the compiled hashing the rest
+        authenticateRequests(start + (deadlineNanos - start) / 2);
+
+        // One record of every algorithm and cost stands for the others
+        Map<List<Object>, CredentialRecord> representatives = new LinkedHashMap<>();
+        credentials.forEachLoaded(
+                record ->
+                        representatives.putIfAbsent(
+                                Arrays.asList(record.getAlgorithm(), record.getCost()), record));
+        boolean loaded = !representatives.isEmpty();
+        if (!loaded) {
+            representatives.put(Collections.emptyList(), CredentialRecord.parse(USER, HASH));
+        }
+        List<HashCost> costs = new ArrayList<>();
+        int remaining = representatives.size();
+        for (CredentialRecord record : representatives.values()) {
+            long now = System.nanoTime();
+            // Every algorithm gets its share of the remaining time
+            long nanos = measureHash(record, now + (deadlineNanos - now) / remaining--);
+            costs.add(new HashCost(record.getAlgorithm(), record.getCost(), nanos, loaded));
+        }
+        return costs;
+    }
+
+    private void authenticateRequests(long deadlineNanos) {
+        ServerBasicHttpAuthenticator authenticator =
+                ServerBasicHttpAuthenticator.builder(
+                                CredentialStore.of(Collections.singletonMap(USER, HASH)),
+                                responseHeaders)
+                        .setCache(new VerifiedCredentialCache(1, Duration.ofHours(1)))
+                        .build();
+        // A login, a wrong password, a missing and a malformed header
+        String[] authorizations = {
+            basic(USER + ':' + PASSWORD), basic(USER + ":wrongpwd"), null, "Basic !!!",
+        };
+        for (int i = 0; i < MAX_REQUESTS && System.nanoTime() < deadlineNanos; i++) {
+            EmbeddedChannel channel = new EmbeddedChannel(authenticator);
+            FullHttpRequest request =
+                    new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/overview");
+            String authorization = authorizations[i % authorizations.length];
+            if (authorization != null) {
+                request.headers().set(HttpHeaderNames.AUTHORIZATION, authorization);
+            }
+            channel.writeInbound(request);
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    /**
+     * Returns the average time of a password hash, timing at least one. The password of a loaded
+     * record is not known, a wrong one costs the same hash.
+     */
+    private static long measureHash(CredentialRecord record, long deadlineNanos) {
+        byte[] password = PASSWORD.getBytes(StandardCharsets.UTF_8);
+        long start = System.nanoTime();
+        long end = start;
+        int hashes = 0;
+        do {
+            record.verify(password);
+            hashes++;
+            end = System.nanoTime();
+        } while (hashes < MAX_MEASURED_HASHES && end < deadlineNanos);
+        return Math.max(1, (end - start) / hashes);
+    }
+
+    /**
+     * Checks the settings of the verification against the cost of a password hash.
+     *
+     * @param hashNanos The time of a password hash in nanoseconds
+     * @param processors The number of processors available to the JVM
+     * @return A recommendation for every setting which does not fit the cost
+     */
+    static List<String> recommend(long hashNanos, Configuration configuration, int processors) {
+        List<String> recommendations = new ArrayList<>();
+        int threads = verificationThreads(configuration);
+        if (threads == 0) {
+            if (hashNanos >= SLOW_HASH_NANOS) {
+                recommendations.add(
+                        "Every login blocks its event loop for "
+                                + TimeUnit.NANOSECONDS.toMicros(hashNanos)
+                                + " us, consider enabling "
+                                + BasicAuthOptions.BASIC_AUTH_VERIFICATION_ASYNC.key());
+            }
+        } else {
+            if (threads > processors) {
+                recommendations.add(
+                        "Hashing is bound by the "
+                                + processors
+                                + " processors, "
+                                + threads
+                                + " verification threads do not verify faster than "
+                                + processors
+                                + ", consider reducing "
+                                + BasicAuthOptions.BASIC_AUTH_VERIFICATION_THREADS.key());
+            }
+            long retryAfterNanos =
+                    configuration.get(BasicAuthOptions.BASIC_AUTH_ADMISSION_RETRY_AFTER).toNanos();
+            int queueSize = configuration.get(BasicAuthOptions.BASIC_AUTH_VERIFICATION_QUEUE_SIZE);
+            int effectiveThreads = Math.min(threads, processors);
+            long drainNanos = queueSize * hashNanos / effectiveThreads;
+            if (drainNanos > retryAfterNanos) {
+                recommendations.add(
+                        "A full verification queue takes "
+                                + TimeUnit.NANOSECONDS.toMillis(drainNanos)
+                                + " ms to work off, longer than clients are asked to wait before"
+                                + " retrying, consider reducing "
+                                + BasicAuthOptions.BASIC_AUTH_VERIFICATION_QUEUE_SIZE.key()
+                                + " to "
+                                + Math.max(1, retryAfterNanos * effectiveThreads / hashNanos));
+            }
+        }
+        if (configuration.get(BasicAuthOptions.BASIC_AUTH_CACHE_MAX_SIZE) <= 0) {
+            recommendations.add(
+                    "Every request with a password costs a hash of "
+                            + TimeUnit.NANOSECONDS.toMicros(hashNanos)
+                            + " us, consider enabling "
+                            + BasicAuthOptions.BASIC_AUTH_CACHE_MAX_SIZE.key());
+        }
+        return recommendations;
+    }
+
+    /** Returns the number of verification threads, 0 if passwords are verified on the loop. */
+    private static int verificationThreads(Configuration configuration) {
+        return configuration.get(BasicAuthOptions.BASIC_AUTH_VERIFICATION_ASYNC)
+                ? configuration.get(BasicAuthOptions.BASIC_AUTH_VERIFICATION_THREADS)
+                : 0;
+    }
+
+    /** The measured cost of the password hashes of an algorithm. */
+    static final class HashCost {
+
+        final HashAlgorithm algorithm;
+
+        /** The cost parameter of the algorithm, like the rounds or the work factor. */
+        final int cost;
+
+        /** The average time of a hash in nanoseconds. */
+        final long nanos;
+
+        /** Whether the hash is used by loaded credentials or only a synthetic one. */
+        final boolean loaded;
+
+        private HashCost(HashAlgorithm algorithm, int cost, long nanos, boolean loaded) {
+            this.algorithm = algorithm;
+            this.cost = cost;
+            this.nanos = nanos;
+            this.loaded = loaded;
+        }
+    }
+
+    private static String basic(String credentials) {
+        return "Basic "
+                + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+}
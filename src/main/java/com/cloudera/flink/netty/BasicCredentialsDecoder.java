@@ -0,0 +1,163 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.shaded.netty4.io.netty.util.AsciiString;
+import org.apache.flink.shaded.netty4.io.netty.util.concurrent.FastThreadLocal;
+
+import com.cloudera.flink.auth.CredentialProvider;
+import com.cloudera.flink.auth.CredentialRecord;
+
+import javax.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decodes the credentials of a basic authorization header into a buffer owned by the current
+ * thread. The user is looked up directly from the decoded bytes, so parsing a header does not
+ * create any strings or arrays. The buffer holds a plaintext password and is therefore cleared by
+ * {@link #clear()} once the request is processed.
+ */
+final class BasicCredentialsDecoder {
+
+    private static final AsciiString BASIC_SCHEME = AsciiString.cached("Basic ");
+
+    private static final FastThreadLocal<BasicCredentialsDecoder> DECODERS =
+            new FastThreadLocal<BasicCredentialsDecoder>() {
+                @Override
+                protected BasicCredentialsDecoder initialValue() {
+                    return new BasicCredentialsDecoder();
+                }
+            };
+
+    /** Values of the base 64 characters, -1 for characters outside of the alphabet. */
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private byte[] buffer = new byte[256];
+
+    private int length;
+
+    private int colon = -1;
+
+    private BasicCredentialsDecoder() {}
+
+    /** Returns the decoder of the current thread. */
+    static BasicCredentialsDecoder get() {
+        return DECODERS.get();
+    }
+
+    /** Checks, ignoring case, whether the header uses the basic scheme. */
+    static boolean isBasicScheme(CharSequence authorizationHeader) {
+        return AsciiString.regionMatches(
+                authorizationHeader, true, 0, BASIC_SCHEME, 0, BASIC_SCHEME.length());
+    }
+
+    /**
+     * Decodes the base 64 encoded credentials following the scheme of a basic authorization header.
+     *
+     * @param authorizationHeader The header value, starting with the basic scheme
+     * @return False if the credentials are not valid base 64
+     */
+    boolean decode(CharSequence authorizationHeader) {
+        clear();
+        int start = BASIC_SCHEME.length();
+        int end = authorizationHeader.length();
+        // Padding is optional, as it is for java.util.Base64
+        while (end > start
+                && end > authorizationHeader.length() - 2
+                && authorizationHeader.charAt(end - 1) == '=') {
+            end--;
+        }
+        int chars = end - start;
+        if (chars % 4 == 1) {
+            return false;
+        }
+        int decodedLength = chars / 4 * 3 + Math.max(chars % 4 - 1, 0);
+        if (buffer.length < decodedLength) {
+            buffer = new byte[Math.max(decodedLength, buffer.length * 2)];
+        }
+
+        int bits = 0;
+        int bitCount = 0;
+        int out = 0;
+        for (int i = start; i < end; i++) {
+            char c = authorizationHeader.charAt(i);
+            int value = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+            if (value < 0) {
+                length = out;
+                clear();
+                return false;
+            }
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                buffer[out++] = (byte) (bits >>> bitCount);
+            }
+        }
+        length = out;
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        return true;
+    }
+
+    /** Returns whether the decoded credentials contain the colon separating user and password. */
+    boolean hasPassword() {
+        return colon >= 0;
+    }
+
+    /** Looks up the stored credentials of the decoded user if they are available in memory. */
+    @Nullable
+    CredentialRecord lookupUser(CredentialProvider credentials) {
+        return credentials.getIfPresent(buffer, 0, colon);
+    }
+
+    /** Returns the decoded user, needed when the credentials of the user must be looked up. */
+    String getUser() {
+        return new String(buffer, 0, colon, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies the decoded password. The copy is only needed once a hash is computed, the caller
+     * should clear it afterwards.
+     */
+    byte[] copyPassword() {
+        return Arrays.copyOfRange(buffer, colon + 1, length);
+    }
+
+    /** Wipes the decoded credentials. */
+    void clear() {
+        Arrays.fill(buffer, 0, length, (byte) 0);
+        length = 0;
+        colon = -1;
+    }
+}
@@ -24,16 +24,22 @@ import org.apache.flink.util.ConfigurationException;
 
 import org.apache.flink.shaded.netty4.io.netty.channel.ChannelHandler;
 
+import com.cloudera.flink.auth.PasswordFileWatcher;
 import com.cloudera.flink.config.BasicAuthOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Optional;
 
 public class ClientBasicAuthHandlerFactory implements OutboundChannelHandlerFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(ClientBasicAuthHandlerFactory.class);
 
+    /** Read once and shared by the handlers of all connections, like on the server side. */
+    private ClientCredentials credentials;
+
     public ClientBasicAuthHandlerFactory() {}
 
     @Override
@@ -53,16 +59,48 @@ public class ClientBasicAuthHandlerFactory implements OutboundChannelHandlerFact
             return Optional.empty();
         }
 
-        String credentials =
+        LOG.debug("Creating basic client authentication handler");
+        return Optional.of(new ClientBasicHttpAuthenticator(getOrCreateCredentials(configuration)));
+    }
+
+    private synchronized ClientCredentials getOrCreateCredentials(Configuration configuration)
+            throws ConfigurationException {
+        if (credentials != null) {
+            return credentials;
+        }
+        String defaultCredentials =
                 configuration
                         .getOptional(BasicAuthOptions.BASIC_AUTH_CLIENT_CREDENTIALS)
-                        .orElseThrow(
-                                () ->
-                                        new ConfigurationException(
-                                                BasicAuthOptions.BASIC_AUTH_CLIENT_CREDENTIALS.key()
-                                                        + " must be configured if basic auth is enabled."));
+                        .orElse(null);
+        Optional<String> credentialsFile =
+                configuration.getOptional(BasicAuthOptions.BASIC_AUTH_CLIENT_CREDENTIALS_FILE);
+        if (!credentialsFile.isPresent()) {
+            if (defaultCredentials == null) {
+                throw new ConfigurationException(
+                        BasicAuthOptions.BASIC_AUTH_CLIENT_CREDENTIALS.key()
+                                + " or "
+                                + BasicAuthOptions.BASIC_AUTH_CLIENT_CREDENTIALS_FILE.key()
+                                + " must be configured if basic auth is enabled.");
+            }
+            credentials = ClientCredentials.of(defaultCredentials);
+            return credentials;
+        }
 
-        LOG.debug("Creating basic client authentication handler");
-        return Optional.of(new ClientBasicHttpAuthenticator(credentials));
+        try {
+            credentials =
+                    ClientCredentials.load(Paths.get(credentialsFile.get()), defaultCredentials);
+        } catch (IOException e) {
+            throw new ConfigurationException(e);
+        }
+        if (configuration.get(BasicAuthOptions.BASIC_AUTH_PWD_FILE_RELOAD_ENABLED)) {
+            PasswordFileWatcher.getInstance()
+                    .register(
+                            credentials.getCredentialsFile(),
+                            credentials,
+                            configuration.get(
+                                    BasicAuthOptions.BASIC_AUTH_PWD_FILE_RELOAD_INTERVAL));
+        }
+        LOG.info("Created {}", credentials);
+        return credentials;
     }
 }
@@ -24,27 +24,34 @@ import org.apache.flink.shaded.netty4.io.netty.channel.ChannelHandlerContext;
 import org.apache.flink.shaded.netty4.io.netty.channel.ChannelPromise;
 import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaderNames;
 import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.util.AsciiString;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Base64;
+import static java.util.Objects.requireNonNull;
 
 /**
  * Netty handler for basic authentication on the Client side. Based on
  * https://github.com/vzhn/netty-http-authenticator/blob/master/src/main/java/me/vzhilin/auth/netty/BasicNettyHttpAuthenticator.java
  * (MIT License).
+ *
+ * <p>The header of every endpoint is encoded in advance by the {@link ClientCredentials}, so adding
+ * it to a request neither creates a string nor logs.
  */
 @ChannelHandler.Sharable
 public final class ClientBasicHttpAuthenticator extends ChannelDuplexHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(ClientBasicHttpAuthenticator.class);
 
-    private final String basicAuthHeader;
+    private final ClientCredentials credentials;
 
     public ClientBasicHttpAuthenticator(String credentials) {
-        this.basicAuthHeader =
-                "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes());
+        this(ClientCredentials.of(credentials));
+    }
+
+    public ClientBasicHttpAuthenticator(ClientCredentials credentials) {
+        this.credentials = requireNonNull(credentials);
     }
 
     @Override
@@ -52,8 +59,10 @@ public final class ClientBasicHttpAuthenticator extends ChannelDuplexHandler {
             throws Exception {
         if (msg instanceof HttpRequest) {
             try {
-                LOG.debug("Adding authorization header to HTTP request");
-                ((HttpRequest) msg).headers().set(HttpHeaderNames.AUTHORIZATION, basicAuthHeader);
+                AsciiString header = credentials.getHeader(ctx.channel().remoteAddress());
+                if (header != null) {
+                    ((HttpRequest) msg).headers().set(HttpHeaderNames.AUTHORIZATION, header);
+                }
             } catch (Exception e) {
                 LOG.error("Exception while adding authorization header to HTTP request", e);
             }
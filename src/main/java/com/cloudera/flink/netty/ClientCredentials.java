@@ -0,0 +1,365 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.shaded.netty4.io.netty.util.AsciiString;
+
+import com.cloudera.flink.auth.PasswordFileWatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The authorization headers a client sends to the endpoints it talks to. The headers are encoded
+ * once per endpoint and published as an immutable snapshot, so that picking the header of a request
+ * is a volatile read and a single map lookup without creating any string.
+ *
+ * <p>The credentials of the endpoints are read from a file with one {@code <endpoint>
+ * <user>:<password>} line per endpoint, where the endpoint is {@code host:port}, {@code host},
+ * {@code *:port} or {@code *}. Empty lines and lines starting with {@code #} are ignored. The most
+ * specific endpoint matching the address of a connection wins, host names are matched ignoring
+ * their case. Connections to endpoints which are not listed use the default credentials.
+ */
+public final class ClientCredentials implements PasswordFileWatcher.Reloadable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClientCredentials.class);
+
+    private static final String ANY_HOST = "*";
+
+    @Nullable private final Path credentialsFile;
+
+    @Nullable private final AsciiString defaultHeader;
+
+    private volatile Endpoints snapshot;
+
+    /** Modification time and size of the file the current snapshot was read from. */
+    private long lastModified;
+
+    private long lastSize;
+
+    private ClientCredentials(
+            @Nullable Path credentialsFile,
+            @Nullable AsciiString defaultHeader,
+            Endpoints snapshot) {
+        this.credentialsFile = credentialsFile;
+        this.defaultHeader = defaultHeader;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Creates the credentials sent to every endpoint.
+     *
+     * @param credentials The credentials as user:password
+     */
+    public static ClientCredentials of(String credentials) {
+        AsciiString header = encode(credentials);
+        return new ClientCredentials(null, header, new Endpoints(header));
+    }
+
+    /**
+     * Reads the credentials of the endpoints from a file.
+     *
+     * @param credentialsFile The file holding the credentials per endpoint
+     * @param defaultCredentials The credentials of endpoints which are not listed, as user:password
+     * @return The credentials of the file
+     * @throws IOException Thrown, if the file cannot be read
+     */
+    public static ClientCredentials load(Path credentialsFile, @Nullable String defaultCredentials)
+            throws IOException {
+        AsciiString defaultHeader = defaultCredentials == null ? null : encode(defaultCredentials);
+        BasicFileAttributes attributes =
+                Files.readAttributes(credentialsFile, BasicFileAttributes.class);
+        ClientCredentials credentials =
+                new ClientCredentials(
+                        credentialsFile,
+                        defaultHeader,
+                        Endpoints.parse(credentialsFile, read(credentialsFile), defaultHeader));
+        credentials.lastModified = attributes.lastModifiedTime().toMillis();
+        credentials.lastSize = attributes.size();
+        return credentials;
+    }
+
+    @Nullable
+    public Path getCredentialsFile() {
+        return credentialsFile;
+    }
+
+    /**
+     * Returns the authorization header of the endpoint a connection goes to.
+     *
+     * @param remoteAddress The address of the endpoint
+     * @return The header or null if there are no credentials for the endpoint
+     */
+    @Nullable
+    public AsciiString getHeader(@Nullable SocketAddress remoteAddress) {
+        Endpoints endpoints = snapshot;
+        if (!(remoteAddress instanceof InetSocketAddress)) {
+            return endpoints.anyHost.get(-1);
+        }
+        InetSocketAddress address = (InetSocketAddress) remoteAddress;
+        int port = address.getPort();
+        // The host name the connection was opened with, no reverse lookup
+        Ports host = endpoints.hosts.get(address.getHostString());
+        AsciiString header = host == null ? null : host.get(port);
+        return header != null ? header : endpoints.anyHost.get(port);
+    }
+
+    @Override
+    public synchronized boolean reloadIfModified(boolean force) {
+        if (credentialsFile == null) {
+            return false;
+        }
+        try {
+            BasicFileAttributes attributes =
+                    Files.readAttributes(credentialsFile, BasicFileAttributes.class);
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (!force && modified == lastModified && attributes.size() == lastSize) {
+                return false;
+            }
+            Endpoints reloaded =
+                    Endpoints.parse(credentialsFile, read(credentialsFile), defaultHeader);
+            lastModified = modified;
+            lastSize = attributes.size();
+            if (reloaded.equals(snapshot)) {
+                LOG.debug("Client credentials file {} reloaded without changes", credentialsFile);
+                return false;
+            }
+            snapshot = reloaded;
+            LOG.info(
+                    "Reloaded client credentials file {} with {} endpoints",
+                    credentialsFile,
+                    reloaded.size);
+            return true;
+        } catch (Exception e) {
+            // Keep sending the previous credentials until the file can be read again
+            LOG.error("Failed to reload client credentials file {}", credentialsFile, e);
+            return false;
+        }
+    }
+
+    private static String read(Path credentialsFile) throws IOException {
+        return new String(Files.readAllBytes(credentialsFile), StandardCharsets.UTF_8);
+    }
+
+    /** Encodes the UTF-8 bytes of user:password, the charset of RFC 7617. */
+    private static AsciiString encode(String credentials) {
+        return AsciiString.of(
+                "Basic "
+                        + Base64.getEncoder()
+                                .encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public String toString() {
+        return "ClientCredentials{credentialsFile="
+                + credentialsFile
+                + ", endpoints="
+                + snapshot.size
+                + ", default="
+                + (defaultHeader != null)
+                + '}';
+    }
+
+    /** The headers of the endpoints of a credentials file. */
+    private static final class Endpoints {
+
+        /** Headers by host name, ignoring the case like DNS does. */
+        private final Map<String, Ports> hosts = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        /** Headers of any host, falling back to the default credentials. */
+        private final Ports anyHost;
+
+        private int size;
+
+        private Endpoints(@Nullable AsciiString defaultHeader) {
+            this.anyHost = new Ports(defaultHeader);
+        }
+
+        private static Endpoints parse(
+                @Nullable Path credentialsFile, String content, @Nullable AsciiString fallback) {
+            Endpoints endpoints = new Endpoints(fallback);
+            String[] lines = content.split("\r?\n", -1);
+            for (int i = 0; i < lines.length; i++) {
+                String line = lines[i].trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String error = endpoints.add(line);
+                if (error != null) {
+                    // The line holds a password, only its number is logged
+                    LOG.error(
+                            "Ignoring line {} of client credentials file {}: {}",
+                            i + 1,
+                            credentialsFile,
+                            error);
+                }
+            }
+            return endpoints;
+        }
+
+        /** Adds the endpoint of a line and returns why it is malformed, or null. */
+        @Nullable
+        private String add(String line) {
+            int separator = indexOfWhitespace(line);
+            if (separator < 0) {
+                return "Expected <endpoint> <user>:<password>";
+            }
+            String endpoint = line.substring(0, separator);
+            String credentials = line.substring(separator).trim();
+            if (credentials.indexOf(':') <= 0) {
+                return "Expected <user>:<password>";
+            }
+
+            String host = endpoint;
+            int port = -1;
+            int portSeparator = endpoint.lastIndexOf(':');
+            // A bracketed IPv6 address holds colons itself
+            if (portSeparator > endpoint.lastIndexOf(']')) {
+                host = endpoint.substring(0, portSeparator);
+                try {
+                    port = Integer.parseInt(endpoint.substring(portSeparator + 1));
+                } catch (NumberFormatException e) {
+                    port = 0;
+                }
+                if (port <= 0 || port > 0xFFFF) {
+                    return "Invalid port";
+                }
+            }
+            if (host.startsWith("[") && host.endsWith("]")) {
+                // Addresses report IPv6 hosts without brackets
+                host = host.substring(1, host.length() - 1);
+            }
+            if (host.isEmpty()) {
+                return "Missing host";
+            }
+
+            Ports ports =
+                    ANY_HOST.equals(host)
+                            ? anyHost
+                            : hosts.computeIfAbsent(host, ignored -> new Ports(null));
+            ports.put(port, encode(credentials));
+            size++;
+            return null;
+        }
+
+        private static int indexOfWhitespace(String line) {
+            for (int i = 0; i < line.length(); i++) {
+                if (Character.isWhitespace(line.charAt(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Endpoints)) {
+                return false;
+            }
+            Endpoints that = (Endpoints) o;
+            return hosts.equals(that.hosts) && anyHost.equals(that.anyHost);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * hosts.hashCode() + anyHost.hashCode();
+        }
+    }
+
+    /**
+     * The headers of the ports of a host. A host is configured for a handful of ports at most, so
+     * they are scanned instead of looking up a boxed port.
+     */
+    private static final class Ports {
+
+        private int[] ports = new int[0];
+
+        private AsciiString[] headers = new AsciiString[0];
+
+        /** Header of the ports which are not listed, null if there is none. */
+        @Nullable private AsciiString anyPort;
+
+        private Ports(@Nullable AsciiString anyPort) {
+            this.anyPort = anyPort;
+        }
+
+        @Nullable
+        private AsciiString get(int port) {
+            for (int i = 0; i < ports.length; i++) {
+                if (ports[i] == port) {
+                    return headers[i];
+                }
+            }
+            return anyPort;
+        }
+
+        /** Sets the header of a port, -1 for any port. A later line wins over an earlier one. */
+        private void put(int port, AsciiString header) {
+            if (port < 0) {
+                anyPort = header;
+                return;
+            }
+            for (int i = 0; i < ports.length; i++) {
+                if (ports[i] == port) {
+                    headers[i] = header;
+                    return;
+                }
+            }
+            ports = Arrays.copyOf(ports, ports.length + 1);
+            headers = Arrays.copyOf(headers, headers.length + 1);
+            ports[ports.length - 1] = port;
+            headers[headers.length - 1] = header;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Ports)) {
+                return false;
+            }
+            Ports that = (Ports) o;
+            return Arrays.equals(ports, that.ports)
+                    && Arrays.equals(headers, that.headers)
+                    && (anyPort == null ? that.anyPort == null : anyPort.equals(that.anyPort));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(ports) + Arrays.hashCode(headers);
+        }
+    }
+}
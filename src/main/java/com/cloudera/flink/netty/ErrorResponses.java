@@ -0,0 +1,168 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.runtime.rest.handler.util.HandlerUtils;
+import org.apache.flink.runtime.rest.messages.ErrorResponseBody;
+import org.apache.flink.runtime.rest.util.RestConstants;
+import org.apache.flink.runtime.rest.util.RestMapperUtils;
+
+import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.core.JsonProcessingException;
+import org.apache.flink.shaded.netty4.io.netty.buffer.ByteBuf;
+import org.apache.flink.shaded.netty4.io.netty.buffer.Unpooled;
+import org.apache.flink.shaded.netty4.io.netty.channel.ChannelFutureListener;
+import org.apache.flink.shaded.netty4.io.netty.channel.ChannelHandlerContext;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.DefaultFullHttpResponse;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.FullHttpResponse;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaderNames;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaderValues;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpResponseStatus;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpUtil;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpVersion;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The error responses of the authenticator, serialized once per failure reason. Every rejection
+ * writes a duplicate of a shared read-only buffer instead of serializing an {@link
+ * ErrorResponseBody}, so that floods of rejected requests cost little more than the write itself.
+ * The connection is closed after the response, like {@link HandlerUtils#sendErrorResponse} does.
+ *
+ * <p>The responses only depend on the configured response headers, so all handlers of an endpoint
+ * share the same instance.
+ */
+final class ErrorResponses {
+
+    static final String MISSING_HEADER = "Missing authorization header";
+
+    static final String HEADER_TOO_LARGE = "Authorization header too large";
+
+    static final String UNKNOWN_SCHEME = "Unknown authorization method";
+
+    static final String NO_PASSWORD = "No password found in basic authentication header";
+
+    static final String INVALID_CREDENTIALS = "Invalid credentials";
+
+    static final String THROTTLED = "Too many failed authentication attempts";
+
+    static final String OVERLOADED = "Too many pending authentication requests";
+
+    static final String FORBIDDEN = "Request not permitted for user";
+
+    static final String PROVIDER_UNAVAILABLE = "Credentials could not be looked up";
+
+    private static final Map<Object, ErrorResponses> INSTANCES = new ConcurrentHashMap<>();
+
+    private final Map<String, FullHttpResponse> responses = new HashMap<>();
+
+    private final Map<String, String> responseHeaders;
+
+    private ErrorResponses(
+            Map<String, String> responseHeaders,
+            long retryAfterSeconds,
+            long overloadedRetryAfterSeconds) {
+        this.responseHeaders = responseHeaders;
+        add(MISSING_HEADER, HttpResponseStatus.UNAUTHORIZED, responseHeaders);
+        add(HEADER_TOO_LARGE, HttpResponseStatus.UNAUTHORIZED, responseHeaders);
+        add(UNKNOWN_SCHEME, HttpResponseStatus.UNAUTHORIZED, responseHeaders);
+        add(NO_PASSWORD, HttpResponseStatus.UNAUTHORIZED, responseHeaders);
+        add(INVALID_CREDENTIALS, HttpResponseStatus.UNAUTHORIZED, responseHeaders);
+        // Other credentials would not help, so the client is not asked for them
+        Map<String, String> noChallengeHeaders = new HashMap<>(responseHeaders);
+        noChallengeHeaders.remove(HttpHeaderNames.WWW_AUTHENTICATE.toString());
+        add(FORBIDDEN, HttpResponseStatus.FORBIDDEN, noChallengeHeaders);
+        add(PROVIDER_UNAVAILABLE, HttpResponseStatus.SERVICE_UNAVAILABLE, noChallengeHeaders);
+        Map<String, String> throttledHeaders = new HashMap<>(responseHeaders);
+        if (retryAfterSeconds > 0) {
+            throttledHeaders.put(
+                    HttpHeaderNames.RETRY_AFTER.toString(), String.valueOf(retryAfterSeconds));
+        }
+        add(THROTTLED, HttpResponseStatus.TOO_MANY_REQUESTS, throttledHeaders);
+        Map<String, String> overloadedHeaders = new HashMap<>(responseHeaders);
+        if (overloadedRetryAfterSeconds > 0) {
+            overloadedHeaders.put(
+                    HttpHeaderNames.RETRY_AFTER.toString(),
+                    String.valueOf(overloadedRetryAfterSeconds));
+        }
+        add(OVERLOADED, HttpResponseStatus.SERVICE_UNAVAILABLE, overloadedHeaders);
+    }
+
+    /**
+     * Returns the error responses for the given headers.
+     *
+     * @param responseHeaders Headers added to every response
+     * @param retryAfterSeconds Value of the retry-after header of throttled requests, 0 for none
+     * @param overloadedRetryAfterSeconds Value of the retry-after header of requests shed because
+     *     too many authentications are pending, 0 for none
+     */
+    static ErrorResponses of(
+            Map<String, String> responseHeaders,
+            long retryAfterSeconds,
+            long overloadedRetryAfterSeconds) {
+        return INSTANCES.computeIfAbsent(
+                Arrays.asList(responseHeaders, retryAfterSeconds, overloadedRetryAfterSeconds),
+                key ->
+                        new ErrorResponses(
+                                new HashMap<>(responseHeaders),
+                                retryAfterSeconds,
+                                overloadedRetryAfterSeconds));
+    }
+
+    /**
+     * Sends an error response and closes the connection.
+     *
+     * @param ctx Context of the rejected request
+     * @param errorMessage One of the messages of this class
+     * @param status The status of the response
+     */
+    void send(ChannelHandlerContext ctx, String errorMessage, HttpResponseStatus status) {
+        FullHttpResponse response = responses.get(errorMessage);
+        if (response == null || !response.status().equals(status)) {
+            HandlerUtils.sendErrorResponse(
+                    ctx, false, new ErrorResponseBody(errorMessage), status, responseHeaders);
+            return;
+        }
+        ctx.writeAndFlush(response.retainedDuplicate()).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    private void add(String errorMessage, HttpResponseStatus status, Map<String, String> headers) {
+        byte[] body;
+        try {
+            body =
+                    RestMapperUtils.getStrictObjectMapper()
+                            .writeValueAsBytes(new ErrorResponseBody(errorMessage));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize error response", e);
+        }
+        // Never released, duplicates of it are written concurrently by all event loops
+        ByteBuf content =
+                Unpooled.unreleasableBuffer(
+                        Unpooled.directBuffer(body.length).writeBytes(body).asReadOnly());
+        FullHttpResponse response =
+                new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, content);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, RestConstants.REST_CONTENT_TYPE);
+        headers.forEach(response.headers()::set);
+        response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+        HttpUtil.setContentLength(response, body.length);
+        responses.put(errorMessage, response);
+    }
+}
@@ -18,28 +18,91 @@
 
 package com.cloudera.flink.netty;
 
+import org.apache.flink.annotation.VisibleForTesting;
 import org.apache.flink.configuration.Configuration;
 import org.apache.flink.runtime.io.network.netty.InboundChannelHandlerFactory;
 import org.apache.flink.util.ConfigurationException;
+import org.apache.flink.util.FlinkException;
+import org.apache.flink.util.InstantiationUtil;
+import org.apache.flink.util.concurrent.ExecutorThreadFactory;
 
+import org.apache.flink.shaded.netty4.io.netty.channel.Channel;
 import org.apache.flink.shaded.netty4.io.netty.channel.ChannelHandler;
 
+import com.cloudera.flink.audit.AuthenticationAuditLog;
+import com.cloudera.flink.auth.AdmissionControl;
+import com.cloudera.flink.auth.AuthenticationThrottle;
+import com.cloudera.flink.auth.CredentialProvider;
+import com.cloudera.flink.auth.RequestPatterns;
+import com.cloudera.flink.auth.SessionTokens;
+import com.cloudera.flink.auth.VerifiedCredentialCache;
 import com.cloudera.flink.config.BasicAuthOptions;
+import com.cloudera.flink.metrics.AuthenticationMetrics;
+import com.cloudera.flink.metrics.AuthenticationMetricsReporter;
+import com.cloudera.flink.provider.CredentialProviderFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.HashMap;
+import javax.annotation.Nullable;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class ServerBasicAuthHandlerFactory implements InboundChannelHandlerFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(ServerBasicAuthHandlerFactory.class);
 
+    /**
+     * Flink creates a handler for every accepted connection, so the credentials, the cache and the
+     * verification executor live in the factory to be shared between the handlers of an endpoint.
+     * The credentials of a password file and their cache are further shared with the other
+     * endpoints of the process which use the same password file.
+     */
+    private CredentialProvider credentials;
+
+    private VerifiedCredentialCache cache;
+
+    private ExecutorService verificationExecutor;
+
+    private AuthenticationMetrics metrics;
+
+    private final List<AuthenticationMetricsReporter> reporters = new ArrayList<>();
+
+    /** The name the metrics are registered under, null if they are not registered. */
+    @Nullable private ObjectName metricsName;
+
+    /** The server channel of the endpoint, which is closed when the endpoint shuts down. */
+    @Nullable private volatile Channel serverChannel;
+
+    private SessionTokens sessionTokens;
+
+    private AuthenticationThrottle throttle;
+
+    private RequestPatterns unauthenticatedRequests;
+
+    private AdmissionControl admission;
+
+    private AuthenticationAuditLog auditLog;
+
+    private final VerificationFlights verificationFlights = new VerificationFlights();
+
+    private boolean warmUpStarted;
+
     public ServerBasicAuthHandlerFactory() {}
 
     @Override
@@ -60,29 +123,346 @@ public class ServerBasicAuthHandlerFactory implements InboundChannelHandlerFacto
             return Optional.empty();
         }
 
-        String pwdFile =
+        LOG.debug("Creating basic server authentication handler");
+        CredentialProvider credentials = getOrCreateCredentials(configuration);
+        AuthenticationMetrics metrics = getOrCreateMetrics(configuration);
+        startWarmUp(configuration, responseHeaders, credentials);
+        return Optional.of(
+                ServerBasicHttpAuthenticator.builder(credentials, responseHeaders)
+                        .setCache(getOrCreateCache(configuration, credentials, metrics))
+                        .setVerificationExecutor(getOrCreateVerificationExecutor(configuration))
+                        .setMaxHeaderLength(
+                                configuration.get(BasicAuthOptions.BASIC_AUTH_HEADER_MAX_LENGTH))
+                        .setMetrics(metrics)
+                        .setSessionTokens(getOrCreateSessionTokens(configuration))
+                        .setThrottle(getOrCreateThrottle(configuration))
+                        .setUnauthenticatedRequests(
+                                getOrCompileUnauthenticatedRequests(configuration))
+                        .setAdmission(getOrCreateAdmissionControl(configuration, metrics))
+                        .setAuditLog(getOrCreateAuditLog(configuration))
+                        .setVerificationFlights(verificationFlights)
+                        .setServerChannelListener(this::watchServerChannel)
+                        .build());
+    }
+
+    @VisibleForTesting
+    synchronized CredentialProvider getOrCreateCredentials(Configuration configuration)
+            throws ConfigurationException {
+        if (credentials == null) {
+            String identifier = configuration.get(BasicAuthOptions.BASIC_AUTH_PROVIDER);
+            List<String> available = new ArrayList<>();
+            for (CredentialProviderFactory factory :
+                    ServiceLoader.load(
+                            CredentialProviderFactory.class, getClass().getClassLoader())) {
+                if (factory.identifier().equals(identifier)) {
+                    credentials = factory.createProvider(configuration);
+                    LOG.info("Using credential provider {}", identifier);
+                    return credentials;
+                }
+                available.add(factory.identifier());
+            }
+            throw new ConfigurationException(
+                    "Unknown "
+                            + BasicAuthOptions.BASIC_AUTH_PROVIDER.key()
+                            + " '"
+                            + identifier
+                            + "', available providers are "
+                            + available);
+        }
+        return credentials;
+    }
+
+    private synchronized VerifiedCredentialCache getOrCreateCache(
+            Configuration configuration,
+            CredentialProvider credentials,
+            AuthenticationMetrics metrics) {
+        if (cache == null) {
+            cache =
+                    credentials.getCache(
+                            configuration.get(BasicAuthOptions.BASIC_AUTH_CACHE_MAX_SIZE),
+                            configuration.get(BasicAuthOptions.BASIC_AUTH_CACHE_TTL));
+            metrics.setCacheCounts(cache::getHitCount, cache::getMissCount);
+        }
+        return cache;
+    }
+
+    @VisibleForTesting
+    @Nullable
+    synchronized ExecutorService getOrCreateVerificationExecutor(Configuration configuration) {
+        if (!configuration.get(BasicAuthOptions.BASIC_AUTH_VERIFICATION_ASYNC)) {
+            return null;
+        }
+        if (verificationExecutor == null) {
+            int threads = configuration.get(BasicAuthOptions.BASIC_AUTH_VERIFICATION_THREADS);
+            int queueSize = configuration.get(BasicAuthOptions.BASIC_AUTH_VERIFICATION_QUEUE_SIZE);
+            verificationExecutor =
+                    new ThreadPoolExecutor(
+                            threads,
+                            threads,
+                            0L,
+                            TimeUnit.MILLISECONDS,
+                            new ArrayBlockingQueue<>(queueSize),
+                            new ExecutorThreadFactory("flink-basic-auth-verification"));
+            LOG.info(
+                    "Created credential verification executor with {} threads and queue size {}",
+                    threads,
+                    queueSize);
+        }
+        return verificationExecutor;
+    }
+
+    /**
+     * Warms up the authentication on a thread of its own once, when the endpoint accepts its first
+     * connection. The connection does not wait for it.
+     */
+    private synchronized void startWarmUp(
+            Configuration configuration,
+            Map<String, String> responseHeaders,
+            CredentialProvider credentials) {
+        if (warmUpStarted || !configuration.get(BasicAuthOptions.BASIC_AUTH_WARM_UP_ENABLED)) {
+            return;
+        }
+        warmUpStarted = true;
+        new ExecutorThreadFactory("flink-basic-auth-warm-up")
+                .newThread(new AuthenticationWarmUp(configuration, responseHeaders, credentials))
+                .start();
+    }
+
+    @Nullable
+    private synchronized SessionTokens getOrCreateSessionTokens(Configuration configuration) {
+        if (!configuration.get(BasicAuthOptions.BASIC_AUTH_SESSION_ENABLED)) {
+            return null;
+        }
+        if (sessionTokens == null) {
+            Duration ttl = configuration.get(BasicAuthOptions.BASIC_AUTH_SESSION_TTL);
+            List<String> secrets = configuration.get(BasicAuthOptions.BASIC_AUTH_SESSION_SECRETS);
+            if (secrets == null || secrets.isEmpty()) {
+                LOG.info(
+                        "No session secrets configured, session cookies are only valid until the"
+                                + " endpoint restarts");
+                sessionTokens = SessionTokens.withRandomKey(ttl);
+            } else {
+                List<byte[]> keys = new ArrayList<>(secrets.size());
+                for (String secret : secrets) {
+                    keys.add(secret.getBytes(StandardCharsets.UTF_8));
+                }
+                sessionTokens = new SessionTokens(keys, ttl);
+            }
+            LOG.info("Issuing session cookies valid for {}", ttl);
+        }
+        return sessionTokens;
+    }
+
+    @Nullable
+    private synchronized AuthenticationThrottle getOrCreateThrottle(Configuration configuration) {
+        if (!configuration.get(BasicAuthOptions.BASIC_AUTH_THROTTLE_ENABLED)) {
+            return null;
+        }
+        if (throttle == null) {
+            throttle =
+                    new AuthenticationThrottle(
+                            configuration.get(BasicAuthOptions.BASIC_AUTH_THROTTLE_ADDRESS_BURST),
+                            configuration.get(
+                                    BasicAuthOptions.BASIC_AUTH_THROTTLE_ADDRESS_REFILL_INTERVAL),
+                            configuration.get(BasicAuthOptions.BASIC_AUTH_THROTTLE_USER_BURST),
+                            configuration.get(
+                                    BasicAuthOptions.BASIC_AUTH_THROTTLE_USER_REFILL_INTERVAL),
+                            configuration.get(BasicAuthOptions.BASIC_AUTH_THROTTLE_MAX_ENTRIES));
+            LOG.info("Created {}", throttle);
+        }
+        return throttle;
+    }
+
+    @Nullable
+    private synchronized AdmissionControl getOrCreateAdmissionControl(
+            Configuration configuration, AuthenticationMetrics metrics) {
+        int maxPending = configuration.get(BasicAuthOptions.BASIC_AUTH_ADMISSION_MAX_PENDING);
+        if (maxPending <= 0) {
+            return null;
+        }
+        if (admission == null) {
+            admission =
+                    new AdmissionControl(
+                            maxPending,
+                            configuration.get(BasicAuthOptions.BASIC_AUTH_ADMISSION_RETRY_AFTER));
+            metrics.setPendingAuthentications(admission::getPending);
+            LOG.info("Created {}", admission);
+        }
+        return admission;
+    }
+
+    @Nullable
+    private synchronized AuthenticationAuditLog getOrCreateAuditLog(Configuration configuration) {
+        if (!configuration.get(BasicAuthOptions.BASIC_AUTH_AUDIT_ENABLED)) {
+            return null;
+        }
+        if (auditLog == null) {
+            auditLog =
+                    AuthenticationAuditLog.start(
+                            configuration.get(BasicAuthOptions.BASIC_AUTH_AUDIT_CAPACITY),
+                            configuration.get(BasicAuthOptions.BASIC_AUTH_AUDIT_SUMMARY_INTERVAL));
+            LOG.info("Created {}", auditLog);
+        }
+        return auditLog;
+    }
+
+    private synchronized RequestPatterns getOrCompileUnauthenticatedRequests(
+            Configuration configuration) throws ConfigurationException {
+        if (unauthenticatedRequests == null) {
+            try {
+                unauthenticatedRequests =
+                        RequestPatterns.compile(
+                                configuration
+                                        .getOptional(
+                                                BasicAuthOptions
+                                                        .BASIC_AUTH_UNAUTHENTICATED_REQUESTS)
+                                        .orElse(Collections.emptyList()));
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException(
+                        "Invalid "
+                                + BasicAuthOptions.BASIC_AUTH_UNAUTHENTICATED_REQUESTS.key()
+                                + ": "
+                                + e.getMessage());
+            }
+            if (!unauthenticatedRequests.isEmpty()) {
+                LOG.info("Passing on {} without authentication", unauthenticatedRequests);
+            }
+        }
+        return unauthenticatedRequests;
+    }
+
+    private synchronized AuthenticationMetrics getOrCreateMetrics(Configuration configuration)
+            throws ConfigurationException {
+        if (metrics == null) {
+            metrics = new AuthenticationMetrics();
+            if (configuration.get(BasicAuthOptions.BASIC_AUTH_METRICS_JMX_ENABLED)) {
+                metricsName = registerMBean(metrics, configuration);
+            }
+            for (String reporterClass :
+                    configuration
+                            .getOptional(BasicAuthOptions.BASIC_AUTH_METRICS_REPORTERS)
+                            .orElse(Collections.emptyList())) {
+                try {
+                    AuthenticationMetricsReporter reporter =
+                            InstantiationUtil.instantiate(
+                                    reporterClass,
+                                    AuthenticationMetricsReporter.class,
+                                    getClass().getClassLoader());
+                    reporter.open(metrics);
+                    reporters.add(reporter);
+                    LOG.info("Reporting authentication metrics to {}", reporterClass);
+                } catch (FlinkException e) {
+                    throw new ConfigurationException(
+                            "Cannot create authentication metrics reporter " + reporterClass, e);
+                }
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Releases the resources of the endpoint once the server channel of the connections is closed.
+     * Every connection reports the server channel, which is watched only once.
+     */
+    private void watchServerChannel(Channel channel) {
+        if (channel == serverChannel) {
+            return;
+        }
+        synchronized (this) {
+            if (channel == serverChannel) {
+                return;
+            }
+            serverChannel = channel;
+        }
+        channel.closeFuture().addListener(future -> close());
+    }
+
+    /** Releases the resources shared by the connections of the endpoint when it shuts down. */
+    private synchronized void close() {
+        closeMetrics();
+        if (verificationExecutor != null) {
+            // Queued verifications still run, they own their requests and release them
+            verificationExecutor.shutdown();
+            LOG.info("Shut down credential verification executor");
+            verificationExecutor = null;
+        }
+        if (auditLog != null) {
+            try {
+                auditLog.close();
+                LOG.info("Closed authentication audit log");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("Interrupted while writing the remaining audit records", e);
+            }
+            auditLog = null;
+        }
+        if (credentials != null) {
+            try {
+                credentials.close();
+                LOG.info("Closed credential provider {}", credentials);
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to close credential provider {}", credentials, e);
+            }
+            credentials = null;
+        }
+    }
+
+    /** Closes the reporters and unregisters the metrics. */
+    private void closeMetrics() {
+        for (AuthenticationMetricsReporter reporter : reporters) {
+            try {
+                reporter.close();
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to close authentication metrics reporter {}", reporter, e);
+            }
+        }
+        reporters.clear();
+        if (metricsName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(metricsName);
+                LOG.info("Unregistered authentication metrics {}", metricsName);
+            } catch (JMException e) {
+                LOG.warn("Failed to unregister authentication metrics {}", metricsName, e);
+            }
+            metricsName = null;
+        }
+    }
+
+    /**
+     * Registers the metrics named after the password file, or after the credential provider if no
+     * password file is configured.
+     *
+     * @return The name of the registered metrics, null if they could not be registered
+     */
+    @Nullable
+    private static ObjectName registerMBean(
+            AuthenticationMetrics metrics, Configuration configuration) {
+        String source =
                 configuration
                         .getOptional(BasicAuthOptions.BASIC_AUTH_PWD_FILE)
-                        .orElseThrow(
+                        .map(pwdFile -> "passwordFile=" + ObjectName.quote(pwdFile))
+                        .orElseGet(
                                 () ->
-                                        new ConfigurationException(
-                                                BasicAuthOptions.BASIC_AUTH_PWD_FILE.key()
-                                                        + " must be configured if basic auth is enabled."));
-
-        Map<String, String> credentials = new HashMap<>();
-        try (Stream<String> stream = Files.lines(Paths.get(pwdFile))) {
-            stream.forEach(
-                    line -> {
-                        if (!line.isEmpty()) {
-                            String[] split = line.split(":", 2);
-                            credentials.put(split[0], split[1]);
-                        }
-                    });
-        } catch (IOException e) {
-            throw new ConfigurationException(e);
+                                        "provider="
+                                                + ObjectName.quote(
+                                                        configuration.get(
+                                                                BasicAuthOptions
+                                                                        .BASIC_AUTH_PROVIDER)));
+        try {
+            ObjectName name =
+                    new ObjectName("com.cloudera.flink:type=BasicAuthentication," + source);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            LOG.info("Registered authentication metrics as {}", name);
+            return name;
+        } catch (InstanceAlreadyExistsException e) {
+            LOG.warn(
+                    "Authentication metrics of {} are already registered, the metrics of this"
+                            + " endpoint are not exposed via JMX",
+                    source);
+        } catch (JMException e) {
+            LOG.warn("Failed to register authentication metrics via JMX", e);
         }
-
-        LOG.debug("Creating basic server authentication handler");
-        return Optional.of(new ServerBasicHttpAuthenticator(credentials, responseHeaders));
+        return null;
     }
 }
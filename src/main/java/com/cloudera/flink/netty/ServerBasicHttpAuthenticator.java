@@ -18,147 +18,1190 @@
 
 package com.cloudera.flink.netty;
 
-import org.apache.flink.runtime.rest.handler.util.HandlerUtils;
-import org.apache.flink.runtime.rest.messages.ErrorResponseBody;
-
+import org.apache.flink.shaded.netty4.io.netty.channel.Channel;
+import org.apache.flink.shaded.netty4.io.netty.channel.ChannelDuplexHandler;
 import org.apache.flink.shaded.netty4.io.netty.channel.ChannelHandler;
 import org.apache.flink.shaded.netty4.io.netty.channel.ChannelHandlerContext;
-import org.apache.flink.shaded.netty4.io.netty.channel.ChannelInboundHandlerAdapter;
+import org.apache.flink.shaded.netty4.io.netty.channel.ChannelPipeline;
+import org.apache.flink.shaded.netty4.io.netty.channel.ChannelPromise;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpContent;
 import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaderNames;
 import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaders;
 import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpResponse;
 import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpResponseStatus;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpServerCodec;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpStatusClass;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.LastHttpContent;
+import org.apache.flink.shaded.netty4.io.netty.handler.ssl.SslHandler;
+import org.apache.flink.shaded.netty4.io.netty.util.AttributeKey;
 import org.apache.flink.shaded.netty4.io.netty.util.ReferenceCountUtil;
 
-import org.apache.commons.codec.digest.Md5Crypt;
+import com.cloudera.flink.audit.AuthenticationAuditLog;
+import com.cloudera.flink.auth.AdmissionControl;
+import com.cloudera.flink.auth.AuthenticationThrottle;
+import com.cloudera.flink.auth.CredentialProvider;
+import com.cloudera.flink.auth.CredentialRecord;
+import com.cloudera.flink.auth.CredentialStore;
+import com.cloudera.flink.auth.RequestPatterns;
+import com.cloudera.flink.auth.SessionTokens;
+import com.cloudera.flink.auth.VerifiedCredentialCache;
+import com.cloudera.flink.config.BasicAuthOptions;
+import com.cloudera.flink.metrics.AuthenticationMetrics;
+import com.cloudera.flink.metrics.AuthenticationOutcome;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Base64;
+import javax.annotation.Nullable;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 import static java.util.Objects.requireNonNull;
 
 /** Netty handler for basic authentication on the Server side. */
 @ChannelHandler.Sharable
-public class ServerBasicHttpAuthenticator extends ChannelInboundHandlerAdapter {
+public class ServerBasicHttpAuthenticator extends ChannelDuplexHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(ServerBasicHttpAuthenticator.class);
 
-    private final Map<String, String> responseHeaders;
+    private static final AttributeKey<PendingVerification> PENDING_VERIFICATION =
+            AttributeKey.valueOf(ServerBasicHttpAuthenticator.class, "pendingVerification");
+
+    /** The credentials a keep-alive connection was last authenticated with. */
+    private static final AttributeKey<ChannelAuthentication> CHANNEL_AUTHENTICATION =
+            AttributeKey.valueOf(ServerBasicHttpAuthenticator.class, "channelAuthentication");
+
+    /** Set while the body of a rejected request arrives, its contents are dropped. */
+    private static final AttributeKey<Boolean> DISCARDING_BODY =
+            AttributeKey.valueOf(ServerBasicHttpAuthenticator.class, "discardingBody");
+
+    /** Set-cookie header to add to the response of a request whose password was verified. */
+    private static final AttributeKey<String> SESSION_COOKIE =
+            AttributeKey.valueOf(ServerBasicHttpAuthenticator.class, "sessionCookie");
+
+    private final CredentialProvider credentials;
+
+    private final VerifiedCredentialCache cache;
+
+    private final int maxHeaderLength;
+
+    private final AuthenticationMetrics metrics;
+
+    /** Issues session cookies, null if sessions are disabled. */
+    @Nullable private final SessionTokens sessionTokens;
+
+    /** Limits failed authentications, null if they are not limited. */
+    @Nullable private final AuthenticationThrottle throttle;
+
+    /** Requests passed on without authentication, like health checks and static assets. */
+    private final RequestPatterns unauthenticatedRequests;
+
+    /** Bounds the requests waiting for their authentication, null if they are not bounded. */
+    @Nullable private final AdmissionControl admission;
+
+    /** Records the outcomes off the event loop, null if they are not audited. */
+    @Nullable private final AuthenticationAuditLog auditLog;
+
+    private final ErrorResponses errorResponses;
+
+    /** Verifications in progress, identical requests of the endpoint wait for them. */
+    private final VerificationFlights verificationFlights;
 
-    private final Map<String, String> credentials;
+    /** Notified of the server channel of every connection, null if nobody is interested. */
+    @Nullable private final Consumer<Channel> serverChannelListener;
+
+    /** Executor verifying the credentials, null if they are verified on the event loop. */
+    @Nullable private final Executor verificationExecutor;
 
     public ServerBasicHttpAuthenticator(
             Map<String, String> credentials, final Map<String, String> responseHeaders) {
-        this.responseHeaders = new HashMap<>(requireNonNull(responseHeaders));
-        this.responseHeaders.put(
+        this(builder(CredentialStore.of(credentials), responseHeaders));
+    }
+
+    private ServerBasicHttpAuthenticator(Builder builder) {
+        Map<String, String> errorResponseHeaders = new HashMap<>(builder.responseHeaders);
+        errorResponseHeaders.put(
                 HttpHeaderNames.WWW_AUTHENTICATE.toString(), "Basic realm=\"flink\"");
-        this.credentials = credentials;
+        this.credentials = builder.credentials;
+        this.cache = builder.cache;
+        this.verificationExecutor = builder.verificationExecutor;
+        this.maxHeaderLength = builder.maxHeaderLength;
+        this.metrics = builder.metrics;
+        this.verificationFlights = builder.verificationFlights;
+        this.serverChannelListener = builder.serverChannelListener;
+        this.sessionTokens = builder.sessionTokens;
+        this.throttle = builder.throttle;
+        this.unauthenticatedRequests = builder.unauthenticatedRequests;
+        this.admission = builder.admission;
+        this.auditLog = builder.auditLog;
+        this.errorResponses =
+                ErrorResponses.of(
+                        errorResponseHeaders,
+                        throttle == null ? 0 : toRetryAfterSeconds(throttle.getRetryAfter()),
+                        admission == null ? 0 : toRetryAfterSeconds(admission.getRetryAfter()));
+    }
+
+    /**
+     * Returns a builder of a handler which has none of the optional features enabled: no cache, no
+     * sessions, no throttle, no admission control and no audit log, with passwords verified on the
+     * event loop.
+     *
+     * @param credentials The credentials requests are authenticated with
+     * @param responseHeaders Headers added to every error response
+     */
+    public static Builder builder(
+            CredentialProvider credentials, Map<String, String> responseHeaders) {
+        return new Builder(credentials, responseHeaders);
+    }
+
+    /** Rounds a duration up to the whole seconds of a retry-after header. */
+    private static long toRetryAfterSeconds(Duration retryAfter) {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+
+    /**
+     * Moves the handler right behind the HTTP codec. The REST endpoint adds it behind the file
+     * upload handler and the aggregator, which would read the whole body of a request before the
+     * request is authenticated. Authenticated right behind the codec, an unauthenticated upload is
+     * rejected by its head and its body is dropped as it arrives.
+     */
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        Channel serverChannel = ctx.channel().parent();
+        if (serverChannelListener != null && serverChannel != null) {
+            serverChannelListener.accept(serverChannel);
+        }
+        ChannelPipeline pipeline = ctx.pipeline();
+        ChannelHandlerContext codec = pipeline.context(HttpServerCodec.class);
+        if (codec == null) {
+            return;
+        }
+        List<String> names = pipeline.names();
+        if (names.indexOf(ctx.name()) > names.indexOf(codec.name()) + 1) {
+            String name = ctx.name();
+            pipeline.remove(this);
+            pipeline.addAfter(codec.name(), name, this);
+        }
     }
 
+    /**
+     * Authenticates a request. The handler owns the message, every message is either passed on to
+     * the next handler or released once it has been answered or discarded.
+     */
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        PendingVerification pending = ctx.channel().attr(PENDING_VERIFICATION).get();
+        if (pending != null) {
+            // Keep the order of the messages while a verification of this channel is in progress
+            pending.queuedMessages.add(msg);
+            return;
+        }
+        if (msg instanceof HttpContent
+                && !(msg instanceof HttpRequest)
+                && ctx.channel().attr(DISCARDING_BODY).get() != null) {
+            if (msg instanceof LastHttpContent) {
+                ctx.channel().attr(DISCARDING_BODY).set(null);
+            }
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+
         if (msg instanceof HttpRequest) {
+            long startNanos = auditLog == null ? 0L : System.nanoTime();
             try {
-                HttpHeaders headers = ((HttpRequest) msg).headers();
+                HttpRequest request = (HttpRequest) msg;
+                if (unauthenticatedRequests.matches(request.method().name(), request.uri())) {
+                    LOG.debug("Request {} does not require authentication", request.uri());
+                    ctx.fireChannelRead(msg);
+                    return;
+                }
+                HttpHeaders headers = request.headers();
 
                 /*
                  * look for auth token
                  */
-                String auth = headers.get(HttpHeaderNames.AUTHORIZATION);
+                // Header values decoded by netty are kept as is, reading them does not copy
+                CharSequence auth = headers.get(HttpHeaderNames.AUTHORIZATION);
+                CredentialRecord sessionCredentials =
+                        sessionTokens == null ? null : authenticateSession(headers, auth);
+                if (sessionCredentials != null) {
+                    accept(ctx, msg, sessionCredentials, false, startNanos);
+                    return;
+                }
                 if (auth == null) {
-                    final String errorMessage = "Missing authorization header";
-                    LOG.error(errorMessage);
-                    HandlerUtils.sendErrorResponse(
+                    reject(
                             ctx,
-                            false,
-                            new ErrorResponseBody(errorMessage),
-                            HttpResponseStatus.UNAUTHORIZED,
-                            responseHeaders);
+                            msg,
+                            AuthenticationOutcome.MISSING_HEADER,
+                            null,
+                            startNanos,
+                            ErrorResponses.MISSING_HEADER,
+                            HttpResponseStatus.UNAUTHORIZED);
                     return;
                 } else {
                     LOG.debug("Authorization header found");
                 }
-                int sp = auth.indexOf(' ');
-                if (sp < 0 || !auth.substring(0, sp).equals("Basic")) {
-                    final String errorMessage = "Unknown authorization method";
-                    LOG.error(errorMessage);
-                    HandlerUtils.sendErrorResponse(
+                if (auth.length() > maxHeaderLength) {
+                    reject(
                             ctx,
-                            false,
-                            new ErrorResponseBody(errorMessage),
-                            HttpResponseStatus.UNAUTHORIZED,
-                            responseHeaders);
+                            msg,
+                            AuthenticationOutcome.MALFORMED_HEADER,
+                            null,
+                            startNanos,
+                            ErrorResponses.HEADER_TOO_LARGE,
+                            HttpResponseStatus.UNAUTHORIZED);
                     return;
-                } else {
-                    LOG.debug("Valid authorization method found");
                 }
-                String userPass = new String(Base64.getDecoder().decode(auth.substring(sp + 1)));
-                int colon = userPass.indexOf(':');
-                if (colon < 0) {
-                    final String errorMessage = "No password found in basic authentication header";
-                    LOG.error(errorMessage);
-                    HandlerUtils.sendErrorResponse(
+                if (!BasicCredentialsDecoder.isBasicScheme(auth)) {
+                    reject(
                             ctx,
-                            false,
-                            new ErrorResponseBody(errorMessage),
-                            HttpResponseStatus.UNAUTHORIZED,
-                            responseHeaders);
+                            msg,
+                            AuthenticationOutcome.UNKNOWN_SCHEME,
+                            null,
+                            startNanos,
+                            ErrorResponses.UNKNOWN_SCHEME,
+                            HttpResponseStatus.UNAUTHORIZED);
                     return;
                 } else {
-                    LOG.debug("Password found");
+                    LOG.debug("Valid authorization method found");
                 }
-                String user = userPass.substring(0, colon);
-                String password = userPass.substring(colon + 1);
 
-                if (checkCredentials(user, password)) {
-                    LOG.debug("User {} authenticated successfully", user);
-                    ctx.fireChannelRead(ReferenceCountUtil.retain(msg));
-                } else {
-                    final String errorMessage = "Invalid credentials";
-                    LOG.error(errorMessage);
-                    HandlerUtils.sendErrorResponse(
-                            ctx,
-                            false,
-                            new ErrorResponseBody(errorMessage),
-                            HttpResponseStatus.UNAUTHORIZED,
-                            responseHeaders);
+                VerifiedCredentialCache.Key key = cache.probe(auth);
+                ChannelAuthentication authenticated =
+                        ctx.channel().attr(CHANNEL_AUTHENTICATION).get();
+                if (authenticated != null) {
+                    // The stored hash is compared to forget credentials of an old password
+                    if (authenticated.key.equals(key)
+                            && credentials.isCurrent(authenticated.credentials)) {
+                        LOG.debug(
+                                "User {} authenticated by connection",
+                                authenticated.credentials.getUser());
+                        accept(ctx, msg, authenticated.credentials, false, startNanos);
+                        return;
+                    }
+                    ctx.channel().attr(CHANNEL_AUTHENTICATION).set(null);
+                }
+
+                VerifiedCredentialCache.Entry cached = cache.get(key);
+                // The stored hash is compared to drop entries verified against an old password
+                if (cached != null && credentials.isCurrent(cached.getCredentials())) {
+                    LOG.debug("User {} authenticated from cache {}", cached.getUser(), cache);
+                    rememberAuthentication(ctx, key.copy(), cached.getCredentials());
+                    // Flink's client neither reuses connections nor keeps cookies, a session
+                    // issued for every cached login would cost more than the lookup it replaces
+                    accept(ctx, msg, cached.getCredentials(), false, startNanos);
+                    return;
+                }
+
+                BasicCredentialsDecoder decoder = BasicCredentialsDecoder.get();
+                try {
+                    if (!decoder.decode(auth)) {
+                        reject(
+                                ctx,
+                                msg,
+                                AuthenticationOutcome.MALFORMED_HEADER,
+                                null,
+                                startNanos,
+                                ErrorResponses.INVALID_CREDENTIALS,
+                                HttpResponseStatus.UNAUTHORIZED);
+                        return;
+                    }
+                    if (!decoder.hasPassword()) {
+                        reject(
+                                ctx,
+                                msg,
+                                AuthenticationOutcome.MALFORMED_HEADER,
+                                null,
+                                startNanos,
+                                ErrorResponses.NO_PASSWORD,
+                                HttpResponseStatus.UNAUTHORIZED);
+                        return;
+                    } else {
+                        LOG.debug("Password found");
+                    }
+                    // Read once, so that a concurrent reload cannot mix up two passwords
+                    CredentialRecord storedCredentials = decoder.lookupUser(credentials);
+                    if (storedCredentials == null) {
+                        CompletableFuture<CredentialRecord> lookup =
+                                credentials.lookup(decoder.getUser());
+                        if (!lookup.isDone()) {
+                            if (admit(ctx, msg, startNanos)) {
+                                awaitLookup(ctx, msg, lookup, startNanos);
+                            }
+                            return;
+                        }
+                        if (lookup.isCompletedExceptionally()) {
+                            rejectUnavailable(ctx, msg, lookup, startNanos);
+                            return;
+                        }
+                        storedCredentials = lookup.getNow(null);
+                    }
+                    // The lookup key of this thread is overwritten by the next request
+                    VerifiedCredentialCache.Key verifiedKey = key.copy();
+
+                    if (throttle != null
+                            && throttle.isThrottled(
+                                    remoteAddress(ctx),
+                                    storedCredentials == null ? null : storedCredentials.getUser(),
+                                    System.nanoTime())) {
+                        // Rejected before hashing
+                        reject(
+                                ctx,
+                                msg,
+                                AuthenticationOutcome.THROTTLED,
+                                storedCredentials,
+                                startNanos,
+                                ErrorResponses.THROTTLED,
+                                HttpResponseStatus.TOO_MANY_REQUESTS);
+                        return;
+                    }
+
+                    VerificationFlight flight = null;
+                    if (storedCredentials != null) {
+                        flight = new VerificationFlight(storedCredentials);
+                        if (joinVerificationInFlight(ctx, msg, verifiedKey, flight, startNanos)) {
+                            return;
+                        }
+                    }
+
+                    if (verificationExecutor != null) {
+                        verifyAsync(
+                                ctx,
+                                msg,
+                                decoder.copyPassword(),
+                                storedCredentials,
+                                verifiedKey,
+                                flight,
+                                startNanos);
+                    } else {
+                        Boolean verified = null;
+                        try {
+                            verified = checkCredentials(storedCredentials, decoder);
+                        } finally {
+                            if (flight != null) {
+                                completeFlight(flight, verifiedKey, verified);
+                            }
+                        }
+                        completeVerification(
+                                ctx, msg, storedCredentials, verifiedKey, verified, startNanos);
+                    }
+                } finally {
+                    decoder.clear();
                 }
             } catch (Exception e) {
-                LOG.error("Exception while authenticating user", e);
-                HandlerUtils.sendErrorResponse(
+                logAuthenticationError(e);
+                reject(
                         ctx,
-                        false,
-                        new ErrorResponseBody("Invalid credentials"),
-                        HttpResponseStatus.UNAUTHORIZED,
-                        responseHeaders);
+                        msg,
+                        AuthenticationOutcome.ERROR,
+                        null,
+                        startNanos,
+                        ErrorResponses.INVALID_CREDENTIALS,
+                        HttpResponseStatus.UNAUTHORIZED);
             }
         } else {
             // Only HttpRequests are authenticated
-            ctx.fireChannelRead(ReferenceCountUtil.retain(msg));
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    /**
+     * Passes an authenticated request on if its user is permitted to make it, and rejects it with
+     * 403 otherwise.
+     *
+     * @param passwordVerified Whether the password has been verified for this request, which is
+     *     then audited as a login and answered with a session cookie
+     * @param startNanos The time the authentication of the request started
+     */
+    private void accept(
+            ChannelHandlerContext ctx,
+            Object msg,
+            CredentialRecord storedCredentials,
+            boolean passwordVerified,
+            long startNanos) {
+        HttpRequest request = (HttpRequest) msg;
+        if (!storedCredentials.isPermitted(request.method().name(), request.uri())) {
+            reject(
+                    ctx,
+                    msg,
+                    AuthenticationOutcome.FORBIDDEN,
+                    storedCredentials,
+                    startNanos,
+                    ErrorResponses.FORBIDDEN,
+                    HttpResponseStatus.FORBIDDEN);
+            return;
+        }
+        metrics.record(AuthenticationOutcome.SUCCESS);
+        if (passwordVerified) {
+            // Only logins are audited, the requests authenticated by them are not. The request
+            // belongs to the next handler once it has been passed on.
+            audit(ctx, msg, AuthenticationOutcome.SUCCESS, storedCredentials, startNanos);
+            issueSession(ctx, storedCredentials);
         }
+        ctx.fireChannelRead(msg);
     }
 
     /**
-     * Checks credentials against the stored hashes using salted MD5 hashing as described in
-     * http://httpd.apache.org/docs/2.2/misc/password_encryptions.html. This is the default format
-     * produced by the htpasswd command.
+     * Authenticates a request carrying a valid session cookie. A request whose authorization header
+     * names another user is authenticated with the header instead, so that switching users works.
      *
-     * @param username Username provided in the http request
+     * @return The credentials of the session or null if the header must be authenticated
+     */
+    @Nullable
+    private CredentialRecord authenticateSession(HttpHeaders headers, @Nullable CharSequence auth) {
+        CharSequence cookies = headers.get(HttpHeaderNames.COOKIE);
+        if (cookies == null) {
+            return null;
+        }
+        long range = SessionCookie.find(cookies);
+        if (range < 0) {
+            return null;
+        }
+        CredentialRecord sessionCredentials =
+                sessionTokens.verify(
+                        cookies,
+                        (int) (range >>> 32),
+                        (int) range,
+                        credentials,
+                        System.currentTimeMillis());
+        if (sessionCredentials == null) {
+            LOG.debug("Ignoring invalid or expired session cookie");
+            return null;
+        }
+        if (auth != null
+                && auth.length() <= maxHeaderLength
+                && BasicCredentialsDecoder.isBasicScheme(auth)) {
+            BasicCredentialsDecoder decoder = BasicCredentialsDecoder.get();
+            try {
+                if (decoder.decode(auth)
+                        && decoder.hasPassword()
+                        && decoder.lookupUser(credentials) != sessionCredentials) {
+                    return null;
+                }
+            } finally {
+                decoder.clear();
+            }
+        }
+        LOG.debug("User {} authenticated by session cookie", sessionCredentials.getUser());
+        return sessionCredentials;
+    }
+
+    /**
+     * Remembers the credentials of a keep-alive connection, so that its following requests with the
+     * same authorization header are accepted without a cache lookup or hashing.
+     */
+    private static void rememberAuthentication(
+            ChannelHandlerContext ctx,
+            VerifiedCredentialCache.Key key,
+            CredentialRecord storedCredentials) {
+        ctx.channel()
+                .attr(CHANNEL_AUTHENTICATION)
+                .set(new ChannelAuthentication(key, storedCredentials));
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        ctx.channel().attr(CHANNEL_AUTHENTICATION).set(null);
+        super.channelInactive(ctx);
+    }
+
+    /** Remembers to hand out a session cookie with the response to the current request. */
+    private void issueSession(ChannelHandlerContext ctx, CredentialRecord storedCredentials) {
+        if (sessionTokens == null) {
+            return;
+        }
+        String token = sessionTokens.issue(storedCredentials, System.currentTimeMillis());
+        boolean secure = ctx.pipeline().get(SslHandler.class) != null;
+        ctx.channel()
+                .attr(SESSION_COOKIE)
+                .set(SessionCookie.encode(token, sessionTokens.getTtlSeconds(), secure));
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+            throws Exception {
+        // A 100 Continue precedes the response to the authenticated request
+        if (sessionTokens != null
+                && msg instanceof HttpResponse
+                && ((HttpResponse) msg).status().codeClass() != HttpStatusClass.INFORMATIONAL) {
+            String sessionCookie = ctx.channel().attr(SESSION_COOKIE).getAndSet(null);
+            if (sessionCookie != null) {
+                ((HttpResponse) msg).headers().add(HttpHeaderNames.SET_COOKIE, sessionCookie);
+            }
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    /**
+     * Verifies the credentials on the verification executor so that the hashing does not block the
+     * event loop. Reading from the channel is suspended until the result has been processed on the
+     * event loop of the channel.
+     */
+    private void verifyAsync(
+            ChannelHandlerContext ctx,
+            Object msg,
+            byte[] password,
+            @Nullable CredentialRecord storedCredentials,
+            VerifiedCredentialCache.Key key,
+            @Nullable VerificationFlight flight,
+            long startNanos) {
+        if (!admit(ctx, msg, startNanos)) {
+            Arrays.fill(password, (byte) 0);
+            if (flight != null) {
+                // The waiting requests try on their own
+                completeFlight(flight, key, null);
+            }
+            return;
+        }
+        PendingVerification pending = suspendReading(ctx, msg, startNanos);
+        try {
+            verificationExecutor.execute(
+                    () -> {
+                        boolean authenticated;
+                        try {
+                            authenticated = checkCredentials(storedCredentials, password);
+                        } catch (Exception e) {
+                            LOG.error("Exception while verifying credentials", e);
+                            authenticated = false;
+                        } finally {
+                            Arrays.fill(password, (byte) 0);
+                        }
+                        if (flight != null) {
+                            completeFlight(flight, key, authenticated);
+                        }
+                        final boolean result = authenticated;
+                        try {
+                            ctx.executor()
+                                    .execute(
+                                            () -> {
+                                                try {
+                                                    completeAsyncVerification(
+                                                            ctx,
+                                                            msg,
+                                                            storedCredentials,
+                                                            key,
+                                                            result);
+                                                } finally {
+                                                    releasePermit();
+                                                }
+                                            });
+                        } catch (RejectedExecutionException e) {
+                            LOG.debug("Event loop shut down while verifying credentials", e);
+                            discardPending(ctx, msg);
+                            releasePermit();
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            Arrays.fill(password, (byte) 0);
+            if (flight != null) {
+                // The waiting requests try on their own
+                completeFlight(flight, key, null);
+            }
+            reject(
+                    ctx,
+                    msg,
+                    AuthenticationOutcome.OVERLOADED,
+                    storedCredentials,
+                    startNanos,
+                    ErrorResponses.OVERLOADED,
+                    HttpResponseStatus.SERVICE_UNAVAILABLE);
+            releasePermit();
+            resumeReading(ctx, pending);
+        }
+    }
+
+    /**
+     * Waits for the lookup of the credentials of a request without blocking the event loop. Reading
+     * is suspended until the lookup is complete, then the request is authenticated again with the
+     * credentials the provider has looked up.
+     */
+    private void awaitLookup(
+            ChannelHandlerContext ctx,
+            Object msg,
+            CompletableFuture<CredentialRecord> lookup,
+            long startNanos) {
+        LOG.debug("Waiting for the lookup of credentials");
+        suspendReading(ctx, msg, startNanos);
+        lookup.whenComplete(
+                (ignored, failure) -> {
+                    try {
+                        ctx.executor()
+                                .execute(
+                                        () -> {
+                                            try {
+                                                if (failure == null) {
+                                                    retryVerification(ctx, msg);
+                                                } else {
+                                                    completeFailedLookup(ctx, msg, lookup);
+                                                }
+                                            } finally {
+                                                releasePermit();
+                                            }
+                                        });
+                    } catch (RejectedExecutionException e) {
+                        LOG.debug("Event loop shut down while looking up credentials", e);
+                        discardPending(ctx, msg);
+                        releasePermit();
+                    }
+                });
+    }
+
+    private void completeFailedLookup(
+            ChannelHandlerContext ctx, Object msg, CompletableFuture<CredentialRecord> lookup) {
+        PendingVerification pending = ctx.channel().attr(PENDING_VERIFICATION).get();
+        if (!ctx.channel().isActive()) {
+            LOG.debug("Channel closed while looking up credentials");
+            discardPending(ctx, msg);
+            return;
+        }
+        rejectUnavailable(ctx, msg, lookup, pending.startNanos);
+        resumeReading(ctx, pending);
+    }
+
+    /** Rejects a request whose credentials could not be looked up. */
+    private void rejectUnavailable(
+            ChannelHandlerContext ctx,
+            Object msg,
+            CompletableFuture<CredentialRecord> lookup,
+            long startNanos) {
+        try {
+            lookup.join();
+        } catch (CompletionException | CancellationException e) {
+            // The provider reports its failures, every request waiting for it fails alike
+            LOG.debug(ErrorResponses.PROVIDER_UNAVAILABLE, e.getCause() != null ? e.getCause() : e);
+        }
+        reject(
+                ctx,
+                msg,
+                AuthenticationOutcome.ERROR,
+                null,
+                startNanos,
+                ErrorResponses.PROVIDER_UNAVAILABLE,
+                HttpResponseStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Takes a permit for a request which is about to wait for its authentication, or sheds the
+     * request with 503 if too many authentications are pending already.
+     *
+     * @return True if the request may wait, its permit must be returned with {@link #releasePermit}
+     */
+    private boolean admit(ChannelHandlerContext ctx, Object msg, long startNanos) {
+        if (admission == null || admission.tryAdmit()) {
+            return true;
+        }
+        reject(
+                ctx,
+                msg,
+                AuthenticationOutcome.OVERLOADED,
+                null,
+                startNanos,
+                ErrorResponses.OVERLOADED,
+                HttpResponseStatus.SERVICE_UNAVAILABLE);
+        return false;
+    }
+
+    /**
+     * Rejects a request, counting its outcome and recording it in the audit log, and releases it
+     * along with its body. The outcome is not logged, rejected requests come in floods.
+     *
+     * @param storedCredentials The credentials of the user, null if unknown
+     * @param startNanos The time the authentication of the request started
+     */
+    private void reject(
+            ChannelHandlerContext ctx,
+            Object msg,
+            AuthenticationOutcome outcome,
+            @Nullable CredentialRecord storedCredentials,
+            long startNanos,
+            String errorMessage,
+            HttpResponseStatus status) {
+        LOG.debug(errorMessage);
+        metrics.record(outcome);
+        audit(ctx, msg, outcome, storedCredentials, startNanos);
+        sendErrorResponse(ctx, errorMessage, status);
+        if (!(msg instanceof LastHttpContent)) {
+            // The body follows the head, it is dropped until the connection is closed
+            ctx.channel().attr(DISCARDING_BODY).set(Boolean.TRUE);
+        }
+        ReferenceCountUtil.release(msg);
+    }
+
+    /** Hands the outcome of an authentication to the audit log, which writes it off the loop. */
+    private void audit(
+            ChannelHandlerContext ctx,
+            Object msg,
+            AuthenticationOutcome outcome,
+            @Nullable CredentialRecord storedCredentials,
+            long startNanos) {
+        if (auditLog != null) {
+            auditLog.record(
+                    outcome,
+                    storedCredentials == null ? null : storedCredentials.getUser(),
+                    remoteAddress(ctx),
+                    ((HttpRequest) msg).uri(),
+                    System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Logs an exception which failed an authentication. A failing credential provider fails every
+     * request, and each of them is counted and audited as an error already, so the stack trace is
+     * only logged at debug level.
+     */
+    private static void logAuthenticationError(Exception e) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Exception while authenticating user", e);
+        } else {
+            LOG.warn("Exception while authenticating user: {}", e.toString());
+        }
+    }
+
+    /** Returns the permit of a request which has waited for its authentication. */
+    private void releasePermit() {
+        if (admission != null) {
+            admission.release();
+        }
+    }
+
+    /**
+     * Releases a waiting request and the messages queued behind it, because its channel has been
+     * closed or its event loop has shut down.
+     */
+    private static void discardPending(ChannelHandlerContext ctx, Object msg) {
+        PendingVerification pending = ctx.channel().attr(PENDING_VERIFICATION).getAndSet(null);
+        ReferenceCountUtil.release(msg);
+        if (pending != null) {
+            pending.queuedMessages.forEach(ReferenceCountUtil::release);
+        }
+    }
+
+    /**
+     * Stops reading from a channel until the verification of its current request is complete.
+     * Messages arriving in the meantime are queued. The waiting request and the queued messages are
+     * owned by the verification until they are replayed or discarded.
+     */
+    private static PendingVerification suspendReading(
+            ChannelHandlerContext ctx, Object msg, long startNanos) {
+        PendingVerification pending = new PendingVerification(startNanos);
+        ctx.channel().attr(PENDING_VERIFICATION).set(pending);
+        ctx.channel().config().setAutoRead(false);
+        return pending;
+    }
+
+    /**
+     * Registers the verification of a header unless the same header is being verified already, in
+     * which case the request waits for the result of that verification instead of hashing the
+     * password once more.
+     *
+     * @return True if the request waits for another verification or has been shed
+     */
+    private boolean joinVerificationInFlight(
+            ChannelHandlerContext ctx,
+            Object msg,
+            VerifiedCredentialCache.Key key,
+            VerificationFlight flight,
+            long startNanos) {
+        VerificationFlight leader;
+        while ((leader = verificationFlights.start(key, flight)) != null) {
+            if (!admit(ctx, msg, startNanos)) {
+                return true;
+            }
+            // A completed verification is retried, it is about to leave the map
+            if (leader.join(this, ctx, msg)) {
+                LOG.debug(
+                        "Waiting for concurrent verification of user {}",
+                        leader.credentials.getUser());
+                suspendReading(ctx, msg, startNanos);
+                return true;
+            }
+            releasePermit();
+        }
+        return false;
+    }
+
+    /**
+     * Completes the requests waiting for a verification, each on the event loop of its channel.
+     *
+     * @param authenticated The result of the verification or null if the waiting requests must be
+     *     verified on their own
+     */
+    private void completeFlight(
+            VerificationFlight flight,
+            VerifiedCredentialCache.Key key,
+            @Nullable Boolean authenticated) {
+        verificationFlights.end(key, flight);
+        for (FlightWaiter waiter : flight.complete()) {
+            try {
+                waiter.ctx
+                        .executor()
+                        .execute(
+                                () -> {
+                                    try {
+                                        if (authenticated == null) {
+                                            waiter.handler.retryVerification(
+                                                    waiter.ctx, waiter.msg);
+                                        } else {
+                                            waiter.handler.completeAsyncVerification(
+                                                    waiter.ctx,
+                                                    waiter.msg,
+                                                    flight.credentials,
+                                                    key,
+                                                    authenticated);
+                                        }
+                                    } finally {
+                                        waiter.handler.releasePermit();
+                                    }
+                                });
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Event loop shut down while waiting for a verification", e);
+                waiter.handler.discardPending(waiter.ctx, waiter.msg);
+                waiter.handler.releasePermit();
+            }
+        }
+    }
+
+    /** Authenticates a request again whose verification could not be shared. */
+    private void retryVerification(ChannelHandlerContext ctx, Object msg) {
+        PendingVerification pending = ctx.channel().attr(PENDING_VERIFICATION).get();
+        if (!ctx.channel().isActive()) {
+            LOG.debug("Channel closed while waiting for a verification");
+            discardPending(ctx, msg);
+            return;
+        }
+        pending.queuedMessages.addFirst(msg);
+        resumeReading(ctx, pending);
+    }
+
+    private void completeAsyncVerification(
+            ChannelHandlerContext ctx,
+            Object msg,
+            @Nullable CredentialRecord storedCredentials,
+            VerifiedCredentialCache.Key key,
+            boolean authenticated) {
+        PendingVerification pending = ctx.channel().attr(PENDING_VERIFICATION).get();
+        if (!ctx.channel().isActive()) {
+            LOG.debug("Channel closed while verifying credentials");
+            discardPending(ctx, msg);
+            return;
+        }
+        try {
+            completeVerification(
+                    ctx, msg, storedCredentials, key, authenticated, pending.startNanos);
+        } catch (Exception e) {
+            logAuthenticationError(e);
+            reject(
+                    ctx,
+                    msg,
+                    AuthenticationOutcome.ERROR,
+                    storedCredentials,
+                    pending.startNanos,
+                    ErrorResponses.INVALID_CREDENTIALS,
+                    HttpResponseStatus.UNAUTHORIZED);
+        }
+        resumeReading(ctx, pending);
+    }
+
+    private void completeVerification(
+            ChannelHandlerContext ctx,
+            Object msg,
+            @Nullable CredentialRecord storedCredentials,
+            VerifiedCredentialCache.Key key,
+            boolean authenticated,
+            long startNanos) {
+        if (authenticated) {
+            LOG.debug("User {} authenticated successfully", storedCredentials.getUser());
+            cache.put(key, storedCredentials);
+            rememberAuthentication(ctx, key, storedCredentials);
+            accept(ctx, msg, storedCredentials, true, startNanos);
+        } else {
+            if (throttle != null) {
+                throttle.recordFailure(
+                        remoteAddress(ctx),
+                        storedCredentials == null ? null : storedCredentials.getUser(),
+                        System.nanoTime());
+            }
+            reject(
+                    ctx,
+                    msg,
+                    storedCredentials == null
+                            ? AuthenticationOutcome.UNKNOWN_USER
+                            : AuthenticationOutcome.INVALID_PASSWORD,
+                    storedCredentials,
+                    startNanos,
+                    ErrorResponses.INVALID_CREDENTIALS,
+                    HttpResponseStatus.UNAUTHORIZED);
+        }
+    }
+
+    /** Replays the messages received during a verification and resumes reading. */
+    private void resumeReading(ChannelHandlerContext ctx, PendingVerification pending) {
+        ctx.channel().attr(PENDING_VERIFICATION).set(null);
+        Object queued;
+        while ((queued = pending.queuedMessages.poll()) != null) {
+            channelRead(ctx, queued);
+            PendingVerification next = ctx.channel().attr(PENDING_VERIFICATION).get();
+            if (next != null) {
+                // Another verification started, it takes over the remaining messages
+                next.queuedMessages.addAll(pending.queuedMessages);
+                return;
+            }
+        }
+        ctx.channel().config().setAutoRead(true);
+    }
+
+    /** Returns the host a request came from, the port changes with every connection. */
+    @Nullable
+    private static Object remoteAddress(ChannelHandlerContext ctx) {
+        SocketAddress address = ctx.channel().remoteAddress();
+        return address instanceof InetSocketAddress
+                ? ((InetSocketAddress) address).getAddress()
+                : address;
+    }
+
+    private void sendErrorResponse(
+            ChannelHandlerContext ctx, String errorMessage, HttpResponseStatus status) {
+        errorResponses.send(ctx, errorMessage, status);
+    }
+
+    /**
+     * Checks credentials against the stored hashes. The verification is dispatched to the hash
+     * algorithm of the user, see {@link com.cloudera.flink.auth.HashAlgorithm}.
+     *
+     * @param storedCredentials Stored credentials of the user provided in the http request
      * @param password Password provided in the http request
      * @return True if username & password match the stored credentials
      */
-    private boolean checkCredentials(String username, String password) {
-        String storedPasswordHash = credentials.get(username);
-        if (storedPasswordHash == null) {
-            LOG.error("No stored credentials found");
+    private boolean checkCredentials(
+            @Nullable CredentialRecord storedCredentials, byte[] password) {
+        if (storedCredentials == null) {
+            LOG.debug("No stored credentials found");
+            return false;
+        }
+
+        long start = System.nanoTime();
+        try {
+            return storedCredentials.verify(password);
+        } finally {
+            metrics.recordHashLatency(System.nanoTime() - start);
+        }
+    }
+
+    /** Checks the credentials decoded on the current thread, wiping the password afterwards. */
+    private boolean checkCredentials(
+            @Nullable CredentialRecord storedCredentials, BasicCredentialsDecoder decoder) {
+        if (storedCredentials == null) {
+            // Unknown users are rejected without copying the password
+            LOG.debug("No stored credentials found");
             return false;
         }
+        byte[] password = decoder.copyPassword();
+        try {
+            return checkCredentials(storedCredentials, password);
+        } finally {
+            Arrays.fill(password, (byte) 0);
+        }
+    }
+
+    /** Builder of a {@link ServerBasicHttpAuthenticator}, see {@link #builder}. */
+    public static final class Builder {
+
+        private final CredentialProvider credentials;
+
+        private final Map<String, String> responseHeaders;
+
+        private VerifiedCredentialCache cache = VerifiedCredentialCache.disabled();
+
+        @Nullable private Executor verificationExecutor;
+
+        private int maxHeaderLength = BasicAuthOptions.BASIC_AUTH_HEADER_MAX_LENGTH.defaultValue();
 
-        String computedPwdHash =
-                Md5Crypt.apr1Crypt(password.getBytes(), storedPasswordHash.substring(6, 14));
-        return storedPasswordHash.equals(computedPwdHash);
+        private AuthenticationMetrics metrics = new AuthenticationMetrics();
+
+        @Nullable private SessionTokens sessionTokens;
+
+        @Nullable private AuthenticationThrottle throttle;
+
+        private RequestPatterns unauthenticatedRequests = RequestPatterns.NONE;
+
+        @Nullable private AdmissionControl admission;
+
+        @Nullable private AuthenticationAuditLog auditLog;
+
+        private VerificationFlights verificationFlights = new VerificationFlights();
+
+        @Nullable private Consumer<Channel> serverChannelListener;
+
+        private Builder(CredentialProvider credentials, Map<String, String> responseHeaders) {
+            this.credentials = requireNonNull(credentials);
+            this.responseHeaders = requireNonNull(responseHeaders);
+        }
+
+        /** Sets the cache of verified credentials. */
+        public Builder setCache(VerifiedCredentialCache cache) {
+            this.cache = requireNonNull(cache);
+            return this;
+        }
+
+        /** Sets the executor verifying passwords, null to verify them on the event loop. */
+        public Builder setVerificationExecutor(@Nullable Executor verificationExecutor) {
+            this.verificationExecutor = verificationExecutor;
+            return this;
+        }
+
+        /** Sets the maximum length of an authorization header. */
+        public Builder setMaxHeaderLength(int maxHeaderLength) {
+            this.maxHeaderLength = maxHeaderLength;
+            return this;
+        }
+
+        /** Sets the metrics the outcomes are counted in. */
+        public Builder setMetrics(AuthenticationMetrics metrics) {
+            this.metrics = requireNonNull(metrics);
+            return this;
+        }
+
+        /** Sets the issuer of session cookies, null to disable sessions. */
+        public Builder setSessionTokens(@Nullable SessionTokens sessionTokens) {
+            this.sessionTokens = sessionTokens;
+            return this;
+        }
+
+        /** Sets the throttle of failed authentications, null to not throttle them. */
+        public Builder setThrottle(@Nullable AuthenticationThrottle throttle) {
+            this.throttle = throttle;
+            return this;
+        }
+
+        /** Sets the requests which are passed on without authentication. */
+        public Builder setUnauthenticatedRequests(RequestPatterns unauthenticatedRequests) {
+            this.unauthenticatedRequests = requireNonNull(unauthenticatedRequests);
+            return this;
+        }
+
+        /** Sets the bound of waiting authentications, null to not bound them. */
+        public Builder setAdmission(@Nullable AdmissionControl admission) {
+            this.admission = admission;
+            return this;
+        }
+
+        /** Sets the audit log of the outcomes, null to not audit them. */
+        public Builder setAuditLog(@Nullable AuthenticationAuditLog auditLog) {
+            this.auditLog = auditLog;
+            return this;
+        }
+
+        /**
+         * Sets the verifications in progress shared with the other handlers of the endpoint, by
+         * default identical requests only wait for each other on the same handler. The handlers
+         * sharing them must share the {@link #setCache cache}, whose salt the keys are digested
+         * with.
+         */
+        public Builder setVerificationFlights(VerificationFlights verificationFlights) {
+            this.verificationFlights = requireNonNull(verificationFlights);
+            return this;
+        }
+
+        /**
+         * Sets the listener notified of the server channel a connection was accepted by, whose
+         * closing tells that the endpoint shuts down.
+         */
+        Builder setServerChannelListener(Consumer<Channel> serverChannelListener) {
+            this.serverChannelListener = serverChannelListener;
+            return this;
+        }
+
+        public ServerBasicHttpAuthenticator build() {
+            return new ServerBasicHttpAuthenticator(this);
+        }
+    }
+
+    /** Credentials a connection was authenticated with. */
+    private static final class ChannelAuthentication {
+
+        /** Salted digest of the authorization header. */
+        private final VerifiedCredentialCache.Key key;
+
+        private final CredentialRecord credentials;
+
+        private ChannelAuthentication(
+                VerifiedCredentialCache.Key key, CredentialRecord credentials) {
+            this.key = key;
+            this.credentials = credentials;
+        }
+    }
+
+    /** Messages of a channel which arrived while its credentials were being verified. */
+    private static final class PendingVerification {
+
+        /** The time the authentication of the waiting request started. */
+        private final long startNanos;
+
+        private final Deque<Object> queuedMessages = new ArrayDeque<>();
+
+        private PendingVerification(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+
+    /** A verification of an authorization header which identical requests wait for. */
+    static final class VerificationFlight {
+
+        private final CredentialRecord credentials;
+
+        /** Requests waiting for the result, null once the verification is complete. */
+        @Nullable private List<FlightWaiter> waiters = new ArrayList<>();
+
+        private VerificationFlight(CredentialRecord credentials) {
+            this.credentials = credentials;
+        }
+
+        synchronized boolean join(
+                ServerBasicHttpAuthenticator handler, ChannelHandlerContext ctx, Object msg) {
+            if (waiters == null) {
+                return false;
+            }
+            waiters.add(new FlightWaiter(handler, ctx, msg));
+            return true;
+        }
+
+        synchronized List<FlightWaiter> complete() {
+            List<FlightWaiter> completed = waiters;
+            waiters = null;
+            return completed;
+        }
+    }
+
+    /** A request waiting for the verification of an identical request. */
+    private static final class FlightWaiter {
+
+        /** The handler of the waiting connection, which may not be the one verifying. */
+        private final ServerBasicHttpAuthenticator handler;
+
+        private final ChannelHandlerContext ctx;
+
+        private final Object msg;
+
+        private FlightWaiter(
+                ServerBasicHttpAuthenticator handler, ChannelHandlerContext ctx, Object msg) {
+            this.handler = handler;
+            this.ctx = ctx;
+            this.msg = msg;
+        }
     }
 }
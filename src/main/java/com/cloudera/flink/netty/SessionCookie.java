@@ -0,0 +1,89 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.cookie.CookieHeaderNames;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.cookie.DefaultCookie;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.cookie.ServerCookieEncoder;
+
+/**
+ * The cookie carrying the session token of a user. The cookie header of a request is scanned in
+ * place, so looking up the session does not decode the other cookies of the request.
+ */
+final class SessionCookie {
+
+    static final String NAME = "flink-basic-auth-session";
+
+    private SessionCookie() {}
+
+    /**
+     * Finds the value of the session cookie.
+     *
+     * @param cookieHeader The value of the cookie request header
+     * @return The start index of the value in the upper and the end index in the lower 32 bits, or
+     *     -1 if the request has no session cookie
+     */
+    static long find(CharSequence cookieHeader) {
+        int length = cookieHeader.length();
+        int pos = 0;
+        while (pos < length) {
+            while (pos < length && cookieHeader.charAt(pos) == ' ') {
+                pos++;
+            }
+            int end = pos;
+            while (end < length && cookieHeader.charAt(end) != ';') {
+                end++;
+            }
+            if (end - pos > NAME.length()
+                    && cookieHeader.charAt(pos + NAME.length()) == '='
+                    && regionMatches(cookieHeader, pos)) {
+                return ((long) (pos + NAME.length() + 1) << 32) | end;
+            }
+            pos = end + 1;
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(CharSequence cookieHeader, int start) {
+        for (int i = 0; i < NAME.length(); i++) {
+            if (cookieHeader.charAt(start + i) != NAME.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the value of the set-cookie header issuing a session.
+     *
+     * @param token The signed session token
+     * @param maxAgeSeconds Time after which the browser drops the cookie
+     * @param secure Whether the cookie must only be sent over encrypted connections
+     * @return The header value
+     */
+    static String encode(String token, long maxAgeSeconds, boolean secure) {
+        DefaultCookie cookie = new DefaultCookie(NAME, token);
+        cookie.setPath("/");
+        cookie.setMaxAge(maxAgeSeconds);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(secure);
+        cookie.setSameSite(CookieHeaderNames.SameSite.Strict);
+        return ServerCookieEncoder.STRICT.encode(cookie);
+    }
+}
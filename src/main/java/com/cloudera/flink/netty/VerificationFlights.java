@@ -0,0 +1,64 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import com.cloudera.flink.auth.VerifiedCredentialCache;
+
+import javax.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The password verifications in progress by the key of their header. Flink creates a handler for
+ * every connection and its client opens a connection for every request, so the handlers of an
+ * endpoint share the verifications for identical requests to wait for a single one. The keys are
+ * salted by a {@link VerifiedCredentialCache}, so the handlers sharing the verifications must also
+ * share the cache.
+ */
+public final class VerificationFlights {
+
+    private final ConcurrentMap<
+                    VerifiedCredentialCache.Key, ServerBasicHttpAuthenticator.VerificationFlight>
+            flights = new ConcurrentHashMap<>();
+
+    /**
+     * Starts a verification unless an identical one is in progress.
+     *
+     * @return The verification in progress, null if the given one has been started
+     */
+    @Nullable
+    ServerBasicHttpAuthenticator.VerificationFlight start(
+            VerifiedCredentialCache.Key key,
+            ServerBasicHttpAuthenticator.VerificationFlight flight) {
+        return flights.putIfAbsent(key, flight);
+    }
+
+    /** Ends a verification, identical requests arriving from now on are verified on their own. */
+    void end(
+            VerifiedCredentialCache.Key key,
+            ServerBasicHttpAuthenticator.VerificationFlight flight) {
+        flights.remove(key, flight);
+    }
+
+    @Override
+    public String toString() {
+        return "VerificationFlights{inFlight=" + flights.size() + '}';
+    }
+}
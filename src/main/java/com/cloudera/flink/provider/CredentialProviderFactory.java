@@ -0,0 +1,43 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.provider;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.util.ConfigurationException;
+
+import com.cloudera.flink.auth.CredentialProvider;
+
+/**
+ * Creates a {@link CredentialProvider}. Factories are discovered with the service loader, like the
+ * handler factories, and selected by their identifier via {@code security.basic.auth.provider}.
+ */
+public interface CredentialProviderFactory {
+
+    /** Returns the value of {@code security.basic.auth.provider} selecting this factory. */
+    String identifier();
+
+    /**
+     * Creates the provider of an endpoint. Called once per endpoint.
+     *
+     * @param configuration The configuration of the endpoint
+     * @return The provider
+     * @throws ConfigurationException Thrown, if the provider is misconfigured
+     */
+    CredentialProvider createProvider(Configuration configuration) throws ConfigurationException;
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.provider;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.util.ConfigurationException;
+
+import com.cloudera.flink.auth.CredentialProvider;
+import com.cloudera.flink.auth.SharedCredentials;
+import com.cloudera.flink.config.BasicAuthOptions;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/** Creates the default provider, which reads the credentials from the password file. */
+public class FileCredentialProviderFactory implements CredentialProviderFactory {
+
+    public static final String IDENTIFIER = "file";
+
+    @Override
+    public String identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public CredentialProvider createProvider(Configuration configuration)
+            throws ConfigurationException {
+        SharedCredentials credentials;
+        try {
+            credentials = SharedCredentials.of(Paths.get(getPasswordFile(configuration)));
+        } catch (IOException e) {
+            throw new ConfigurationException(e);
+        }
+        if (configuration.get(BasicAuthOptions.BASIC_AUTH_PWD_FILE_RELOAD_ENABLED)) {
+            credentials.watch(
+                    configuration.get(BasicAuthOptions.BASIC_AUTH_PWD_FILE_RELOAD_INTERVAL));
+        }
+        return credentials;
+    }
+
+    static String getPasswordFile(Configuration configuration) throws ConfigurationException {
+        return configuration
+                .getOptional(BasicAuthOptions.BASIC_AUTH_PWD_FILE)
+                .orElseThrow(
+                        () ->
+                                new ConfigurationException(
+                                        BasicAuthOptions.BASIC_AUTH_PWD_FILE.key()
+                                                + " must be configured if basic auth is enabled."));
+    }
+}
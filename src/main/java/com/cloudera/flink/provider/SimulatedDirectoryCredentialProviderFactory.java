@@ -0,0 +1,134 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.provider;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.util.ConfigurationException;
+import org.apache.flink.util.concurrent.ExecutorThreadFactory;
+
+import com.cloudera.flink.auth.CachingCredentialProvider;
+import com.cloudera.flink.auth.CredentialProvider;
+import com.cloudera.flink.auth.CredentialRecord;
+import com.cloudera.flink.auth.CredentialStore;
+import com.cloudera.flink.config.BasicAuthOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates a provider which serves the password file like a remote directory: every round trip takes
+ * the configured latency, and the results are cached and batched like the results of a real
+ * directory. Meant for load tests of the asynchronous lookup without a directory server.
+ */
+public class SimulatedDirectoryCredentialProviderFactory implements CredentialProviderFactory {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(SimulatedDirectoryCredentialProviderFactory.class);
+
+    public static final String IDENTIFIER = "simulated-directory";
+
+    @Override
+    public String identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public CredentialProvider createProvider(Configuration configuration)
+            throws ConfigurationException {
+        CredentialStore directory;
+        try {
+            directory =
+                    CredentialStore.load(
+                            Paths.get(
+                                    FileCredentialProviderFactory.getPasswordFile(configuration)));
+        } catch (IOException e) {
+            throw new ConfigurationException(e);
+        }
+        CachingCredentialProvider provider =
+                new CachingCredentialProvider(
+                        new SimulatedDirectory(
+                                directory,
+                                configuration.get(
+                                        BasicAuthOptions.BASIC_AUTH_PROVIDER_SIMULATED_LATENCY)),
+                        configuration.get(BasicAuthOptions.BASIC_AUTH_PROVIDER_CACHE_MAX_SIZE),
+                        configuration.get(BasicAuthOptions.BASIC_AUTH_PROVIDER_CACHE_TTL),
+                        configuration.get(BasicAuthOptions.BASIC_AUTH_PROVIDER_BATCH_MAX_SIZE),
+                        configuration.get(BasicAuthOptions.BASIC_AUTH_PROVIDER_BATCH_MAX_IN_FLIGHT),
+                        configuration.get(BasicAuthOptions.BASIC_AUTH_PROVIDER_LOOKUP_TIMEOUT));
+        LOG.info("Created {}", provider);
+        return provider;
+    }
+
+    /** A directory answering every round trip after a fixed latency. */
+    static final class SimulatedDirectory implements CachingCredentialProvider.BatchLookup {
+
+        private final CredentialStore directory;
+
+        private final Duration latency;
+
+        private final ScheduledExecutorService timer =
+                Executors.newSingleThreadScheduledExecutor(
+                        new ExecutorThreadFactory("flink-basic-auth-simulated-directory"));
+
+        SimulatedDirectory(CredentialStore directory, Duration latency) {
+            this.directory = directory;
+            this.latency = latency;
+        }
+
+        @Override
+        public CompletableFuture<Map<String, CredentialRecord>> lookup(Set<String> users) {
+            CompletableFuture<Map<String, CredentialRecord>> result = new CompletableFuture<>();
+            timer.schedule(
+                    () -> {
+                        Map<String, CredentialRecord> found = new HashMap<>();
+                        for (String user : users) {
+                            CredentialRecord credentials = directory.getCredentials(user);
+                            if (credentials != null) {
+                                found.put(user, credentials);
+                            }
+                        }
+                        result.complete(found);
+                    },
+                    latency.toNanos(),
+                    TimeUnit.NANOSECONDS);
+            return result;
+        }
+
+        /** Stops the timer once the round trips in flight are answered. */
+        @Override
+        public void close() {
+            timer.shutdown();
+        }
+
+        @Override
+        public String toString() {
+            return "SimulatedDirectory{users=" + directory.size() + ", latency=" + latency + '}';
+        }
+    }
+}
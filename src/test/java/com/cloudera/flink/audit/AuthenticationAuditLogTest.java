@@ -0,0 +1,144 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.audit;
+
+import com.cloudera.flink.metrics.AuthenticationOutcome;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for {@link AuthenticationAuditLog}. */
+class AuthenticationAuditLogTest {
+
+    private static final InetAddress ADDRESS = InetAddress.getLoopbackAddress();
+
+    private final List<String> records = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void testRepeatedFailuresAreSummarized() {
+        AuthenticationAuditLog auditLog =
+                new AuthenticationAuditLog(16, Duration.ofHours(1), records::addAll);
+        long now = System.nanoTime();
+        auditLog.record(AuthenticationOutcome.SUCCESS, "alice", ADDRESS, "/overview", 1500_000);
+        for (int i = 0; i < 5; i++) {
+            auditLog.record(
+                    AuthenticationOutcome.INVALID_PASSWORD, "bob", ADDRESS, "/jobs?id=" + i, 10);
+        }
+
+        assertThat(auditLog.drain(now)).isEqualTo(6);
+        assertThat(records).hasSize(2);
+        assertThat(records.get(0))
+                .startsWith("time=")
+                .endsWith(
+                        " outcome=success user=alice address=127.0.0.1 path=/overview"
+                                + " latencyMicros=1500");
+        assertThat(records.get(1))
+                .endsWith(
+                        " outcome=invalidPassword user=bob address=127.0.0.1 path=/jobs"
+                                + " latencyMicros=0");
+
+        records.clear();
+        assertThat(auditLog.drain(now + Duration.ofHours(2).toNanos())).isZero();
+        assertThat(records)
+                .containsExactly(
+                        "summary=PT1H outcome=invalidPassword user=bob address=127.0.0.1"
+                                + " repeated=4 lastPath=/jobs");
+    }
+
+    @Test
+    void testClientsCannotForgeRecords() {
+        StringBuilder record = new StringBuilder();
+        AuthenticationAuditLog.appendValue(record, "mallory\noutcome=success \"x\"");
+        assertThat(record.toString()).isEqualTo("\"mallory\\u000aoutcome=success \\\"x\\\"\"");
+
+        record.setLength(0);
+        AuthenticationAuditLog.appendValue(record, null);
+        assertThat(record.toString()).isEqualTo("-");
+    }
+
+    @Test
+    void testEventsAreDroppedWhenTheBufferIsFull() {
+        AuthenticationAuditLog auditLog =
+                new AuthenticationAuditLog(3, Duration.ofHours(1), records::addAll);
+        for (int i = 0; i < 6; i++) {
+            auditLog.record(AuthenticationOutcome.SUCCESS, "user" + i, null, "/", 0);
+        }
+
+        assertThat(auditLog.getDroppedCount()).isEqualTo(2);
+        long now = System.nanoTime();
+        assertThat(auditLog.drain(now)).isEqualTo(4);
+        // Drained slots are reused
+        assertThat(auditLog.record(AuthenticationOutcome.SUCCESS, "user6", null, "/", 0)).isTrue();
+        assertThat(auditLog.drain(now + Duration.ofHours(2).toNanos())).isEqualTo(1);
+        assertThat(records).hasSize(6);
+        assertThat(records.get(5)).isEqualTo("summary=PT1H dropped=2 reason=buffer full");
+    }
+
+    @Test
+    void testConcurrentEventsAreWrittenOrCounted() throws Exception {
+        int threads = 4;
+        int events = 20_000;
+        AuthenticationAuditLog auditLog =
+                new AuthenticationAuditLog(1024, Duration.ofHours(1), records::addAll);
+        auditLog.start();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> producers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String user = "user" + t;
+                producers.add(
+                        executor.submit(
+                                () -> {
+                                    start.await();
+                                    for (int i = 0; i < events; i++) {
+                                        auditLog.record(
+                                                AuthenticationOutcome.SUCCESS,
+                                                user,
+                                                ADDRESS,
+                                                "/",
+                                                i);
+                                    }
+                                    return null;
+                                }));
+            }
+            start.countDown();
+            for (Future<?> producer : producers) {
+                producer.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+            auditLog.close();
+        }
+
+        long written = records.stream().filter(r -> r.contains(" outcome=success ")).count();
+        assertThat(written + auditLog.getDroppedCount()).isEqualTo((long) threads * events);
+    }
+}
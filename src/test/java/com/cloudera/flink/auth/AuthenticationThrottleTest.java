@@ -0,0 +1,100 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for {@link AuthenticationThrottle}. */
+class AuthenticationThrottleTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    private static final long NOW = 1_000_000 * SECOND;
+
+    @Test
+    void testBurstAndRefill() {
+        AuthenticationThrottle throttle =
+                new AuthenticationThrottle(3, Duration.ofSeconds(1), 0, Duration.ofSeconds(1), 100);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(throttle.isThrottled("host", null, NOW)).isFalse();
+            throttle.recordFailure("host", null, NOW);
+        }
+        assertThat(throttle.isThrottled("host", null, NOW)).isTrue();
+        assertThat(throttle.isThrottled("other", null, NOW)).isFalse();
+
+        // One token per refill interval
+        assertThat(throttle.isThrottled("host", null, NOW + SECOND - 1)).isTrue();
+        assertThat(throttle.isThrottled("host", null, NOW + SECOND)).isFalse();
+        throttle.recordFailure("host", null, NOW + SECOND);
+        assertThat(throttle.isThrottled("host", null, NOW + SECOND)).isTrue();
+
+        // Waiting regains the whole burst
+        assertThat(throttle.isThrottled("host", null, NOW + 5 * SECOND)).isFalse();
+    }
+
+    @Test
+    void testUsersAreThrottledIndependentlyOfAddresses() {
+        AuthenticationThrottle throttle =
+                new AuthenticationThrottle(0, Duration.ofSeconds(1), 2, Duration.ofSeconds(6), 100);
+
+        throttle.recordFailure("host1", "testusr", NOW);
+        throttle.recordFailure("host2", "testusr", NOW);
+
+        assertThat(throttle.isThrottled("host3", "testusr", NOW)).isTrue();
+        assertThat(throttle.isThrottled("host1", "otherusr", NOW)).isFalse();
+        assertThat(throttle.isThrottled("host1", null, NOW)).isFalse();
+        assertThat(throttle.isThrottled("host3", "testusr", NOW + 6 * SECOND)).isFalse();
+        assertThat(throttle.getRetryAfter()).isEqualTo(Duration.ofSeconds(6));
+    }
+
+    @Test
+    void testIdleBucketsAreEvicted() {
+        AuthenticationThrottle throttle =
+                new AuthenticationThrottle(
+                        5, Duration.ofSeconds(1), 0, Duration.ofSeconds(1), 10_000);
+        for (int i = 0; i < 50; i++) {
+            throttle.recordFailure("host" + i, null, NOW);
+        }
+        assertThat(throttle.size()).isEqualTo(50);
+
+        // The buckets are full again after a second, every segment drops them on its next failure
+        for (int i = 0; i < 500; i++) {
+            throttle.recordFailure("late" + i, null, NOW + 2 * SECOND);
+        }
+        assertThat(throttle.size()).isEqualTo(500);
+    }
+
+    @Test
+    void testEntriesAreBounded() {
+        AuthenticationThrottle throttle =
+                new AuthenticationThrottle(1, Duration.ofHours(1), 0, Duration.ofHours(1), 64);
+
+        for (int i = 0; i < 10_000; i++) {
+            throttle.recordFailure("host" + i, null, NOW);
+        }
+
+        assertThat(throttle.size()).isLessThanOrEqualTo(64);
+        assertThat(throttle.isThrottled("host9999", null, NOW)).isTrue();
+    }
+}
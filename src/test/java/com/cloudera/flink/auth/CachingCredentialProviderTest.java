@@ -0,0 +1,182 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Tests for {@link CachingCredentialProvider}. */
+class CachingCredentialProviderTest {
+
+    private static final CredentialStore DIRECTORY =
+            CredentialStore.of(
+                    Collections.singletonMap("testusr", "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/"));
+
+    private final List<Set<String>> batches = new ArrayList<>();
+
+    private final List<CompletableFuture<Map<String, CredentialRecord>>> roundTrips =
+            new ArrayList<>();
+
+    private final CachingCredentialProvider provider =
+            new CachingCredentialProvider(
+                    users -> {
+                        batches.add(new LinkedHashSet<>(users));
+                        CompletableFuture<Map<String, CredentialRecord>> roundTrip =
+                                new CompletableFuture<>();
+                        roundTrips.add(roundTrip);
+                        return roundTrip;
+                    },
+                    100,
+                    Duration.ofHours(1),
+                    10,
+                    1,
+                    Duration.ofHours(1));
+
+    @Test
+    void testLookupsAreBatchedWhileARoundTripIsInFlight() {
+        CompletableFuture<CredentialRecord> first = provider.lookup("testusr");
+        CompletableFuture<CredentialRecord> unknown = provider.lookup("unknown");
+        CompletableFuture<CredentialRecord> other = provider.lookup("other");
+
+        // The same user waits for the lookup in progress
+        assertThat(provider.lookup("unknown")).isSameAs(unknown);
+        assertThat(batches).containsExactly(Collections.singleton("testusr"));
+
+        answer(0);
+        assertThat(first).isCompletedWithValue(DIRECTORY.getCredentials("testusr"));
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(1)).containsExactly("unknown", "other");
+
+        answer(1);
+        assertThat(unknown).isCompletedWithValue(null);
+        assertThat(other).isCompletedWithValue(null);
+        assertThat(provider.getBatchCount()).isEqualTo(2);
+        assertThat(provider.getLookupCount()).isEqualTo(3);
+    }
+
+    @Test
+    void testLookedUpUsersAreCached() {
+        provider.lookup("testusr");
+        provider.lookup("unknown");
+        answer(0);
+        answer(1);
+
+        CredentialRecord credentials = DIRECTORY.getCredentials("testusr");
+        assertThat(provider.lookup("testusr")).isCompletedWithValue(credentials);
+        // Unknown users are cached as well
+        assertThat(provider.lookup("unknown")).isCompletedWithValue(null);
+        byte[] user = "testusr".getBytes(StandardCharsets.UTF_8);
+        assertThat(provider.getIfPresent(user, 0, user.length)).isSameAs(credentials);
+        byte[] header = "testusr:pwd".getBytes(StandardCharsets.UTF_8);
+        assertThat(provider.getIfPresent(header, 0, 7)).isSameAs(credentials);
+        assertThat(provider.getIfPresent(header, 0, 4)).isNull();
+        assertThat(provider.isCurrent(credentials)).isTrue();
+        assertThat(
+                        provider.isCurrent(
+                                CredentialRecord.parse(
+                                        "testusr", "{SHA}mO8HWOaqxvmp4Rl1SMgZC3LJWB0=")))
+                .isFalse();
+        assertThat(batches).hasSize(2);
+    }
+
+    @Test
+    void testFailedLookupsAreNotCached() {
+        CompletableFuture<CredentialRecord> failed = provider.lookup("testusr");
+        roundTrips.get(0).completeExceptionally(new IllegalStateException("unavailable"));
+
+        assertThat(failed).isCompletedExceptionally();
+        CompletableFuture<CredentialRecord> retried = provider.lookup("testusr");
+        assertThat(retried).isNotDone();
+        answer(1);
+        assertThat(retried).isCompletedWithValue(DIRECTORY.getCredentials("testusr"));
+    }
+
+    @Test
+    void testHungRoundTripsTimeOut() throws Exception {
+        List<Set<String>> sent = new ArrayList<>();
+        CachingCredentialProvider hung =
+                new CachingCredentialProvider(
+                        users -> {
+                            sent.add(new LinkedHashSet<>(users));
+                            return new CompletableFuture<>();
+                        },
+                        100,
+                        Duration.ofHours(1),
+                        10,
+                        1,
+                        Duration.ofMillis(50));
+        CompletableFuture<CredentialRecord> first = hung.lookup("testusr");
+
+        assertThatThrownBy(() -> first.get(10, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(TimeoutException.class);
+        // The failed round trip is no longer in flight, so the next lookup is sent at once
+        assertThat(hung.lookup("testusr")).isNotSameAs(first);
+        assertThat(sent).hasSize(2);
+    }
+
+    @Test
+    void testCacheIsBounded() {
+        CachingCredentialProvider small =
+                new CachingCredentialProvider(
+                        users -> {
+                            Map<String, CredentialRecord> found = new HashMap<>();
+                            for (String user : users) {
+                                found.put(user, DIRECTORY.getCredentials("testusr"));
+                            }
+                            return CompletableFuture.completedFuture(found);
+                        },
+                        2,
+                        Duration.ofHours(1),
+                        10,
+                        1,
+                        Duration.ofHours(1));
+        for (String user : Arrays.asList("a", "b", "c", "d")) {
+            assertThat(small.lookup(user)).isDone();
+        }
+
+        assertThat(small.size()).isEqualTo(2);
+    }
+
+    private void answer(int roundTrip) {
+        Map<String, CredentialRecord> found = new HashMap<>();
+        for (String user : batches.get(roundTrip)) {
+            CredentialRecord credentials = DIRECTORY.getCredentials(user);
+            if (credentials != null) {
+                found.put(user, credentials);
+            }
+        }
+        roundTrips.get(roundTrip).complete(found);
+    }
+}
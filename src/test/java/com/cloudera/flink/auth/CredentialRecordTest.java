@@ -0,0 +1,212 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.apache.commons.codec.digest.Md5Crypt;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Tests the parsing and verification of the supported password hash formats. */
+class CredentialRecordTest {
+
+    private static final String CRYPT_ALPHABET =
+            "./0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    @ParameterizedTest
+    @CsvSource({
+        "APR1, testpwd, $apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/",
+        "SHA256_CRYPT, testpwd, $5$saltsalt$x3xuDhTIyxZSo33AK0plqCP.bQ70EHayv6PnV7dRxH6",
+        "SHA256_CRYPT, testpwd, $5$rounds=1000$saltsalt$dp/EYKJZEOOLoum8ZAIAI1dBm7kGWmxRiVvr/Xjt5vB",
+        "SHA512_CRYPT, testpwd, $6$saltsaltsaltsalt$JFSDesV4yCCUvPZW0gdWFOlM3N4wkhIB8tySR06WchDWtNon/YX1A5qMcXTo02wJByAI1f62G7nfnjS59opWM1",
+        "BCRYPT, testpwd, $2y$05$abcdefghijklmnopqrstuubRqkk8BULz8N4dur6Gp7yUI/Odw7Cji",
+        "BCRYPT, '', $2a$06$DCq7YPn5Rq63x1Lad4cll.TV4S6ytwfsfvkgY8jIucDrjc8deX1s.",
+        "SHA1, testpwd, {SHA}mO8HWOaqxvmp4Rl1SMgZC3LJWB0=",
+    })
+    void testVerify(HashAlgorithm algorithm, String password, String encodedHash) {
+        CredentialRecord record = CredentialRecord.parse("testusr", encodedHash);
+
+        assertEquals(algorithm, record.getAlgorithm());
+        assertTrue(record.verify(password.getBytes(StandardCharsets.UTF_8)));
+        assertFalse(record.verify((password + "x").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The test vectors of jBCrypt. $2a$, $2b$ and $2y$ hash these passwords alike, so the prefixes
+     * of the costs 8 and 10 are replaced by $2b$ and $2y$.
+     */
+    @ParameterizedTest
+    @CsvSource({
+        "'', $2a$06$DCq7YPn5Rq63x1Lad4cll.TV4S6ytwfsfvkgY8jIucDrjc8deX1s.",
+        "'', $2b$08$HqWuK6/Ng6sg9gQzbLrgb.Tl.ZHfXLhvt/SgVyWhQqgqcZ7ZuUtye",
+        "'', $2y$10$k1wbIrmNyFAPwPVPSVa/zecw2BCEnBwVS2GbrmgzxFUOqW9dk4TCW",
+        "'', $2a$12$k42ZFHFWqBp3vWli.nIn8uYyIkbvYRvodzbfbK18SSsY.CsIQPlxO",
+        "a, $2a$06$m0CrhHm10qJ3lXRY.5zDGO3rS2KdeeWLuGmsfGlMfOxih58VYVfxe",
+        "a, $2b$08$cfcvVd2aQ8CMvoMpP2EBfeodLEkkFJ9umNEfPD18.hUF62qqlC/V.",
+        "a, $2y$10$k87L/MF28Q673VKh8/cPi.SUl7MU/rWuSiIDDFayrKk/1tBsSQu4u",
+        "a, $2a$12$8NJH3LsPrANStV6XtBakCez0cKHXVxmvxIlcz785vxAIZrihHZpeS",
+        "abc, $2a$06$If6bvum7DFjUnE9p2uDeDu0YHzrHM6tf.iqN8.yx.jNN1ILEf7h0i",
+        "abc, $2b$08$Ro0CUfOqk6cXEKf3dyaM7OhSCvnwM9s4wIX9JeLapehKK5YdLxKcm",
+        "abc, $2y$10$WvvTPHKwdBJ3uk0Z37EMR.hLA2W6N9AEBhEgrAOljy2Ae5MtaSIUi",
+        "abc, $2a$12$EXRkfkdmXn2gzds2SSitu.MW9.gAVqa9eLS1//RYtYCmB1eLHg.9q",
+        "abcdefghijklmnopqrstuvwxyz, $2a$06$.rCVZVOThsIa97pEDOxvGuRRgzG64bvtJ0938xuqzv18d3ZpQhstC",
+        "abcdefghijklmnopqrstuvwxyz, $2b$08$aTsUwsyowQuzRrDqFflhgekJ8d9/7Z3GV3UcgvzQW3J5zMyrTvlz.",
+        "abcdefghijklmnopqrstuvwxyz, $2y$10$fVH8e28OQRj9tqiDXs1e1uxpsjN0c7II7YPKXua2NAKYvM6iQk7dq",
+        "abcdefghijklmnopqrstuvwxyz, $2a$12$D4G5f18o7aMMfwasBL7GpuQWuP3pkrZrOAnqP.bmezbMng.QwJ/pG",
+        "'~!@#$%^&*()      ~!@#$%^&*()PNBFRD', $2a$06$fPIsBO8qRqkjj273rfaOI.HtSV9jLDpTbZn782DC6/t7qT67P6FfO",
+        "'~!@#$%^&*()      ~!@#$%^&*()PNBFRD', $2b$08$Eq2r4G/76Wv39MzSX262huzPz612MZiYHVUJe/OcOql2jo4.9UxTW",
+        "'~!@#$%^&*()      ~!@#$%^&*()PNBFRD', $2y$10$LgfYWkbzEvQ4JakH7rOvHe0y8pHKF9OaFgwUZ2q7W2FFZmZzJYlfS",
+        "'~!@#$%^&*()      ~!@#$%^&*()PNBFRD', $2a$12$WApznUOJfkEGSmYRfnkrPOr466oFDCaj4b6HY3EXGvfxm43seyhgC",
+    })
+    void testBcryptAgreesWithJBcrypt(String password, String encodedHash) {
+        CredentialRecord record = CredentialRecord.parse("testusr", encodedHash);
+
+        assertEquals(HashAlgorithm.BCRYPT, record.getAlgorithm());
+        assertTrue(record.verify(password.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Test vectors of Openwall's crypt_blowfish, most of them with bytes above 0x7f. The passwords
+     * are ISO-8859-1 strings, one char per byte. Vectors of the countermeasure crypt_blowfish
+     * applies to some of these passwords under $2a$ are left out, since OpenBSD and jBCrypt hash
+     * them like $2b$.
+     */
+    @ParameterizedTest
+    @CsvSource({
+        "U*U, $2a$05$CCCCCCCCCCCCCCCCCCCCC.E5YPO9kmyuRGyh0XouQYb4YMJKvyOeW",
+        "U*U*, $2a$05$CCCCCCCCCCCCCCCCCCCCC.VGOzA784oUp/Z0DY336zx7pLYAy0lwK",
+        "U*U*U, $2a$05$XXXXXXXXXXXXXXXXXXXXXOAcXxm9kjPGEMsLznoKqmqw7tc8WCx4a",
+        "'', $2a$05$CCCCCCCCCCCCCCCCCCCCC.7uG0VCzI2bS7j6ymqJi9CdcdxiRTWNy",
+        "\u00a3, $2a$05$/OK.fbVrR/bpIqNJ5ianF.Sa7shbm4.OzKpvFnX1pQLmQW96oUlCq",
+        "\u00a3, $2y$05$/OK.fbVrR/bpIqNJ5ianF.Sa7shbm4.OzKpvFnX1pQLmQW96oUlCq",
+        "\u00a3ab, $2a$05$/OK.fbVrR/bpIqNJ5ianF.6IflQkJytoRVc1yuaNtHfiuq.FRlSIS",
+        "\u00a3ab, $2y$05$/OK.fbVrR/bpIqNJ5ianF.6IflQkJytoRVc1yuaNtHfiuq.FRlSIS",
+        "\u00ff\u00a3345, $2a$05$/OK.fbVrR/bpIqNJ5ianF.nRht2l/HRhr6zmCp9vYUvvsqynflf9e",
+        "\u00ff\u00a3345, $2y$05$/OK.fbVrR/bpIqNJ5ianF.nRht2l/HRhr6zmCp9vYUvvsqynflf9e",
+        "\u00ff\u00ff\u00a3, $2b$05$/OK.fbVrR/bpIqNJ5ianF.CE5elHaaO4EbggVDjb8P19RukzXSM3e",
+    })
+    void testBcryptAgreesWithCryptBlowfish(String password, String encodedHash) {
+        CredentialRecord record = CredentialRecord.parse("testusr", encodedHash);
+
+        assertTrue(record.verify(password.getBytes(StandardCharsets.ISO_8859_1)));
+        assertFalse(record.verify((password + "x").getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    /**
+     * Test vectors of crypt_blowfish whose passwords repeat a pattern to 72 bytes and may continue
+     * with a suffix. Only the first 72 bytes are hashed.
+     */
+    @ParameterizedTest
+    @CsvSource({
+        "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789, 1, chars after 72"
+                + " are ignored, $2a$05$abcdefghijklmnopqrstuu5s2v8.iXieOjg/.AySBTTZIIVFJeBui",
+        "\u00aa, 72, chars after 72 are ignored as usual, $2a$05$/OK.fbVrR/bpIqNJ5ianF.swQOIzjOiJ9GHEPuhEkvqrUyvWhEMx6",
+        "\u00aaU, 36, '', $2a$05$/OK.fbVrR/bpIqNJ5ianF.R9xrDjiycxMbQE2bp.vgqlYpW5wx2yy",
+        "U\u00aa\u00ff, 24, '', $2a$05$/OK.fbVrR/bpIqNJ5ianF.9tQZzcJfm3uj2NvJ/n5xkhpqLrMpWCe",
+    })
+    void testBcryptUsesTheFirst72Bytes(
+            String pattern, int repetitions, String suffix, String encodedHash) {
+        StringBuilder password = new StringBuilder();
+        for (int i = 0; i < repetitions; i++) {
+            password.append(pattern);
+        }
+        byte[] first72Bytes = password.toString().getBytes(StandardCharsets.ISO_8859_1);
+        CredentialRecord record = CredentialRecord.parse("testusr", encodedHash);
+
+        assertTrue(record.verify((password + suffix).getBytes(StandardCharsets.ISO_8859_1)));
+        assertTrue(record.verify((password + "x").getBytes(StandardCharsets.ISO_8859_1)));
+        assertTrue(record.verify(first72Bytes.clone()));
+        assertFalse(record.verify(Arrays.copyOf(first72Bytes, 71)));
+    }
+
+    @Test
+    void testApr1AgreesWithMd5Crypt() {
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            // Arbitrary bytes, the passwords of clients are not necessarily valid UTF-8
+            byte[] password = new byte[random.nextInt(40)];
+            random.nextBytes(password);
+            StringBuilder salt = new StringBuilder(Apr1PasswordVerifier.PREFIX);
+            for (int length = 1 + random.nextInt(8); length > 0; length--) {
+                salt.append(CRYPT_ALPHABET.charAt(random.nextInt(CRYPT_ALPHABET.length())));
+            }
+            // Md5Crypt clears the password it is given
+            String encodedHash = Md5Crypt.apr1Crypt(password.clone(), salt.toString());
+            CredentialRecord record = CredentialRecord.parse("testusr", encodedHash);
+
+            assertTrue(record.verify(password), encodedHash);
+            byte[] wrongPassword = Arrays.copyOf(password, password.length + 1);
+            assertFalse(record.verify(wrongPassword), encodedHash);
+            if (password.length > 0) {
+                wrongPassword = password.clone();
+                wrongPassword[random.nextInt(password.length)] ^= 1 << random.nextInt(8);
+                assertFalse(record.verify(wrongPassword), encodedHash);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                "plaintext",
+                "$apr1$w7MhlTpg",
+                "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj",
+                "$2y$99$abcdefghijklmnopqrstuubRqkk8BULz8N4dur6Gp7yUI/Odw7Cji",
+                "$2x$05$abcdefghijklmnopqrstuubRqkk8BULz8N4dur6Gp7yUI/Odw7Cji",
+                "$5$rounds=x$saltsalt$x3xuDhTIyxZSo33AK0plqCP.bQ70EHayv6PnV7dRxH6",
+                "{SHA}bm90IGEgZGlnZXN0",
+            })
+    void testMalformedHash(String encodedHash) {
+        IllegalArgumentException e =
+                assertThrows(
+                        IllegalArgumentException.class,
+                        () -> CredentialRecord.parse("testusr", encodedHash));
+        assertFalse(e.getMessage().contains(encodedHash));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {16, 32, 64})
+    void testCryptGroupsCoverEveryDigestByte(int digestLength) {
+        int[][] groups =
+                digestLength == 16
+                        ? Crypt64.MD5_GROUPS
+                        : digestLength == 32 ? Crypt64.SHA256_GROUPS : Crypt64.SHA512_GROUPS;
+        int[] occurrences = new int[digestLength];
+        for (int[] group : groups) {
+            for (int i = 0; i < 3; i++) {
+                if (group[i] >= 0) {
+                    occurrences[group[i]]++;
+                }
+            }
+        }
+        int[] once = new int[digestLength];
+        Arrays.fill(once, 1);
+        assertTrue(Arrays.equals(once, occurrences));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for {@link CredentialStore} and the parsing of password files. */
+class CredentialStoreTest {
+
+    private static final String HASH = "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/";
+
+    private static final String OTHER_HASH = "{SHA}mO8HWOaqxvmp4Rl1SMgZC3LJWB0=";
+
+    @TempDir private Path tempDir;
+
+    @Test
+    void testMalformedLinesAreSkipped() throws IOException {
+        String content =
+                "nocolon\n"
+                        + ":"
+                        + HASH
+                        + "\n"
+                        + "plain:text\n"
+                        + "\n"
+                        + "testusr:"
+                        + HASH
+                        + "\r\n"
+                        + "t\u00e9st:"
+                        + OTHER_HASH;
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+
+        PasswordFileParser.Chunk chunk = PasswordFileParser.parseChunk(bytes, bytes.length);
+        assertThat(chunk.errorLines).containsExactly(1, 2, 3);
+        assertThat(chunk.errors)
+                .containsExactly(
+                        "Missing ':' between user and password hash",
+                        "Empty user name",
+                        "Unsupported password hash format of user plain");
+        assertThat(chunk.lines).isEqualTo(6);
+
+        CredentialStore store = CredentialStore.load(write(content));
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.getCredentials("testusr").getEncodedHash()).isEqualTo(HASH);
+        assertThat(store.getCredentials("testusr").verify(bytes("testpwd"))).isTrue();
+        assertThat(store.getCredentials("t\u00e9st").getEncodedHash()).isEqualTo(OTHER_HASH);
+    }
+
+    @Test
+    void testPermissionsFollowTheHash() throws IOException {
+        CredentialStore store =
+                CredentialStore.load(
+                        write(
+                                "admin:"
+                                        + HASH
+                                        + "\nreader:"
+                                        + HASH
+                                        + ":GET /jobs/**; GET /overview\n"
+                                        + "other:"
+                                        + HASH
+                                        + ":GET /jobs/**; GET /overview\n"
+                                        + "nobody:"
+                                        + HASH
+                                        + ":\n"
+                                        + "broken:"
+                                        + HASH
+                                        + ":GET jobs"));
+
+        assertThat(store.getCredentials("admin").isPermitted("DELETE", "/jobs/1")).isTrue();
+        CredentialRecord reader = store.getCredentials("reader");
+        assertThat(reader.getEncodedHash()).isEqualTo(HASH);
+        assertThat(reader.verify(bytes("testpwd"))).isTrue();
+        assertThat(reader.isPermitted("GET", "/jobs/1/vertices")).isTrue();
+        assertThat(reader.isPermitted("GET", "/overview")).isTrue();
+        assertThat(reader.isPermitted("PATCH", "/jobs/1")).isFalse();
+        // Users with the same permissions share them
+        assertThat(store.getCredentials("other").getPermissions())
+                .isSameAs(reader.getPermissions());
+        assertThat(store.getCredentials("nobody").isPermitted("GET", "/overview")).isFalse();
+        // A malformed pattern must not grant access to everything
+        assertThat(store.getCredentials("broken")).isNull();
+    }
+
+    @Test
+    void testLargeFileIsReadInChunks() throws IOException {
+        int users = 3 * PasswordFileParser.CHUNK_SIZE / 40;
+        Path passwordFile = tempDir.resolve("htpasswd");
+        try (Writer writer = Files.newBufferedWriter(passwordFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < users; i++) {
+                writer.write("user" + i + ':' + OTHER_HASH + '\n');
+            }
+            // Duplicates of earlier chunks win like in a single chunk
+            writer.write("user0:" + HASH + '\n');
+        }
+        assertThat(Files.size(passwordFile)).isGreaterThan(2L * PasswordFileParser.CHUNK_SIZE);
+
+        CredentialStore store = CredentialStore.load(passwordFile);
+
+        assertThat(store.size()).isEqualTo(users);
+        assertThat(store.getCredentials("user0").getEncodedHash()).isEqualTo(HASH);
+        for (int i = 1; i < users; i++) {
+            byte[] user = bytes("user" + i);
+            CredentialRecord credentials = store.getCredentials(user, 0, user.length);
+            assertThat(credentials.getUser()).isEqualTo("user" + i);
+            assertThat(credentials.getEncodedHash()).isEqualTo(OTHER_HASH);
+        }
+    }
+
+    @Test
+    void testReloadKeepsUnchangedRecords() throws IOException {
+        Path passwordFile = write("testusr:" + HASH + "\nchanged:" + HASH + "\nremoved:" + HASH);
+        CredentialStore store = CredentialStore.load(passwordFile);
+        List<Set<String>> notifications = new ArrayList<>();
+        store.addChangeListener(notifications::add);
+        CredentialRecord unchanged = store.getCredentials("testusr");
+        CredentialRecord changed = store.getCredentials("changed");
+
+        Files.write(
+                passwordFile,
+                bytes("testusr:" + HASH + "\nchanged:" + OTHER_HASH + "\nadded:" + HASH));
+        assertThat(store.reloadIfModified(true)).isTrue();
+
+        assertThat(store.getCredentials("testusr")).isSameAs(unchanged);
+        assertThat(store.isCurrent(unchanged)).isTrue();
+        assertThat(store.isCurrent(changed)).isFalse();
+        assertThat(store.getCredentials("changed").verify(bytes("testpwd"))).isTrue();
+        assertThat(store.getCredentials("added").getEncodedHash()).isEqualTo(HASH);
+        assertThat(store.getCredentials("removed")).isNull();
+        assertThat(notifications)
+                .containsExactly(new HashSet<>(Arrays.asList("changed", "removed")));
+
+        assertThat(store.reloadIfModified(true)).isFalse();
+    }
+
+    private Path write(String content) throws IOException {
+        Path passwordFile = tempDir.resolve("htpasswd");
+        Files.write(passwordFile, bytes(content));
+        return passwordFile;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
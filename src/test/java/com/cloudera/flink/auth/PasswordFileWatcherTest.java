@@ -0,0 +1,143 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.apache.flink.core.testutils.CommonTestUtils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchService;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for {@link PasswordFileWatcher}. */
+class PasswordFileWatcherTest {
+
+    private static final String HASH = "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/";
+
+    /** Long enough that only a watch event reloads the file within a test. */
+    private static final Duration NO_POLLING = Duration.ofHours(1);
+
+    @TempDir private Path tempDir;
+
+    @Nullable private WatchService watchService;
+
+    @Nullable private Thread watcherThread;
+
+    @AfterEach
+    void stopWatcher() throws Exception {
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+            watcherThread.join();
+        }
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    @Test
+    void testRewrittenFileIsReloaded() throws Exception {
+        CredentialStore store = CredentialStore.load(write("htpasswd", "testusr:" + HASH));
+        startWatcher(true).register(store, NO_POLLING);
+
+        write("htpasswd", "testusr:" + HASH + "\nadded:" + HASH);
+
+        awaitUser(store, "added");
+    }
+
+    @Test
+    void testAtomicallyReplacedFileIsReloaded() throws Exception {
+        Path passwordFile = write("htpasswd", "testusr:" + HASH);
+        CredentialStore store = CredentialStore.load(passwordFile);
+        startWatcher(true).register(store, NO_POLLING);
+
+        // How configuration management tools and Kubernetes secrets replace files
+        Path replacement = write(".htpasswd.tmp", "added:" + HASH);
+        Files.move(
+                replacement,
+                passwordFile,
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+
+        awaitUser(store, "added");
+        assertThat(store.getCredentials("testusr")).isNull();
+    }
+
+    @Test
+    void testUnregisteredFileIsNotReloaded() throws Exception {
+        CredentialStore unregistered = CredentialStore.load(write("htpasswd", "testusr:" + HASH));
+        CredentialStore store = CredentialStore.load(write("other", "testusr:" + HASH));
+        PasswordFileWatcher watcher = startWatcher(true);
+        watcher.register(unregistered, NO_POLLING);
+        watcher.register(store, NO_POLLING);
+
+        watcher.unregister(unregistered);
+        write("htpasswd", "testusr:" + HASH + "\nadded:" + HASH);
+        write("other", "testusr:" + HASH + "\nadded:" + HASH);
+
+        // Both files are in the same directory, so they would be reloaded together
+        awaitUser(store, "added");
+        assertThat(unregistered.getCredentials("added")).isNull();
+    }
+
+    @Test
+    void testChangeIsPickedUpByPolling() throws Exception {
+        CredentialStore store = CredentialStore.load(write("htpasswd", "testusr:" + HASH));
+        // Without watch events, like on network file systems
+        startWatcher(false).register(store, Duration.ofMillis(10));
+
+        write("htpasswd", "testusr:" + HASH + "\nadded:" + HASH);
+
+        awaitUser(store, "added");
+    }
+
+    private PasswordFileWatcher startWatcher(boolean watchEvents) throws IOException {
+        watchService = watchEvents ? FileSystems.getDefault().newWatchService() : null;
+        PasswordFileWatcher watcher = new PasswordFileWatcher(watchService);
+        watcherThread = new Thread(watcher, "password-file-watcher-test");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        return watcher;
+    }
+
+    private Path write(String fileName, String content) throws IOException {
+        Path file = tempDir.resolve(fileName);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void awaitUser(CredentialStore store, String user) throws Exception {
+        CommonTestUtils.waitUntilIgnoringExceptions(
+                () -> store.getCredentials(user) != null,
+                Duration.ofSeconds(30),
+                Duration.ofMillis(10),
+                "User " + user + " was not reloaded");
+    }
+}
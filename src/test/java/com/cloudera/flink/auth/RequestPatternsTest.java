@@ -0,0 +1,79 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Tests for {@link RequestPatterns}. */
+class RequestPatternsTest {
+
+    private static final RequestPatterns PATTERNS =
+            RequestPatterns.compile(
+                    Arrays.asList(
+                            "GET /config",
+                            "GET,HEAD /assets/**",
+                            "/jobs/*/status",
+                            "* /",
+                            "POST /jars/upload"));
+
+    @ParameterizedTest
+    @CsvSource({
+        "GET, /config, true",
+        "GET, /config?refresh=true, true",
+        "POST, /config, false",
+        "GET, /config/, false",
+        "GET, /configx, false",
+        "GET, /assets, true",
+        "HEAD, /assets/fonts/icons.woff, true",
+        "PUT, /assets/app.js, false",
+        "GET, /assetsx/app.js, false",
+        "GET, /assets/../jobs, false",
+        "GET, /assets/./app.js, false",
+        "GET, /assets//app.js, false",
+        "GET, /assets/%2e%2e/jobs, false",
+        "DELETE, /jobs/0123/status, true",
+        "GET, /jobs//status, false",
+        "GET, /jobs/0123/status/x, false",
+        "GET, /jobs/0123, false",
+        "OPTIONS, /, true",
+        "GET, /overview, false",
+        "POST, /jars/upload, true",
+        "BREW, /, false",
+        "GET, http://localhost/config, false",
+    })
+    void testMatches(String method, String uri, boolean matches) {
+        assertThat(PATTERNS.matches(method, uri)).isEqualTo(matches);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"GET config", "GET /a/**/b", "GET /a*", "BREW /", "GET, /"})
+    void testMalformedPattern(String pattern) {
+        assertThatThrownBy(() -> RequestPatterns.compile(Collections.singletonList(pattern)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(pattern);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Tests for {@link SessionTokens}. */
+class SessionTokensTest {
+
+    private static final String HASH = "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/";
+
+    private static final String OTHER_HASH = "{SHA}qUqP5cyxm6YcTAhz05Hph5gvu9M=";
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private static final byte[] KEY = "first-secret".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] OTHER_KEY = "second-secret".getBytes(StandardCharsets.UTF_8);
+
+    private final CredentialStore store = store(HASH);
+
+    private final SessionTokens tokens =
+            new SessionTokens(Collections.singletonList(KEY), Duration.ofMinutes(15));
+
+    @Test
+    void testRoundTrip() {
+        String token = tokens.issue(store.getCredentials("t\u00e9st"), NOW);
+
+        assertThat(verify(tokens, token, store, NOW)).isSameAs(store.getCredentials("t\u00e9st"));
+    }
+
+    @Test
+    void testTokenWithinCookieHeader() {
+        String token = tokens.issue(store.getCredentials("testusr"), NOW);
+        String header = "a=b; session=" + token + "; c=d";
+        int start = header.indexOf(token);
+
+        assertThat(tokens.verify(header, start, start + token.length(), store, NOW))
+                .isSameAs(store.getCredentials("testusr"));
+    }
+
+    @Test
+    void testExpiredToken() {
+        String token = tokens.issue(store.getCredentials("testusr"), NOW);
+
+        assertThat(verify(tokens, token, store, NOW + Duration.ofMinutes(15).toMillis() - 1))
+                .isNotNull();
+        assertThat(verify(tokens, token, store, NOW + Duration.ofMinutes(15).toMillis() + 1000))
+                .isNull();
+    }
+
+    @Test
+    void testTamperedToken() {
+        String token = tokens.issue(store.getCredentials("testusr"), NOW);
+        String[] parts = token.split("\\.");
+
+        // Extending the expiry invalidates the signature
+        String extended =
+                parts[0]
+                        + "."
+                        + (Long.parseLong(parts[1]) + 3600)
+                        + "."
+                        + parts[2]
+                        + "."
+                        + parts[3];
+        assertThat(verify(tokens, extended, store, NOW)).isNull();
+        // Switching the user invalidates the signature
+        String otherUser =
+                tokens.issue(store.getCredentials("t\u00e9st"), NOW).split("\\.")[0]
+                        + token.substring(parts[0].length());
+        assertThat(verify(tokens, otherUser, store, NOW)).isNull();
+        // Flipping a character of the signature
+        char last = token.charAt(token.length() - 1);
+        String flipped = token.substring(0, token.length() - 1) + (last == 'A' ? 'B' : 'A');
+        assertThat(verify(tokens, flipped, store, NOW)).isNull();
+    }
+
+    @Test
+    void testMalformedToken() {
+        for (String token :
+                new String[] {"", "abc", "a.b.c.d", "dGVzdHVzcg.1.2", "dGVzdHVzcg...", "...."}) {
+            assertThat(verify(tokens, token, store, NOW)).isNull();
+        }
+    }
+
+    @Test
+    void testKeyRotation() {
+        SessionTokens rotated =
+                new SessionTokens(Arrays.asList(OTHER_KEY, KEY), Duration.ofMinutes(15));
+        SessionTokens other =
+                new SessionTokens(Collections.singletonList(OTHER_KEY), Duration.ofMinutes(15));
+        String oldToken = tokens.issue(store.getCredentials("testusr"), NOW);
+        String newToken = rotated.issue(store.getCredentials("testusr"), NOW);
+
+        assertThat(verify(rotated, oldToken, store, NOW)).isNotNull();
+        assertThat(verify(rotated, newToken, store, NOW)).isNotNull();
+        assertThat(verify(tokens, newToken, store, NOW)).isNull();
+        // Once the old key is removed its tokens are no longer accepted
+        assertThat(verify(other, oldToken, store, NOW)).isNull();
+    }
+
+    @Test
+    void testPasswordChangeRevokesTokens() {
+        String token = tokens.issue(store.getCredentials("testusr"), NOW);
+
+        assertThat(verify(tokens, token, store(OTHER_HASH), NOW)).isNull();
+        // Reloading the same password keeps the tokens valid
+        assertThat(verify(tokens, token, store(HASH), NOW)).isNotNull();
+    }
+
+    @Test
+    void testRemovedUser() {
+        String token = tokens.issue(store.getCredentials("testusr"), NOW);
+
+        assertThat(
+                        verify(
+                                tokens,
+                                token,
+                                CredentialStore.of(Collections.singletonMap("t\u00e9st", HASH)),
+                                NOW))
+                .isNull();
+    }
+
+    @Test
+    void testInvalidConfiguration() {
+        assertThatThrownBy(() -> new SessionTokens(Collections.emptyList(), Duration.ofMinutes(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(
+                        () ->
+                                new SessionTokens(
+                                        Collections.singletonList(KEY), Duration.ofMillis(10)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static CredentialRecord verify(
+            SessionTokens tokens, String token, CredentialStore store, long now) {
+        return tokens.verify(token, 0, token.length(), store, now);
+    }
+
+    private static CredentialStore store(String testusrHash) {
+        Map<String, String> credentials = new HashMap<>();
+        credentials.put("testusr", testusrHash);
+        credentials.put("t\u00e9st", HASH);
+        return CredentialStore.of(credentials);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for {@link SharedCredentials}. */
+class SharedCredentialsTest {
+
+    private static final String HASH = "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/";
+
+    @TempDir private Path tempDir;
+
+    @Test
+    void testSameFileIsShared() throws IOException {
+        Path passwordFile = tempDir.resolve("htpasswd");
+        Files.write(passwordFile, ("testusr:" + HASH).getBytes(StandardCharsets.UTF_8));
+        Files.createDirectory(tempDir.resolve("other"));
+
+        SharedCredentials shared = SharedCredentials.of(passwordFile);
+        SharedCredentials sameFile =
+                SharedCredentials.of(tempDir.resolve("other").resolve("..").resolve("htpasswd"));
+
+        assertThat(sameFile).isSameAs(shared);
+        assertThat(sameFile.getStore()).isSameAs(shared.getStore());
+        VerifiedCredentialCache cache = shared.getCache(10, Duration.ofMinutes(1));
+        assertThat(sameFile.getCache(10, Duration.ofMinutes(1))).isSameAs(cache);
+        assertThat(sameFile.getCache(20, Duration.ofMinutes(1))).isNotSameAs(cache);
+
+        Path otherFile = tempDir.resolve("other").resolve("htpasswd");
+        Files.copy(passwordFile, otherFile);
+        assertThat(SharedCredentials.of(otherFile).getStore()).isNotSameAs(shared.getStore());
+    }
+
+    @Test
+    void testLastCloseReleasesTheCredentials() throws IOException {
+        Path passwordFile = tempDir.resolve("htpasswd");
+        Files.write(passwordFile, ("testusr:" + HASH).getBytes(StandardCharsets.UTF_8));
+        SharedCredentials shared = SharedCredentials.of(passwordFile);
+        SharedCredentials.of(passwordFile);
+
+        shared.close();
+        assertThat(SharedCredentials.of(passwordFile)).isSameAs(shared);
+
+        shared.close();
+        shared.close();
+        SharedCredentials reloaded = SharedCredentials.of(passwordFile);
+        assertThat(reloaded).isNotSameAs(shared);
+        assertThat(reloaded.getStore()).isNotSameAs(shared.getStore());
+        reloaded.close();
+    }
+
+    @Test
+    void testReloadInvalidatesTheCacheOfChangedUsers() throws IOException {
+        Path passwordFile = tempDir.resolve("htpasswd");
+        Files.write(
+                passwordFile,
+                ("testusr:" + HASH + "\nchanged:" + HASH + "\nremoved:" + HASH)
+                        .getBytes(StandardCharsets.UTF_8));
+        SharedCredentials shared = SharedCredentials.of(passwordFile);
+        CredentialStore store = shared.getStore();
+        VerifiedCredentialCache cache = shared.getCache(10, Duration.ofMinutes(1));
+        for (String user : new String[] {"testusr", "changed", "removed"}) {
+            cache.put(cache.keyOf("Basic " + user), store.getCredentials(user));
+        }
+
+        Files.write(
+                passwordFile,
+                ("testusr:" + HASH + "\nchanged:{SHA}qUqP5cyxm6YcTAhz05Hph5gvu9M=")
+                        .getBytes(StandardCharsets.UTF_8));
+        assertThat(store.reloadIfModified(true)).isTrue();
+
+        assertThat(cache.get("Basic testusr").getCredentials())
+                .isSameAs(store.getCredentials("testusr"));
+        assertThat(cache.get("Basic changed")).isNull();
+        assertThat(cache.get("Basic removed")).isNull();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for {@link VerifiedCredentialCache}. */
+class VerifiedCredentialCacheTest {
+
+    private static final CredentialRecord TESTUSR =
+            CredentialRecord.parse("testusr", "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/");
+
+    private static final CredentialRecord OTHER =
+            CredentialRecord.parse("other", "{SHA}qUqP5cyxm6YcTAhz05Hph5gvu9M=");
+
+    @Test
+    void testHitsAndMisses() {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(10, Duration.ofHours(1));
+
+        assertThat(cache.get("Basic dGVzdHVzcjp0ZXN0cHdk")).isNull();
+        cache.put(cache.keyOf("Basic dGVzdHVzcjp0ZXN0cHdk"), TESTUSR);
+        assertThat(cache.get("Basic dGVzdHVzcjp0ZXN0cHdk").getCredentials()).isSameAs(TESTUSR);
+        assertThat(cache.get("Basic dGVzdHVzcjp3cm9uZ3B3ZA==")).isNull();
+
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() {
+        // Sixteen segments of two entries each
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(32, Duration.ofHours(1));
+        List<String> sameSegment = headersOfOneSegment(cache, 3);
+        String first = sameSegment.get(0);
+        String second = sameSegment.get(1);
+        String third = sameSegment.get(2);
+
+        cache.put(cache.keyOf(first), TESTUSR);
+        cache.put(cache.keyOf(second), TESTUSR);
+        // Using the first entry makes the second one the least recently used
+        assertThat(cache.get(first)).isNotNull();
+        cache.put(cache.keyOf(third), TESTUSR);
+
+        assertThat(cache.get(first)).isNotNull();
+        assertThat(cache.get(second)).isNull();
+        assertThat(cache.get(third)).isNotNull();
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testEntriesExpire() throws InterruptedException {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(10, Duration.ofMillis(1));
+        cache.put(cache.keyOf("Basic dGVzdHVzcjp0ZXN0cHdk"), TESTUSR);
+
+        Thread.sleep(10);
+
+        assertThat(cache.get("Basic dGVzdHVzcjp0ZXN0cHdk")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void testInvalidateUser() {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(10, Duration.ofHours(1));
+        cache.put(cache.keyOf("Basic dGVzdHVzcjp0ZXN0cHdk"), TESTUSR);
+        cache.put(cache.keyOf("Basic dGVzdHVzcjpvbGRwd2Q="), TESTUSR);
+        cache.put(cache.keyOf("Basic b3RoZXI6dGVzdHB3ZA=="), OTHER);
+
+        cache.invalidateUser("testusr");
+
+        assertThat(cache.get("Basic dGVzdHVzcjp0ZXN0cHdk")).isNull();
+        assertThat(cache.get("Basic dGVzdHVzcjpvbGRwd2Q=")).isNull();
+        assertThat(cache.get("Basic b3RoZXI6dGVzdHB3ZA==").getCredentials()).isSameAs(OTHER);
+    }
+
+    @Test
+    void testCopyIsNotOverwrittenByTheNextProbe() {
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(10, Duration.ofHours(1));
+        VerifiedCredentialCache.Key probe = cache.probe("Basic dGVzdHVzcjp0ZXN0cHdk");
+        VerifiedCredentialCache.Key copy = probe.copy();
+
+        // The thread reuses its probe key for the next header
+        assertThat(cache.probe("Basic b3RoZXI6dGVzdHB3ZA==")).isSameAs(probe);
+
+        assertThat(copy).isEqualTo(cache.keyOf("Basic dGVzdHVzcjp0ZXN0cHdk"));
+        assertThat(copy).isNotEqualTo(probe);
+        assertThat(copy.hashCode()).isEqualTo(cache.keyOf("Basic dGVzdHVzcjp0ZXN0cHdk").hashCode());
+    }
+
+    @Test
+    void testDisabledCacheHoldsNothing() {
+        VerifiedCredentialCache cache = VerifiedCredentialCache.disabled();
+        cache.put(cache.keyOf("Basic dGVzdHVzcjp0ZXN0cHdk"), TESTUSR);
+
+        assertThat(cache.isEnabled()).isFalse();
+        assertThat(cache.get("Basic dGVzdHVzcjp0ZXN0cHdk")).isNull();
+        assertThat(cache.getMissCount()).isZero();
+    }
+
+    /** Finds headers whose keys fall into the same of the sixteen segments. */
+    private static List<String> headersOfOneSegment(VerifiedCredentialCache cache, int count) {
+        List<List<String>> segments = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            segments.add(new ArrayList<>());
+        }
+        for (int i = 0; ; i++) {
+            String header = "Basic user" + i;
+            List<String> segment = segments.get(Math.floorMod(cache.keyOf(header).hashCode(), 16));
+            segment.add(header);
+            if (segment.size() == count) {
+                return segment;
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.metrics;
+
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.Histogram;
+import org.apache.flink.metrics.Metric;
+import org.apache.flink.runtime.metrics.MetricRegistry;
+import org.apache.flink.runtime.metrics.NoOpMetricRegistry;
+import org.apache.flink.runtime.metrics.groups.AbstractMetricGroup;
+import org.apache.flink.runtime.metrics.groups.GenericMetricGroup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for {@link AuthenticationMetrics}. */
+class AuthenticationMetricsTest {
+
+    @Test
+    void testMetricsAreRegisteredInMetricGroup() {
+        Map<String, Metric> registered = new HashMap<>();
+        MetricRegistry registry =
+                new NoOpMetricRegistry() {
+                    @Override
+                    public void register(Metric metric, String name, AbstractMetricGroup group) {
+                        registered.put(group.getMetricIdentifier(name), metric);
+                    }
+                };
+        AuthenticationMetrics metrics = new AuthenticationMetrics();
+        metrics.setPendingAuthentications(() -> 3);
+        metrics.setCacheCounts(() -> 5L, () -> 7L);
+
+        metrics.register(new GenericMetricGroup(registry, null, "jobmanager"));
+        metrics.record(AuthenticationOutcome.SUCCESS);
+        metrics.record(AuthenticationOutcome.INVALID_PASSWORD);
+        metrics.record(AuthenticationOutcome.INVALID_PASSWORD);
+        metrics.recordHashLatency(1_000_000L);
+
+        assertThat(registered).hasSize(AuthenticationOutcome.values().length + 4);
+        assertThat(gauge(registered, "success")).isEqualTo(1L);
+        assertThat(gauge(registered, "invalidPassword")).isEqualTo(2L);
+        assertThat(gauge(registered, "error")).isEqualTo(0L);
+        assertThat(gauge(registered, "pendingAuthentications")).isEqualTo(3);
+        assertThat(gauge(registered, "cacheHits")).isEqualTo(5L);
+        assertThat(gauge(registered, "cacheMisses")).isEqualTo(7L);
+        Histogram hashLatency =
+                (Histogram) registered.get("jobmanager.basicAuthentication.hashLatency");
+        assertThat(hashLatency.getCount()).isEqualTo(1);
+    }
+
+    private static Object gauge(Map<String, Metric> registered, String name) {
+        return ((Gauge<?>) registered.get("jobmanager.basicAuthentication." + name)).getValue();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.metrics;
+
+import org.apache.flink.metrics.HistogramStatistics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/** Tests for {@link LatencyHistogram}. */
+class LatencyHistogramTest {
+
+    @Test
+    void testEmpty() {
+        HistogramStatistics statistics = new LatencyHistogram().getStatistics();
+
+        assertThat(statistics.size()).isZero();
+        assertThat(statistics.getQuantile(0.99)).isZero();
+        assertThat(statistics.getMean()).isZero();
+        assertThat(statistics.getMin()).isZero();
+        assertThat(statistics.getMax()).isZero();
+    }
+
+    @Test
+    void testQuantilesWithinBucketResolution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.update(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        HistogramStatistics statistics = histogram.getStatistics();
+
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(statistics.getMin()).isEqualTo(1_000L);
+        assertThat(statistics.getMax()).isEqualTo(1_000_000L);
+        assertThat(statistics.getMean()).isCloseTo(500_500.0, within(0.1));
+        // Quantiles are the upper bound of their bucket, which is at most 25% above the value
+        assertThat(statistics.getQuantile(0.5)).isBetween(500_000.0, 625_000.0);
+        assertThat(statistics.getQuantile(0.99)).isBetween(990_000.0, 1_000_000.0);
+        assertThat(statistics.getStdDev()).isCloseTo(288_819.0, within(30_000.0));
+    }
+
+    @Test
+    void testBucketsCoverAllValues() {
+        long previousUpperBound = 0;
+        for (long value = 1; value > 0 && value < (1L << 42); value = value * 3 / 2 + 1) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertThat(bucket).isGreaterThanOrEqualTo(0);
+            if (value < (1L << 41)) {
+                assertThat(LatencyHistogram.upperBoundOf(bucket)).isGreaterThan(value);
+            }
+            assertThat(LatencyHistogram.upperBoundOf(bucket))
+                    .isGreaterThanOrEqualTo(previousUpperBound);
+            previousUpperBound = LatencyHistogram.upperBoundOf(bucket);
+        }
+        assertThat(LatencyHistogram.bucketOf(Long.MAX_VALUE))
+                .isEqualTo(LatencyHistogram.bucketOf(1L << 41));
+    }
+}
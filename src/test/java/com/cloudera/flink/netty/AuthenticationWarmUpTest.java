@@ -0,0 +1,103 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.configuration.Configuration;
+
+import com.cloudera.flink.auth.CredentialStore;
+import com.cloudera.flink.auth.HashAlgorithm;
+import com.cloudera.flink.config.BasicAuthOptions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for {@link AuthenticationWarmUp}. */
+class AuthenticationWarmUpTest {
+
+    @Test
+    void testWarmUpEndsAtItsDeadline() {
+        Map<String, String> users = new LinkedHashMap<>();
+        users.put("alice", "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/");
+        users.put("bob", "$apr1$Fz1xG3Ob$kGkSi5zOqTNsDVXfmoN6k0");
+        users.put("service", "{SHA}qUqP5cyxm6YcTAhz05Hph5gvu9M=");
+        AuthenticationWarmUp warmUp =
+                new AuthenticationWarmUp(
+                        new Configuration(), Collections.emptyMap(), CredentialStore.of(users));
+        long start = System.nanoTime();
+
+        List<AuthenticationWarmUp.HashCost> costs =
+                warmUp.warmUp(start + TimeUnit.MILLISECONDS.toNanos(200));
+
+        // A single request or hash may end after the deadline
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(2));
+        // One measurement for each algorithm of the loaded credentials
+        assertThat(costs)
+                .extracting(cost -> cost.algorithm)
+                .containsExactlyInAnyOrder(HashAlgorithm.APR1, HashAlgorithm.SHA1);
+        assertThat(costs).allMatch(cost -> cost.loaded && cost.nanos > 0);
+    }
+
+    @Test
+    void testSyntheticHashIsMeasuredWithoutLoadedCredentials() {
+        AuthenticationWarmUp warmUp =
+                new AuthenticationWarmUp(
+                        new Configuration(),
+                        Collections.emptyMap(),
+                        CredentialStore.of(Collections.emptyMap()));
+
+        List<AuthenticationWarmUp.HashCost> costs =
+                warmUp.warmUp(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertThat(costs).singleElement().matches(cost -> !cost.loaded && cost.nanos > 0);
+    }
+
+    @Test
+    void testRecommendationsFollowTheHashCost() {
+        Configuration configuration = new Configuration();
+        long fastHash = TimeUnit.MICROSECONDS.toNanos(200);
+        long slowHash = TimeUnit.MILLISECONDS.toNanos(50);
+
+        assertThat(AuthenticationWarmUp.recommend(fastHash, configuration, 4)).isEmpty();
+        assertThat(AuthenticationWarmUp.recommend(slowHash, configuration, 4))
+                .singleElement()
+                .asString()
+                .contains(BasicAuthOptions.BASIC_AUTH_VERIFICATION_ASYNC.key());
+
+        configuration.set(BasicAuthOptions.BASIC_AUTH_VERIFICATION_ASYNC, true);
+        configuration.set(BasicAuthOptions.BASIC_AUTH_VERIFICATION_THREADS, 8);
+        configuration.set(BasicAuthOptions.BASIC_AUTH_CACHE_MAX_SIZE, 0);
+        List<String> recommendations = AuthenticationWarmUp.recommend(slowHash, configuration, 4);
+
+        assertThat(recommendations).hasSize(3);
+        assertThat(recommendations.get(0))
+                .contains(BasicAuthOptions.BASIC_AUTH_VERIFICATION_THREADS.key());
+        // 4 threads hash 80 passwords within the default retry-after of a second
+        assertThat(recommendations.get(1))
+                .contains("12500 ms")
+                .endsWith(BasicAuthOptions.BASIC_AUTH_VERIFICATION_QUEUE_SIZE.key() + " to 80");
+        assertThat(recommendations.get(2))
+                .contains(BasicAuthOptions.BASIC_AUTH_CACHE_MAX_SIZE.key());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.shaded.netty4.io.netty.util.AsciiString;
+
+import com.cloudera.flink.auth.CredentialRecord;
+import com.cloudera.flink.auth.CredentialStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for {@link BasicCredentialsDecoder}. */
+class BasicCredentialsDecoderTest {
+
+    private static final String HASH = "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/";
+
+    private final BasicCredentialsDecoder decoder = BasicCredentialsDecoder.get();
+
+    @AfterEach
+    void clear() {
+        decoder.clear();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Basic abc", "basic abc", "BASIC abc"})
+    void testBasicSchemeIgnoresCase(String header) {
+        assertThat(BasicCredentialsDecoder.isBasicScheme(header)).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Bearer abc", "Basicabc", "Basic", ""})
+    void testOtherSchemes(String header) {
+        assertThat(BasicCredentialsDecoder.isBasicScheme(header)).isFalse();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"testusr:testpwd", "testusr:testpw", "testusr:testpwdx", "u:p:q"})
+    void testDecodeWithAndWithoutPadding(String credentials) {
+        String encoded = encode(credentials);
+        byte[] expectedPassword =
+                credentials
+                        .substring(credentials.indexOf(':') + 1)
+                        .getBytes(StandardCharsets.UTF_8);
+
+        assertThat(decoder.decode(new AsciiString("Basic " + encoded))).isTrue();
+        assertThat(decoder.hasPassword()).isTrue();
+        assertThat(decoder.copyPassword()).isEqualTo(expectedPassword);
+
+        assertThat(decoder.decode("Basic " + encoded.replace("=", ""))).isTrue();
+        assertThat(decoder.copyPassword()).isEqualTo(expectedPassword);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Basic a", "Basic ab!c", "Basic ab c", "Basic ab\u00e9c"})
+    void testDecodeMalformed(String header) {
+        assertThat(decoder.decode(header)).isFalse();
+        assertThat(decoder.hasPassword()).isFalse();
+    }
+
+    @Test
+    void testDecodeWithoutPassword() {
+        assertThat(decoder.decode("Basic " + encode("testusr"))).isTrue();
+        assertThat(decoder.hasPassword()).isFalse();
+    }
+
+    @Test
+    void testLookupUser() {
+        Map<String, String> credentials = new HashMap<>();
+        credentials.put("testusr", HASH);
+        credentials.put("t\u00e9st", HASH);
+        credentials.put("testusr2", HASH);
+        CredentialStore store = CredentialStore.of(credentials);
+
+        for (String user : credentials.keySet()) {
+            assertThat(decoder.decode("Basic " + encode(user + ":testpwd"))).isTrue();
+            CredentialRecord record = decoder.lookupUser(store);
+            assertThat(record).isSameAs(store.getCredentials(user));
+        }
+
+        assertThat(decoder.decode("Basic " + encode("testus:testpwd"))).isTrue();
+        assertThat(decoder.lookupUser(store)).isNull();
+        assertThat(decoder.decode("Basic " + encode(":testpwd"))).isTrue();
+        assertThat(decoder.lookupUser(store)).isNull();
+    }
+
+    private static String encode(String credentials) {
+        return Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.shaded.netty4.io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.DefaultHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaderNames;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpMethod;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpVersion;
+import org.apache.flink.shaded.netty4.io.netty.util.AsciiString;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for {@link ClientCredentials} and the {@link ClientBasicHttpAuthenticator}. */
+class ClientCredentialsTest {
+
+    @TempDir private Path tempDir;
+
+    @Test
+    void testMostSpecificEndpointWins() throws IOException {
+        Path file =
+                write(
+                        "endpoints",
+                        "# <endpoint> <user>:<password>\n"
+                                + "jobmanager:8081 exact:pwd\n"
+                                + "JobManager      host:pass word\r\n"
+                                + "*:18081         port:pwd\n"
+                                + "[::1]:8081      ipv6:pwd\n"
+                                + "\n"
+                                + "nocredentials\n"
+                                + "jobmanager:http badport:pwd\n");
+        ClientCredentials credentials = ClientCredentials.load(file, "default:pwd");
+
+        assertThat(header(credentials, "jobmanager", 8081)).isEqualTo(basic("exact:pwd"));
+        assertThat(header(credentials, "JOBMANAGER", 8081)).isEqualTo(basic("exact:pwd"));
+        assertThat(header(credentials, "jobmanager", 18081)).isEqualTo(basic("host:pass word"));
+        assertThat(header(credentials, "other", 18081)).isEqualTo(basic("port:pwd"));
+        assertThat(header(credentials, "::1", 8081)).isEqualTo(basic("ipv6:pwd"));
+        assertThat(header(credentials, "other", 8081)).isEqualTo(basic("default:pwd"));
+        assertThat(toString(credentials.getHeader(null))).isEqualTo(basic("default:pwd"));
+
+        assertThat(header(ClientCredentials.load(file, null), "other", 8081)).isNull();
+    }
+
+    @Test
+    void testRotatedCredentialsAreReloaded() throws IOException {
+        Path file = write("endpoints", "* old:pwd\n");
+        ClientCredentials credentials = ClientCredentials.load(file, null);
+        assertThat(header(credentials, "jobmanager", 8081)).isEqualTo(basic("old:pwd"));
+
+        assertThat(credentials.reloadIfModified(true)).isFalse();
+        write("endpoints", "* new:pwd\n");
+        assertThat(credentials.reloadIfModified(true)).isTrue();
+        assertThat(header(credentials, "jobmanager", 8081)).isEqualTo(basic("new:pwd"));
+
+        // The previous credentials are kept while the file cannot be read
+        Files.delete(file);
+        assertThat(credentials.reloadIfModified(true)).isFalse();
+        assertThat(header(credentials, "jobmanager", 8081)).isEqualTo(basic("new:pwd"));
+    }
+
+    @Test
+    void testHeaderIsEncodedAsUtf8() {
+        EmbeddedChannel channel =
+                new EmbeddedChannel(new ClientBasicHttpAuthenticator("t\u00e9stusr:p\u00e4ss"));
+        HttpRequest request =
+                new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/overview");
+
+        channel.writeOutbound(request);
+
+        HttpRequest written = channel.readOutbound();
+        assertThat(written.headers().get(HttpHeaderNames.AUTHORIZATION))
+                .isEqualTo(basic("t\u00e9stusr:p\u00e4ss"));
+        channel.finishAndReleaseAll();
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(tempDir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Nullable
+    private static String header(ClientCredentials credentials, String host, int port) {
+        return toString(credentials.getHeader(InetSocketAddress.createUnresolved(host, port)));
+    }
+
+    @Nullable
+    private static String toString(@Nullable AsciiString header) {
+        return header == null ? null : header.toString();
+    }
+
+    private static String basic(String credentials) {
+        return "Basic "
+                + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.util.ConfigurationException;
+
+import org.apache.flink.shaded.netty4.io.netty.channel.DefaultChannelId;
+import org.apache.flink.shaded.netty4.io.netty.channel.embedded.EmbeddedChannel;
+
+import com.cloudera.flink.auth.CredentialProvider;
+import com.cloudera.flink.auth.SharedCredentials;
+import com.cloudera.flink.config.BasicAuthOptions;
+import com.cloudera.flink.metrics.AuthenticationMetrics;
+import com.cloudera.flink.metrics.AuthenticationMetricsReporter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Tests for {@link ServerBasicAuthHandlerFactory}. */
+class ServerBasicAuthHandlerFactoryTest {
+
+    private static final String PASSWORD_FILE =
+            requireNonNull(ServerBasicAuthHandlerFactoryTest.class.getResource("/.htpasswd"))
+                    .getFile();
+
+    @BeforeEach
+    void clearReporters() {
+        CapturingReporter.opened.clear();
+        CapturingReporter.closed.clear();
+    }
+
+    @Test
+    void testMetricsAreReportedAndRegistered() throws Exception {
+        Configuration configuration = new Configuration();
+        configuration.set(BasicAuthOptions.BASIC_AUTH_ENABLED, true);
+        configuration.set(BasicAuthOptions.BASIC_AUTH_PWD_FILE, PASSWORD_FILE);
+        configuration.set(BasicAuthOptions.BASIC_AUTH_PWD_FILE_RELOAD_ENABLED, false);
+        configuration.set(
+                BasicAuthOptions.BASIC_AUTH_METRICS_REPORTERS,
+                Collections.singletonList(CapturingReporter.class.getName()));
+        ServerBasicAuthHandlerFactory factory = new ServerBasicAuthHandlerFactory();
+        Map<String, String> responseHeaders = Collections.emptyMap();
+
+        factory.createHandler(configuration, responseHeaders);
+        factory.createHandler(configuration, responseHeaders);
+
+        // The metrics are shared by the handlers of all connections
+        assertThat(CapturingReporter.opened).hasSize(1);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name =
+                new ObjectName(
+                        "com.cloudera.flink:type=BasicAuthentication,passwordFile="
+                                + ObjectName.quote(PASSWORD_FILE));
+        // Other tests of this JVM may have registered the metrics of the password file before
+        assertThat(server.getAttribute(name, "SuccessCount")).isInstanceOf(Long.class);
+        assertThat(server.getAttribute(name, "CacheHitCount")).isInstanceOf(Long.class);
+    }
+
+    @Test
+    void testResourcesAreReleasedWhenTheEndpointShutsDown(@TempDir Path tempDir) throws Exception {
+        // A password file of its own, so that the metrics are registered by this test
+        Path passwordFile = Files.copy(Paths.get(PASSWORD_FILE), tempDir.resolve("htpasswd"));
+        Configuration configuration = new Configuration();
+        configuration.set(BasicAuthOptions.BASIC_AUTH_ENABLED, true);
+        configuration.set(BasicAuthOptions.BASIC_AUTH_PWD_FILE, passwordFile.toString());
+        configuration.set(BasicAuthOptions.BASIC_AUTH_PWD_FILE_RELOAD_ENABLED, false);
+        configuration.set(BasicAuthOptions.BASIC_AUTH_VERIFICATION_ASYNC, true);
+        configuration.set(
+                BasicAuthOptions.BASIC_AUTH_METRICS_REPORTERS,
+                Collections.singletonList(CapturingReporter.class.getName()));
+        ServerBasicAuthHandlerFactory factory = new ServerBasicAuthHandlerFactory();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name =
+                new ObjectName(
+                        "com.cloudera.flink:type=BasicAuthentication,passwordFile="
+                                + ObjectName.quote(passwordFile.toString()));
+
+        // The connections accepted by the server channel of the endpoint
+        EmbeddedChannel serverChannel = new EmbeddedChannel();
+        for (int i = 0; i < 2; i++) {
+            EmbeddedChannel connection =
+                    new EmbeddedChannel(
+                            serverChannel,
+                            DefaultChannelId.newInstance(),
+                            true,
+                            false,
+                            factory.createHandler(configuration, Collections.emptyMap()).get());
+            connection.finishAndReleaseAll();
+        }
+        assertThat(server.isRegistered(name)).isTrue();
+        assertThat(CapturingReporter.closed).isEmpty();
+        ExecutorService verificationExecutor =
+                factory.getOrCreateVerificationExecutor(configuration);
+        assertThat(verificationExecutor.isShutdown()).isFalse();
+        CredentialProvider credentials = factory.getOrCreateCredentials(configuration);
+
+        serverChannel.close();
+        serverChannel.runPendingTasks();
+
+        assertThat(server.isRegistered(name)).isFalse();
+        assertThat(CapturingReporter.closed).hasSize(1);
+        assertThat(verificationExecutor.isShutdown()).isTrue();
+        // The endpoint was the only user of the password file
+        SharedCredentials reloaded = SharedCredentials.of(passwordFile);
+        assertThat(reloaded).isNotSameAs(credentials);
+        reloaded.close();
+    }
+
+    @Test
+    void testCredentialProviderIsClosedWhenTheEndpointShutsDown() throws Exception {
+        Configuration configuration = new Configuration();
+        configuration.set(BasicAuthOptions.BASIC_AUTH_ENABLED, true);
+        configuration.set(BasicAuthOptions.BASIC_AUTH_PWD_FILE, PASSWORD_FILE);
+        configuration.set(BasicAuthOptions.BASIC_AUTH_METRICS_JMX_ENABLED, false);
+        configuration.set(BasicAuthOptions.BASIC_AUTH_PROVIDER, "simulated-directory");
+        configuration.set(
+                BasicAuthOptions.BASIC_AUTH_PROVIDER_SIMULATED_LATENCY, Duration.ofMillis(1));
+        ServerBasicAuthHandlerFactory factory = new ServerBasicAuthHandlerFactory();
+        EmbeddedChannel serverChannel = new EmbeddedChannel();
+        new EmbeddedChannel(
+                        serverChannel,
+                        DefaultChannelId.newInstance(),
+                        true,
+                        false,
+                        factory.createHandler(configuration, Collections.emptyMap()).get())
+                .finishAndReleaseAll();
+        CredentialProvider provider = factory.getOrCreateCredentials(configuration);
+        assertThat(provider.lookup("testusr").get(10, TimeUnit.SECONDS)).isNotNull();
+
+        serverChannel.close();
+        serverChannel.runPendingTasks();
+
+        // The timer of the simulated directory is shut down, so new round trips fail
+        assertThat(provider.lookup("unknown"))
+                .failsWithin(Duration.ofSeconds(10))
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void testCredentialProviderIsSelectedByIdentifier() throws Exception {
+        Configuration configuration = new Configuration();
+        configuration.set(BasicAuthOptions.BASIC_AUTH_ENABLED, true);
+        configuration.set(BasicAuthOptions.BASIC_AUTH_PWD_FILE, PASSWORD_FILE);
+        configuration.set(BasicAuthOptions.BASIC_AUTH_METRICS_JMX_ENABLED, false);
+        configuration.set(BasicAuthOptions.BASIC_AUTH_PROVIDER, "simulated-directory");
+
+        assertThat(
+                        new ServerBasicAuthHandlerFactory()
+                                .createHandler(configuration, Collections.emptyMap()))
+                .isPresent();
+
+        configuration.set(BasicAuthOptions.BASIC_AUTH_PROVIDER, "ldap");
+        assertThatThrownBy(
+                        () ->
+                                new ServerBasicAuthHandlerFactory()
+                                        .createHandler(configuration, Collections.emptyMap()))
+                .isInstanceOf(ConfigurationException.class)
+                .hasMessageContaining("'ldap'")
+                .hasMessageContaining("file")
+                .hasMessageContaining("simulated-directory");
+    }
+
+    /** Reporter remembering the metrics it was opened with and whether it was closed. */
+    public static class CapturingReporter implements AuthenticationMetricsReporter {
+
+        private static final List<AuthenticationMetrics> opened = new CopyOnWriteArrayList<>();
+
+        private static final List<CapturingReporter> closed = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void open(AuthenticationMetrics metrics) {
+            opened.add(metrics);
+        }
+
+        @Override
+        public void close() {
+            closed.add(this);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.shaded.netty4.io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.DefaultFullHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.FullHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaderNames;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpMethod;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpVersion;
+
+import com.cloudera.flink.auth.CredentialStore;
+import com.cloudera.flink.auth.RequestPatterns;
+import com.cloudera.flink.auth.VerifiedCredentialCache;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Measures the memory allocated by the authentication of a request, which must not churn the young
+ * generation once the credentials are cached. The allocation counter of the JVM is used, so the
+ * test is skipped on JVMs which do not provide it.
+ */
+class ServerBasicHttpAuthenticatorAllocationTest {
+
+    private static final int WARMUP_ITERATIONS = 50_000;
+
+    private static final int ITERATIONS = 100_000;
+
+    /** Leaves room for the measurement itself and for allocations before compilation. */
+    private static final double MAX_BYTES_PER_OPERATION = 1.0;
+
+    @Test
+    void testCachedAuthenticationDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadBean = getThreadBean();
+        ServerBasicHttpAuthenticator authenticator =
+                ServerBasicHttpAuthenticator.builder(
+                                CredentialStore.of(
+                                        Collections.singletonMap(
+                                                "testusr",
+                                                "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/")),
+                                Collections.emptyMap())
+                        .setCache(new VerifiedCredentialCache(100, Duration.ofHours(1)))
+                        .setMaxHeaderLength(4096)
+                        .build();
+        EmbeddedChannel channel = new EmbeddedChannel(authenticator);
+        FullHttpRequest request =
+                new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/overview");
+        request.headers()
+                .set(
+                        HttpHeaderNames.AUTHORIZATION,
+                        "Basic "
+                                + Base64.getEncoder()
+                                        .encodeToString(
+                                                "testusr:testpwd"
+                                                        .getBytes(StandardCharsets.UTF_8)));
+
+        try {
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                authenticate(channel, request);
+            }
+            long threadId = Thread.currentThread().getId();
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ITERATIONS; i++) {
+                authenticate(channel, request);
+            }
+            long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+            assertThat((double) allocated / ITERATIONS).isLessThan(MAX_BYTES_PER_OPERATION);
+        } finally {
+            request.release();
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void testDecodingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadBean = getThreadBean();
+        CredentialStore store =
+                CredentialStore.of(
+                        Collections.singletonMap(
+                                "testusr", "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/"));
+        String header =
+                "Basic "
+                        + Base64.getEncoder()
+                                .encodeToString("testusr:testpwd".getBytes(StandardCharsets.UTF_8));
+        BasicCredentialsDecoder decoder = BasicCredentialsDecoder.get();
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            decode(decoder, store, header);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            decode(decoder, store, header);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertThat((double) allocated / ITERATIONS).isLessThan(MAX_BYTES_PER_OPERATION);
+    }
+
+    @Test
+    void testAllowlistMatchDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadBean = getThreadBean();
+        RequestPatterns patterns =
+                RequestPatterns.compile(
+                        Arrays.asList("GET /config", "GET,HEAD /assets/**", "/jobs/*/status"));
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            match(patterns);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            match(patterns);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertThat((double) allocated / ITERATIONS).isLessThan(MAX_BYTES_PER_OPERATION);
+    }
+
+    private static void match(RequestPatterns patterns) {
+        if (!patterns.matches("GET", "/assets/fonts/icons.woff?v=2")
+                || patterns.matches("GET", "/jobs/0123/vertices")) {
+            throw new AssertionError("Unexpected match result");
+        }
+    }
+
+    private static void authenticate(EmbeddedChannel channel, FullHttpRequest request) {
+        // The pipeline is used directly, writeInbound would allocate its varargs array. The
+        // handler takes over a reference to the request, which is reused
+        channel.pipeline().fireChannelRead(request.retain());
+        FullHttpRequest authenticated = channel.readInbound();
+        if (authenticated != request) {
+            throw new AssertionError("Request was not authenticated");
+        }
+        authenticated.release();
+    }
+
+    private static void decode(
+            BasicCredentialsDecoder decoder, CredentialStore store, String header) {
+        if (!decoder.decode(header) || decoder.lookupUser(store) == null) {
+            throw new AssertionError("Credentials were not decoded");
+        }
+        decoder.clear();
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean =
+                (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+        return allocationBean;
+    }
+}
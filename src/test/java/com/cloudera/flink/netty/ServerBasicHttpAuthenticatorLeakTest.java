@@ -0,0 +1,263 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.shaded.netty4.io.netty.buffer.ByteBuf;
+import org.apache.flink.shaded.netty4.io.netty.buffer.UnpooledByteBufAllocator;
+import org.apache.flink.shaded.netty4.io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.DefaultFullHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.DefaultHttpContent;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.DefaultHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.DefaultLastHttpContent;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.FullHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaderNames;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpMethod;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpVersion;
+import org.apache.flink.shaded.netty4.io.netty.util.ReferenceCountUtil;
+import org.apache.flink.shaded.netty4.io.netty.util.ResourceLeakDetector;
+
+import com.cloudera.flink.auth.AdmissionControl;
+import com.cloudera.flink.auth.CredentialProvider;
+import com.cloudera.flink.auth.CredentialRecord;
+import com.cloudera.flink.auth.CredentialStore;
+import com.cloudera.flink.auth.VerifiedCredentialCache;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that {@link ServerBasicHttpAuthenticator} releases every message it does not pass on, so
+ * that the direct memory of a long running JobManager does not grow with its rejected requests. The
+ * requests carry direct buffers of an allocator which counts the memory it has handed out, the
+ * count must drop to zero once the messages passed on have been released like the next handler
+ * does. The leak detector runs at its paranoid level, so that the log names the last accesses of a
+ * leaked buffer.
+ */
+class ServerBasicHttpAuthenticatorLeakTest {
+
+    private static final String HASH = "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/";
+
+    private static final int REQUESTS = 1000;
+
+    private static final byte[] BODY = new byte[4096];
+
+    private static ResourceLeakDetector.Level previousLevel;
+
+    private UnpooledByteBufAllocator allocator;
+
+    @BeforeAll
+    static void enableLeakDetection() {
+        previousLevel = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+    }
+
+    @AfterAll
+    static void restoreLeakDetection() {
+        ResourceLeakDetector.setLevel(previousLevel);
+    }
+
+    @BeforeEach
+    void setup() {
+        allocator = new UnpooledByteBufAllocator(true);
+    }
+
+    @AfterEach
+    void checkDirectMemory() {
+        assertThat(allocator.metric().usedDirectMemory()).isZero();
+    }
+
+    @Test
+    void testAcceptedAndRejectedRequestsAreReleased() {
+        ServerBasicHttpAuthenticator authenticator =
+                authenticator(CredentialStore.of(Collections.singletonMap("testusr", HASH)));
+        String[] authorizations = {
+            basic("testusr:testpwd"),
+            basic("testusr:wrongpwd"),
+            basic("unknown:testpwd"),
+            basic("testusr"),
+            "Bearer token",
+            null,
+        };
+        EmbeddedChannel channel = new EmbeddedChannel(authenticator);
+        for (int i = 0; i < REQUESTS; i++) {
+            if (!channel.isOpen()) {
+                channel = new EmbeddedChannel(authenticator);
+            }
+            // Every rejection closes the connection, the accepted requests keep it open
+            channel.writeInbound(request(authorizations[i % authorizations.length]));
+            drain(channel);
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testChunkedRequestsAreReleased() {
+        ServerBasicHttpAuthenticator authenticator =
+                authenticator(CredentialStore.of(Collections.singletonMap("testusr", HASH)));
+        for (int i = 0; i < REQUESTS; i++) {
+            EmbeddedChannel channel = new EmbeddedChannel(authenticator);
+            HttpRequest request =
+                    new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/jars/upload");
+            request.headers()
+                    .set(
+                            HttpHeaderNames.AUTHORIZATION,
+                            basic(i % 2 == 0 ? "testusr:testpwd" : "unknown:testpwd"));
+            // The pipeline is used directly, the contents of a read follow a rejection
+            channel.pipeline().fireChannelRead(request);
+            channel.pipeline().fireChannelRead(new DefaultHttpContent(content()));
+            channel.pipeline().fireChannelRead(new DefaultLastHttpContent(content()));
+            drain(channel);
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void testNonHttpMessagesAreReleased() {
+        EmbeddedChannel channel =
+                new EmbeddedChannel(
+                        authenticator(
+                                CredentialStore.of(Collections.singletonMap("testusr", HASH))));
+        for (int i = 0; i < REQUESTS; i++) {
+            channel.writeInbound(content());
+            drain(channel);
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testRequestsFailingWithAnExceptionAreReleased() {
+        CredentialProvider failing =
+                new CredentialProvider() {
+                    @Override
+                    public CredentialRecord getIfPresent(byte[] user, int offset, int length) {
+                        throw new IllegalStateException("Provider failure");
+                    }
+
+                    @Override
+                    public CompletableFuture<CredentialRecord> lookup(String user) {
+                        throw new IllegalStateException("Provider failure");
+                    }
+
+                    @Override
+                    public boolean isCurrent(CredentialRecord credentials) {
+                        return false;
+                    }
+                };
+        ServerBasicHttpAuthenticator authenticator = authenticator(failing);
+        // Every failure is logged, a few requests show a leak as well as many
+        for (int i = 0; i < 10; i++) {
+            EmbeddedChannel channel = new EmbeddedChannel(authenticator);
+            channel.writeInbound(request(basic("testusr:testpwd")));
+            drain(channel);
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    void testWaitingRequestsAreReleased() {
+        Queue<Runnable> verifications = new ArrayDeque<>();
+        Executor verificationExecutor = verifications::add;
+        ServerBasicHttpAuthenticator authenticator =
+                ServerBasicHttpAuthenticator.builder(
+                                CredentialStore.of(Collections.singletonMap("testusr", HASH)),
+                                Collections.emptyMap())
+                        .setVerificationExecutor(verificationExecutor)
+                        .setMaxHeaderLength(64)
+                        .setAdmission(new AdmissionControl(2, Duration.ofSeconds(1)))
+                        .build();
+        for (int i = 0; i < REQUESTS / 10; i++) {
+            EmbeddedChannel channel = new EmbeddedChannel(authenticator);
+            EmbeddedChannel shed = new EmbeddedChannel(authenticator);
+            EmbeddedChannel closed = new EmbeddedChannel(authenticator);
+            // The first two requests wait for their verification, the third one is shed
+            channel.writeInbound(request(basic("testusr:testpwd")));
+            closed.writeInbound(request(basic("testusr:wrongpwd")));
+            shed.writeInbound(request(basic("testusr:other")));
+            // Queued behind the waiting requests
+            channel.writeInbound(request(basic("testusr:testpwd")));
+            closed.writeInbound(content());
+            closed.close();
+
+            EmbeddedChannel[] channels = {channel, shed, closed};
+            Runnable verification;
+            while ((verification = verifications.poll()) != null) {
+                // Completing a verification replays the queued request, which waits once more
+                verification.run();
+                for (EmbeddedChannel connection : channels) {
+                    connection.runPendingTasks();
+                }
+            }
+            for (EmbeddedChannel connection : channels) {
+                drain(connection);
+                connection.finishAndReleaseAll();
+            }
+        }
+    }
+
+    /** Releases what the next handler and the client would have received. */
+    private static void drain(EmbeddedChannel channel) {
+        Object msg;
+        while ((msg = channel.readInbound()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+        channel.releaseOutbound();
+    }
+
+    private ServerBasicHttpAuthenticator authenticator(CredentialProvider credentials) {
+        return ServerBasicHttpAuthenticator.builder(credentials, Collections.emptyMap())
+                .setCache(new VerifiedCredentialCache(10, Duration.ofHours(1)))
+                .setMaxHeaderLength(64)
+                .build();
+    }
+
+    private FullHttpRequest request(@Nullable String authorization) {
+        FullHttpRequest request =
+                new DefaultFullHttpRequest(
+                        HttpVersion.HTTP_1_1, HttpMethod.POST, "/jars/upload", content());
+        if (authorization != null) {
+            request.headers().set(HttpHeaderNames.AUTHORIZATION, authorization);
+        }
+        return request;
+    }
+
+    private ByteBuf content() {
+        return allocator.directBuffer(BODY.length).writeBytes(BODY);
+    }
+
+    private static String basic(String credentials) {
+        return "Basic "
+                + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,737 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.flink.netty;
+
+import org.apache.flink.runtime.rest.FileUploadHandler;
+import org.apache.flink.runtime.rest.FlinkHttpObjectAggregator;
+import org.apache.flink.runtime.rest.handler.router.MultipartRoutes;
+
+import org.apache.flink.shaded.netty4.io.netty.buffer.ByteBuf;
+import org.apache.flink.shaded.netty4.io.netty.buffer.UnpooledByteBufAllocator;
+import org.apache.flink.shaded.netty4.io.netty.channel.ChannelHandlerContext;
+import org.apache.flink.shaded.netty4.io.netty.channel.ChannelInboundHandlerAdapter;
+import org.apache.flink.shaded.netty4.io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.DefaultFullHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.DefaultFullHttpResponse;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.FullHttpRequest;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.FullHttpResponse;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpHeaderNames;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpMethod;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpResponse;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpResponseStatus;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpServerCodec;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.HttpVersion;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.cookie.ClientCookieDecoder;
+import org.apache.flink.shaded.netty4.io.netty.handler.codec.http.cookie.Cookie;
+import org.apache.flink.shaded.netty4.io.netty.util.ReferenceCountUtil;
+
+import com.cloudera.flink.audit.AuthenticationAuditLog;
+import com.cloudera.flink.auth.AdmissionControl;
+import com.cloudera.flink.auth.AuthenticationThrottle;
+import com.cloudera.flink.auth.CachingCredentialProvider;
+import com.cloudera.flink.auth.CredentialProvider;
+import com.cloudera.flink.auth.CredentialRecord;
+import com.cloudera.flink.auth.CredentialStore;
+import com.cloudera.flink.auth.RequestPatterns;
+import com.cloudera.flink.auth.SessionTokens;
+import com.cloudera.flink.auth.VerifiedCredentialCache;
+import com.cloudera.flink.metrics.AuthenticationMetrics;
+import com.cloudera.flink.metrics.AuthenticationOutcome;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Tests for {@link ServerBasicHttpAuthenticator} driven through an {@link EmbeddedChannel}. */
+class ServerBasicHttpAuthenticatorTest {
+
+    private static final String HASH = "$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/";
+
+    private AuthenticationMetrics metrics;
+
+    private ServerBasicHttpAuthenticator authenticator;
+
+    private EmbeddedChannel channel;
+
+    @BeforeEach
+    void setup() {
+        metrics = new AuthenticationMetrics();
+        authenticator =
+                builder().setCache(new VerifiedCredentialCache(10, Duration.ofHours(1))).build();
+        channel = new EmbeddedChannel(authenticator);
+    }
+
+    /** A handler for the test user with a short header limit, reporting to {@link #metrics}. */
+    private ServerBasicHttpAuthenticator.Builder builder() {
+        return builder(CredentialStore.of(Collections.singletonMap("testusr", HASH)));
+    }
+
+    private ServerBasicHttpAuthenticator.Builder builder(CredentialProvider credentials) {
+        return ServerBasicHttpAuthenticator.builder(credentials, Collections.emptyMap())
+                .setMaxHeaderLength(64)
+                .setMetrics(metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testSuccessIsCounted() {
+        assertAuthenticated(basic("testusr:testpwd"));
+        assertAuthenticated(basic("testusr:testpwd"));
+
+        assertThat(metrics.getCount(AuthenticationOutcome.SUCCESS)).isEqualTo(2);
+        // The second request is served from the cache
+        assertThat(metrics.getHashCount()).isEqualTo(1);
+        assertThat(metrics.getHashLatencyMaxMicros()).isGreaterThan(0.0);
+    }
+
+    @Test
+    void testRejectionsAreCounted() {
+        assertRejected(null, AuthenticationOutcome.MISSING_HEADER);
+        assertRejected("Bearer token", AuthenticationOutcome.UNKNOWN_SCHEME);
+        assertRejected("Basic !!!", AuthenticationOutcome.MALFORMED_HEADER);
+        assertRejected(basic("testusr"), AuthenticationOutcome.MALFORMED_HEADER);
+        assertRejected(basic("testusr:" + repeat('x', 64)), AuthenticationOutcome.MALFORMED_HEADER);
+        assertRejected(basic("unknown:testpwd"), AuthenticationOutcome.UNKNOWN_USER);
+        assertRejected(basic("testusr:wrongpwd"), AuthenticationOutcome.INVALID_PASSWORD);
+
+        assertThat(metrics.getCount(AuthenticationOutcome.MALFORMED_HEADER)).isEqualTo(3);
+        assertThat(metrics.getCount(AuthenticationOutcome.SUCCESS)).isZero();
+        // Only the wrong password is hashed
+        assertThat(metrics.getHashCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testRejectionsWriteSharedResponses() {
+        FullHttpResponse first = reject(basic("unknown:testpwd"));
+        FullHttpResponse second = reject(basic("testusr:wrongpwd"));
+
+        for (FullHttpResponse response : Arrays.asList(first, second)) {
+            assertThat(response.status()).isEqualTo(HttpResponseStatus.UNAUTHORIZED);
+            assertThat(response.content().toString(StandardCharsets.UTF_8))
+                    .isEqualTo("{\"errors\":[\"Invalid credentials\"]}");
+            assertThat(response.headers().get(HttpHeaderNames.WWW_AUTHENTICATE))
+                    .isEqualTo("Basic realm=\"flink\"");
+            assertThat(response.headers().getInt(HttpHeaderNames.CONTENT_LENGTH))
+                    .isEqualTo(response.content().readableBytes());
+            assertThat(response.content().isReadOnly()).isTrue();
+        }
+        // Both are views of the same serialized body
+        assertThat(first.content().memoryAddress()).isEqualTo(second.content().memoryAddress());
+        assertThat(channel.isOpen()).isFalse();
+    }
+
+    @Test
+    void testConnectionRemembersAuthentication(@TempDir Path tempDir) throws IOException {
+        Path passwordFile = tempDir.resolve("passwords");
+        Files.write(passwordFile, Collections.singletonList("testusr:" + HASH));
+        CredentialStore store = CredentialStore.load(passwordFile);
+        channel.finishAndReleaseAll();
+        authenticator = builder(store).build();
+        channel = new EmbeddedChannel(authenticator);
+
+        assertAuthenticated(basic("testusr:testpwd"));
+        assertAuthenticated(basic("testusr:testpwd"));
+        assertThat(metrics.getHashCount()).isEqualTo(1);
+
+        // Another header on the same connection is verified again
+        assertRejected(basic("testusr:wrongpwd"), AuthenticationOutcome.INVALID_PASSWORD);
+        assertThat(metrics.getHashCount()).isEqualTo(2);
+
+        // A new connection is verified again
+        channel = new EmbeddedChannel(authenticator);
+        assertAuthenticated(basic("testusr:testpwd"));
+        assertAuthenticated(basic("testusr:testpwd"));
+        assertThat(metrics.getHashCount()).isEqualTo(3);
+
+        // A changed password is verified again
+        Files.write(passwordFile, Collections.singletonList("testusr:{SHA}" + sha1("testpwd")));
+        assertThat(store.reloadIfModified(true)).isTrue();
+        assertAuthenticated(basic("testusr:testpwd"));
+        assertThat(metrics.getHashCount()).isEqualTo(4);
+    }
+
+    @Test
+    void testConcurrentIdenticalRequestsAreVerifiedOnce() throws Exception {
+        int requests = 8;
+        CountDownLatch allReceived = new CountDownLatch(requests);
+        ExecutorService verificationExecutor = Executors.newSingleThreadExecutor();
+        ExecutorService clients = Executors.newFixedThreadPool(requests);
+        // Holds back the verification until every request has arrived
+        verificationExecutor.execute(
+                () -> {
+                    try {
+                        allReceived.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        // Flink creates a handler for every connection, the handlers share the verifications
+        VerificationFlights flights = new VerificationFlights();
+        VerifiedCredentialCache cache = VerifiedCredentialCache.disabled();
+
+        List<Future<EmbeddedChannel>> connections = new ArrayList<>();
+        List<FullHttpRequest> sent = new ArrayList<>();
+        try {
+            for (int i = 0; i < requests; i++) {
+                FullHttpRequest request = request(basic("testusr:testpwd"));
+                sent.add(request);
+                connections.add(
+                        clients.submit(
+                                () -> {
+                                    EmbeddedChannel connection =
+                                            new EmbeddedChannel(
+                                                    builder()
+                                                            .setVerificationExecutor(
+                                                                    verificationExecutor)
+                                                            .setCache(cache)
+                                                            .setVerificationFlights(flights)
+                                                            .build());
+                                    connection.writeInbound(request);
+                                    allReceived.countDown();
+                                    return connection;
+                                }));
+            }
+            List<EmbeddedChannel> channels = new ArrayList<>();
+            for (Future<EmbeddedChannel> connection : connections) {
+                channels.add(connection.get(10, TimeUnit.SECONDS));
+            }
+            verificationExecutor.shutdown();
+            assertThat(verificationExecutor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+            for (int i = 0; i < requests; i++) {
+                EmbeddedChannel connection = channels.get(i);
+                // Every waiting request is completed on the event loop of its own channel
+                connection.runPendingTasks();
+                Object read = connection.readInbound();
+                assertThat(read).isSameAs(sent.get(i));
+                ReferenceCountUtil.release(read);
+                connection.finishAndReleaseAll();
+            }
+        } finally {
+            clients.shutdownNow();
+            verificationExecutor.shutdownNow();
+        }
+
+        assertThat(metrics.getCount(AuthenticationOutcome.SUCCESS)).isEqualTo(requests);
+        assertThat(metrics.getHashCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testFloodOfBadCredentialsIsThrottledBeforeHashing() {
+        int burst = 5;
+        int flood = 2000;
+        channel.finishAndReleaseAll();
+        authenticator =
+                builder()
+                        .setCache(new VerifiedCredentialCache(10, Duration.ofHours(1)))
+                        .setThrottle(
+                                new AuthenticationThrottle(
+                                        burst, Duration.ofHours(1), 0, Duration.ofHours(1), 100))
+                        .build();
+        channel = new EmbeddedChannel(authenticator);
+        assertAuthenticated(basic("testusr:testpwd"));
+
+        for (int i = 0; i < burst; i++) {
+            assertRejected(basic("testusr:wrongpwd"), AuthenticationOutcome.INVALID_PASSWORD);
+        }
+        for (int i = 0; i < flood; i++) {
+            assertRejected(
+                    basic("testusr:wrongpwd" + i),
+                    AuthenticationOutcome.THROTTLED,
+                    HttpResponseStatus.TOO_MANY_REQUESTS);
+        }
+
+        // However long the flood lasts, only the burst has been hashed
+        assertThat(metrics.getHashCount()).isEqualTo(1 + burst);
+        assertThat(metrics.getCount(AuthenticationOutcome.THROTTLED)).isEqualTo(flood);
+
+        assertThat(reject(basic("testusr:wrongpwd")).headers().get(HttpHeaderNames.RETRY_AFTER))
+                .isEqualTo("3600");
+
+        // Cached credentials are not throttled
+        channel.finishAndReleaseAll();
+        channel = new EmbeddedChannel(authenticator);
+        assertAuthenticated(basic("testusr:testpwd"));
+    }
+
+    @Test
+    void testSessionCookieSkipsVerification() {
+        channel.finishAndReleaseAll();
+        authenticator =
+                builder()
+                        .setSessionTokens(SessionTokens.withRandomKey(Duration.ofMinutes(15)))
+                        .build();
+        channel = new EmbeddedChannel(authenticator);
+
+        assertAuthenticated(basic("testusr:testpwd"));
+        channel.writeOutbound(
+                new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+        HttpResponse response = channel.readOutbound();
+        Cookie cookie =
+                ClientCookieDecoder.STRICT.decode(
+                        response.headers().get(HttpHeaderNames.SET_COOKIE));
+        assertThat(cookie.name()).isEqualTo(SessionCookie.NAME);
+        assertThat(cookie.isHttpOnly()).isTrue();
+        assertThat(cookie.maxAge()).isEqualTo(Duration.ofMinutes(15).getSeconds());
+        ReferenceCountUtil.release(response);
+
+        // Only the response to the authenticating request carries the cookie
+        channel.writeOutbound(
+                new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+        response = channel.readOutbound();
+        assertThat(response.headers().contains(HttpHeaderNames.SET_COOKIE)).isFalse();
+        ReferenceCountUtil.release(response);
+
+        String cookieHeader = "other=value; " + SessionCookie.NAME + "=" + cookie.value();
+        FullHttpRequest request = request(null);
+        request.headers().set(HttpHeaderNames.COOKIE, cookieHeader);
+        channel.writeInbound(request);
+        Object read = channel.readInbound();
+        assertThat(read).isSameAs(request);
+        ReferenceCountUtil.release(read);
+        assertThat(metrics.getCount(AuthenticationOutcome.SUCCESS)).isEqualTo(2);
+        assertThat(metrics.getHashCount()).isEqualTo(1);
+
+        // The authorization header of another user takes precedence over the cookie
+        request = request(basic("unknown:testpwd"));
+        request.headers().set(HttpHeaderNames.COOKIE, cookieHeader);
+        channel.writeInbound(request);
+        assertThat((Object) channel.readInbound()).isNull();
+        assertThat(metrics.getCount(AuthenticationOutcome.UNKNOWN_USER)).isEqualTo(1);
+        channel.releaseOutbound();
+
+        // A tampered cookie is ignored
+        channel = new EmbeddedChannel(authenticator);
+        request = request(null);
+        request.headers().set(HttpHeaderNames.COOKIE, SessionCookie.NAME + "=x" + cookie.value());
+        channel.writeInbound(request);
+        assertThat((Object) channel.readInbound()).isNull();
+        assertThat(metrics.getCount(AuthenticationOutcome.MISSING_HEADER)).isEqualTo(1);
+        channel.releaseOutbound();
+    }
+
+    @Test
+    void testSessionIsOnlyIssuedAfterPasswordVerification() {
+        channel.finishAndReleaseAll();
+        authenticator =
+                builder()
+                        .setCache(new VerifiedCredentialCache(10, Duration.ofHours(1)))
+                        .setSessionTokens(SessionTokens.withRandomKey(Duration.ofMinutes(15)))
+                        .build();
+        channel = new EmbeddedChannel(authenticator);
+
+        assertAuthenticated(basic("testusr:testpwd"));
+        // The cookie skips the 100 Continue and goes with the final response
+        channel.writeOutbound(
+                new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+        HttpResponse response = channel.readOutbound();
+        assertThat(response.headers().contains(HttpHeaderNames.SET_COOKIE)).isFalse();
+        ReferenceCountUtil.release(response);
+        channel.writeOutbound(
+                new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+        response = channel.readOutbound();
+        assertThat(response.headers().contains(HttpHeaderNames.SET_COOKIE)).isTrue();
+        ReferenceCountUtil.release(response);
+        channel.finishAndReleaseAll();
+
+        // Like Flink's client, the next request comes on a new connection without the cookie
+        channel = new EmbeddedChannel(authenticator);
+        assertAuthenticated(basic("testusr:testpwd"));
+        channel.writeOutbound(
+                new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+        response = channel.readOutbound();
+        assertThat(response.headers().contains(HttpHeaderNames.SET_COOKIE)).isFalse();
+        ReferenceCountUtil.release(response);
+        assertThat(metrics.getHashCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testSlowProviderDoesNotBlockTheEventLoop() {
+        CredentialStore directory = CredentialStore.of(Collections.singletonMap("testusr", HASH));
+        List<CompletableFuture<Map<String, CredentialRecord>>> roundTrips = new ArrayList<>();
+        CachingCredentialProvider provider =
+                new CachingCredentialProvider(
+                        users -> {
+                            CompletableFuture<Map<String, CredentialRecord>> roundTrip =
+                                    new CompletableFuture<>();
+                            roundTrips.add(roundTrip);
+                            return roundTrip;
+                        },
+                        10,
+                        Duration.ofHours(1),
+                        10,
+                        1,
+                        Duration.ofHours(1));
+        authenticator = builder(provider).build();
+        channel = new EmbeddedChannel(authenticator);
+        FullHttpRequest first = request(basic("testusr:testpwd"));
+        FullHttpRequest second = request(basic("testusr:testpwd"));
+
+        channel.writeInbound(first);
+        channel.writeInbound(second);
+
+        // Both requests wait for the lookup while the event loop is free
+        assertThat((Object) channel.readInbound()).isNull();
+        assertThat(channel.config().isAutoRead()).isFalse();
+        assertThat(roundTrips).hasSize(1);
+
+        roundTrips
+                .get(0)
+                .complete(Collections.singletonMap("testusr", directory.getCredentials("testusr")));
+        channel.runPendingTasks();
+
+        for (FullHttpRequest sent : Arrays.asList(first, second)) {
+            Object read = channel.readInbound();
+            assertThat(read).isSameAs(sent);
+            ReferenceCountUtil.release(read);
+        }
+        assertThat(channel.config().isAutoRead()).isTrue();
+        assertThat(metrics.getCount(AuthenticationOutcome.SUCCESS)).isEqualTo(2);
+        // The second request finds the looked up credentials in the provider
+        assertThat(provider.getLookupCount()).isEqualTo(1);
+
+        channel.writeInbound(request(basic("unknown:testpwd")));
+        roundTrips.get(1).completeExceptionally(new IOException("Directory unavailable"));
+        channel.runPendingTasks();
+
+        HttpResponse response = channel.readOutbound();
+        assertThat(response.status()).isEqualTo(HttpResponseStatus.SERVICE_UNAVAILABLE);
+        assertThat(metrics.getCount(AuthenticationOutcome.ERROR)).isEqualTo(1);
+        channel.releaseOutbound();
+    }
+
+    @Test
+    void testPendingAuthenticationsAreBounded() {
+        Map<String, String> users = new HashMap<>();
+        users.put("testusr", HASH);
+        users.put("other", HASH);
+        CredentialStore directory = CredentialStore.of(users);
+        List<CompletableFuture<Map<String, CredentialRecord>>> roundTrips = new ArrayList<>();
+        CachingCredentialProvider provider =
+                new CachingCredentialProvider(
+                        lookedUp -> {
+                            CompletableFuture<Map<String, CredentialRecord>> roundTrip =
+                                    new CompletableFuture<>();
+                            roundTrips.add(roundTrip);
+                            return roundTrip;
+                        },
+                        10,
+                        Duration.ofHours(1),
+                        10,
+                        10,
+                        Duration.ofHours(1));
+        AdmissionControl admission = new AdmissionControl(1, Duration.ofMillis(1500));
+        metrics.setPendingAuthentications(admission::getPending);
+        authenticator =
+                builder(provider)
+                        .setCache(new VerifiedCredentialCache(10, Duration.ofHours(1)))
+                        .setAdmission(admission)
+                        .build();
+        channel = new EmbeddedChannel(authenticator);
+        channel.writeInbound(request(basic("testusr:testpwd")));
+        roundTrips
+                .get(0)
+                .complete(Collections.singletonMap("testusr", directory.getCredentials("testusr")));
+        channel.runPendingTasks();
+        ReferenceCountUtil.release(channel.readInbound());
+        assertThat(metrics.getPendingAuthentications()).isZero();
+
+        EmbeddedChannel waiting = new EmbeddedChannel(authenticator);
+        FullHttpRequest waitingRequest = request(basic("other:testpwd"));
+        waiting.writeInbound(waitingRequest);
+        assertThat((Object) waiting.readInbound()).isNull();
+        assertThat(metrics.getPendingAuthentications()).isEqualTo(1);
+
+        // The login storm is shed without waiting
+        FullHttpResponse shed = reject(basic("unknown:testpwd"));
+        assertThat(shed.status()).isEqualTo(HttpResponseStatus.SERVICE_UNAVAILABLE);
+        assertThat(shed.headers().get(HttpHeaderNames.RETRY_AFTER)).isEqualTo("2");
+        assertThat(metrics.getCount(AuthenticationOutcome.OVERLOADED)).isEqualTo(1);
+
+        // Cached credentials take the fast lane
+        channel = new EmbeddedChannel(authenticator);
+        assertAuthenticated(basic("testusr:testpwd"));
+        assertThat(metrics.getHashCount()).isEqualTo(1);
+
+        roundTrips
+                .get(1)
+                .complete(Collections.singletonMap("other", directory.getCredentials("other")));
+        waiting.runPendingTasks();
+        Object read = waiting.readInbound();
+        assertThat(read).isSameAs(waitingRequest);
+        ReferenceCountUtil.release(read);
+        assertThat(metrics.getPendingAuthentications()).isZero();
+        assertThat(metrics.getCount(AuthenticationOutcome.SUCCESS)).isEqualTo(3);
+        waiting.finishAndReleaseAll();
+    }
+
+    @Test
+    void testLoginsAndRejectionsAreAudited() {
+        List<String> records = new ArrayList<>();
+        AuthenticationAuditLog auditLog =
+                new AuthenticationAuditLog(16, Duration.ofHours(1), records::addAll);
+        channel.finishAndReleaseAll();
+        authenticator =
+                builder()
+                        .setCache(new VerifiedCredentialCache(10, Duration.ofHours(1)))
+                        .setAuditLog(auditLog)
+                        .build();
+        List<Integer> auditedOnArrival = new ArrayList<>();
+        channel =
+                new EmbeddedChannel(
+                        authenticator,
+                        new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                // The request is no longer the authenticator's to read
+                                auditLog.drain(System.nanoTime());
+                                auditedOnArrival.add(records.size());
+                                ctx.fireChannelRead(msg);
+                            }
+                        });
+
+        assertAuthenticated(basic("testusr:testpwd"));
+        assertThat(auditedOnArrival).containsExactly(1);
+        // Requests authenticated by a login are not audited
+        assertAuthenticated(basic("testusr:testpwd"));
+        assertRejected(basic("testusr:wrongpwd"), AuthenticationOutcome.INVALID_PASSWORD);
+        assertRejected(null, AuthenticationOutcome.MISSING_HEADER);
+        auditLog.drain(System.nanoTime());
+
+        assertThat(records).hasSize(3);
+        assertThat(records.get(0)).contains(" outcome=success user=testusr ");
+        assertThat(records.get(1)).contains(" outcome=invalidPassword user=testusr ");
+        assertThat(records.get(2)).contains(" outcome=missingHeader user=- ");
+        assertThat(records).allMatch(record -> record.contains(" path=/overview "));
+    }
+
+    @Test
+    void testUnauthenticatedUploadIsRejectedBeforeItsBodyIsBuffered(@TempDir Path uploadDir) {
+        channel.finishAndReleaseAll();
+        // The pipeline of the REST endpoint, which adds the authenticator behind the aggregator
+        channel =
+                new EmbeddedChannel(
+                        new HttpServerCodec(),
+                        new FileUploadHandler(
+                                uploadDir,
+                                new MultipartRoutes.Builder()
+                                        .addPostRoute("/jars/upload")
+                                        .addFileUploadRoute("/jars/upload")
+                                        .build()),
+                        new FlinkHttpObjectAggregator(Integer.MAX_VALUE, Collections.emptyMap()),
+                        authenticator);
+        UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(false);
+        channel.config().setAllocator(allocator);
+        assertThat(channel.pipeline().names().get(1))
+                .isEqualTo(channel.pipeline().context(authenticator).name());
+
+        long bodyLength = 64L * 1024 * 1024;
+        String head =
+                "POST /jars/upload HTTP/1.1\r\n"
+                        + "Host: localhost\r\n"
+                        + "Content-Type: multipart/form-data; boundary=boundary\r\n"
+                        + "Content-Length: "
+                        + bodyLength
+                        + "\r\n\r\n"
+                        + "--boundary\r\n"
+                        + "Content-Disposition: form-data; name=\"jarfile\"; filename=\"job.jar\"\r\n"
+                        + "Content-Type: application/java-archive\r\n\r\n";
+        byte[] chunk = new byte[1024 * 1024];
+        // The first read holds the head and the start of the body
+        channel.writeInbound(
+                allocator
+                        .heapBuffer(head.length() + chunk.length)
+                        .writeBytes(head.getBytes(StandardCharsets.US_ASCII))
+                        .writeBytes(chunk));
+        long sent = chunk.length;
+        long maxUsedMemory = allocator.metric().usedHeapMemory();
+        while (channel.isOpen() && sent < bodyLength) {
+            channel.writeInbound(allocator.heapBuffer(chunk.length).writeBytes(chunk));
+            sent += chunk.length;
+            maxUsedMemory = Math.max(maxUsedMemory, allocator.metric().usedHeapMemory());
+        }
+
+        ByteBuf response = channel.readOutbound();
+        assertThat(response.toString(StandardCharsets.US_ASCII)).startsWith("HTTP/1.1 401");
+        response.release();
+        channel.releaseOutbound();
+        // The connection is closed after the first read, its body is never handed on
+        assertThat(channel.isOpen()).isFalse();
+        assertThat(sent).isEqualTo(chunk.length);
+        assertThat(maxUsedMemory).isLessThanOrEqualTo(2L * chunk.length);
+        assertThat(uploadDir.toFile().list()).isEmpty();
+        assertThat(metrics.getCount(AuthenticationOutcome.MISSING_HEADER)).isEqualTo(1);
+        channel.finishAndReleaseAll();
+        assertThat(allocator.metric().usedHeapMemory()).isZero();
+    }
+
+    @Test
+    void testAllowlistedRequestsSkipAuthentication() {
+        channel.finishAndReleaseAll();
+        authenticator =
+                builder()
+                        .setUnauthenticatedRequests(
+                                RequestPatterns.compile(Collections.singletonList("GET /overview")))
+                        .build();
+        channel = new EmbeddedChannel(authenticator);
+
+        FullHttpRequest request = request(null);
+        channel.writeInbound(request);
+        Object read = channel.readInbound();
+        assertThat(read).isSameAs(request);
+        ReferenceCountUtil.release(read);
+        assertThat(metrics.getHashCount()).isZero();
+
+        // Other methods of the same path still require authentication
+        request = request(null);
+        request.setMethod(HttpMethod.POST);
+        channel.writeInbound(request);
+        assertThat((Object) channel.readInbound()).isNull();
+        assertThat(metrics.getCount(AuthenticationOutcome.MISSING_HEADER)).isEqualTo(1);
+        channel.releaseOutbound();
+    }
+
+    @Test
+    void testPermissionsAreEnforced(@TempDir Path tempDir) throws IOException {
+        channel.finishAndReleaseAll();
+        Path passwordFile = tempDir.resolve("htpasswd");
+        Files.write(
+                passwordFile,
+                ("testusr:" + HASH + ":GET /overview").getBytes(StandardCharsets.UTF_8));
+        authenticator =
+                builder(CredentialStore.load(passwordFile))
+                        .setCache(new VerifiedCredentialCache(10, Duration.ofHours(1)))
+                        .build();
+        channel = new EmbeddedChannel(authenticator);
+
+        assertAuthenticated(basic("testusr:testpwd"));
+        FullHttpRequest request = request(basic("testusr:testpwd"));
+        request.setMethod(HttpMethod.DELETE);
+        channel.writeInbound(request);
+
+        assertThat((Object) channel.readInbound()).isNull();
+        HttpResponse response = channel.readOutbound();
+        assertThat(response.status()).isEqualTo(HttpResponseStatus.FORBIDDEN);
+        assertThat(response.headers().contains(HttpHeaderNames.WWW_AUTHENTICATE)).isFalse();
+        assertThat(metrics.getCount(AuthenticationOutcome.FORBIDDEN)).isEqualTo(1);
+        assertThat(metrics.getCount(AuthenticationOutcome.SUCCESS)).isEqualTo(1);
+        assertThat(metrics.getHashCount()).isEqualTo(1);
+        channel.releaseOutbound();
+    }
+
+    private void assertAuthenticated(String authorization) {
+        FullHttpRequest request = request(authorization);
+        channel.writeInbound(request);
+        Object read = channel.readInbound();
+        assertThat(read).isSameAs(request);
+        ReferenceCountUtil.release(read);
+    }
+
+    private void assertRejected(@Nullable String authorization, AuthenticationOutcome outcome) {
+        assertRejected(authorization, outcome, HttpResponseStatus.UNAUTHORIZED);
+    }
+
+    private void assertRejected(
+            @Nullable String authorization,
+            AuthenticationOutcome outcome,
+            HttpResponseStatus status) {
+        long before = metrics.getCount(outcome);
+        if (!channel.isOpen()) {
+            channel = new EmbeddedChannel(authenticator);
+        }
+        channel.writeInbound(request(authorization));
+
+        assertThat((Object) channel.readInbound()).isNull();
+        HttpResponse response = channel.readOutbound();
+        assertThat(response.status()).isEqualTo(status);
+        assertThat(metrics.getCount(outcome)).isEqualTo(before + 1);
+        channel.releaseOutbound();
+    }
+
+    private FullHttpResponse reject(String authorization) {
+        channel = new EmbeddedChannel(authenticator);
+        channel.writeInbound(request(authorization));
+        FullHttpResponse response = channel.readOutbound();
+        assertThat((Object) channel.readOutbound()).isNull();
+        channel.finishAndReleaseAll();
+        return response;
+    }
+
+    private static FullHttpRequest request(@Nullable String authorization) {
+        FullHttpRequest request =
+                new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/overview");
+        if (authorization != null) {
+            request.headers().set(HttpHeaderNames.AUTHORIZATION, authorization);
+        }
+        return request;
+    }
+
+    private static String basic(String credentials) {
+        return "Basic "
+                + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha1(String password) {
+        try {
+            return Base64.getEncoder()
+                    .encodeToString(
+                            MessageDigest.getInstance("SHA-1")
+                                    .digest(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to Cloudera, Inc. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flink.runtime.rest;
+
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.configuration.RestOptions;
+import org.apache.flink.core.testutils.CommonTestUtils;
+import org.apache.flink.runtime.rest.messages.EmptyResponseBody;
+import org.apache.flink.runtime.rest.util.TestRestServerEndpoint;
+import org.apache.flink.runtime.rpc.RpcUtils;
+import org.apache.flink.runtime.webmonitor.RestfulGateway;
+import org.apache.flink.runtime.webmonitor.TestingRestfulGateway;
+import org.apache.flink.testutils.TestingUtils;
+import org.apache.flink.testutils.executor.TestExecutorExtension;
+
+import com.cloudera.flink.config.BasicAuthOptions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.Objects.requireNonNull;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** This test validates that asynchronous verification does not delay unrelated requests. */
+class RestBasicAuthAsyncVerificationTest {
+
+    @RegisterExtension
+    static final TestExecutorExtension<ScheduledExecutorService> EXECUTOR_RESOURCE =
+            TestingUtils.defaultExecutorExtension();
+
+    /** bcrypt with cost 12, a verification takes hundreds of milliseconds. */
+    private static final String SLOW_HASH =
+            "$2a$12$k42ZFHFWqBp3vWli.nIn8uYyIkbvYRvodzbfbK18SSsY.CsIQPlxO";
+
+    private static final int SLOW_REQUESTS = 6;
+
+    @TempDir static Path tempDir;
+
+    private static String passwordFile;
+
+    private static RestServerEndpoint serverEndpoint;
+    private static RestServerEndpointITCase.TestVersionHandler testVersionHandler;
+
+    @BeforeAll
+    static void init() throws Exception {
+        // A password file of its own, so that the metrics of this endpoint can be read
+        Path htpasswd = tempDir.resolve("htpasswd");
+        Files.write(
+                htpasswd,
+                ("testusr:$apr1$w7MhlTpg$r1Lx2b8S21.Y97ohCvNTj/\nslowusr:" + SLOW_HASH)
+                        .getBytes(StandardCharsets.UTF_8));
+        passwordFile = htpasswd.toString();
+
+        Configuration serverConfig = getConfig();
+        serverConfig.set(BasicAuthOptions.BASIC_AUTH_VERIFICATION_ASYNC, true);
+        serverConfig.set(BasicAuthOptions.BASIC_AUTH_VERIFICATION_THREADS, 1);
+        serverConfig.set(BasicAuthOptions.BASIC_AUTH_VERIFICATION_QUEUE_SIZE, SLOW_REQUESTS);
+
+        RestfulGateway restfulGateway = new TestingRestfulGateway.Builder().build();
+        testVersionHandler =
+                new RestServerEndpointITCase.TestVersionHandler(
+                        () -> CompletableFuture.completedFuture(restfulGateway),
+                        RpcUtils.INF_TIMEOUT);
+
+        serverEndpoint =
+                TestRestServerEndpoint.builder(serverConfig)
+                        .withHandler(testVersionHandler.getMessageHeaders(), testVersionHandler)
+                        .build();
+        serverEndpoint.start();
+    }
+
+    @AfterAll
+    static void teardown() throws Exception {
+        if (serverEndpoint != null) {
+            serverEndpoint.closeAsync().get();
+        }
+    }
+
+    @Test
+    void testUnrelatedRequestsAreNotDelayedWhileHashing() throws Exception {
+        Configuration goodCredsConf = getConfig();
+        goodCredsConf.set(BasicAuthOptions.BASIC_AUTH_CLIENT_CREDENTIALS, "testusr:testpwd");
+
+        List<RestClient> slowClients = new ArrayList<>();
+        try (RestClient goodClient =
+                new RestClient(goodCredsConf, EXECUTOR_RESOURCE.getExecutor())) {
+            // Verified once, then served from the cache on the event loop
+            sendRequest(goodClient).get();
+
+            // Every slow request has a password of its own, so none shares another's hashing
+            List<CompletableFuture<EmptyResponseBody>> slowRequests = new ArrayList<>();
+            for (int i = 0; i < SLOW_REQUESTS; i++) {
+                Configuration slowCredsConf = getConfig();
+                slowCredsConf.set(
+                        BasicAuthOptions.BASIC_AUTH_CLIENT_CREDENTIALS, "slowusr:wrongpwd" + i);
+                RestClient slowClient =
+                        new RestClient(slowCredsConf, EXECUTOR_RESOURCE.getExecutor());
+                slowClients.add(slowClient);
+                slowRequests.add(sendRequest(slowClient));
+            }
+            // The verification thread is hashing while at least two requests wait for it
+            CommonTestUtils.waitUntilIgnoringExceptions(
+                    () -> getPendingAuthentications() >= 3,
+                    Duration.ofSeconds(30),
+                    Duration.ofMillis(10),
+                    "Slow requests did not wait for their verification");
+
+            sendRequest(goodClient).get();
+            assertFalse(
+                    slowRequests.stream().allMatch(CompletableFuture::isDone),
+                    "Unrelated request was delayed until all hashing finished");
+
+            for (CompletableFuture<EmptyResponseBody> slowRequest : slowRequests) {
+                ExecutionException ee = assertThrows(ExecutionException.class, slowRequest::get);
+                assertTrue(ee.getCause().getMessage().contains("Invalid credentials"));
+            }
+        } finally {
+            for (RestClient slowClient : slowClients) {
+                slowClient.close();
+            }
+        }
+    }
+
+    private static int getPendingAuthentications() {
+        try {
+            ObjectName name =
+                    new ObjectName(
+                            "com.cloudera.flink:type=BasicAuthentication,passwordFile="
+                                    + ObjectName.quote(passwordFile));
+            return (Integer)
+                    ManagementFactory.getPlatformMBeanServer()
+                            .getAttribute(name, "PendingAuthentications");
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static CompletableFuture<EmptyResponseBody> sendRequest(RestClient restClient)
+            throws Exception {
+        InetSocketAddress serverAddress = requireNonNull(serverEndpoint.getServerAddress());
+        return restClient.sendRequest(
+                serverAddress.getHostString(),
+                serverAddress.getPort(),
+                testVersionHandler.getMessageHeaders());
+    }
+
+    private static Configuration getConfig() {
+        final Configuration conf = new Configuration();
+        conf.setString(RestOptions.BIND_PORT, "0");
+        conf.setString(RestOptions.ADDRESS, "localhost");
+        conf.set(BasicAuthOptions.BASIC_AUTH_ENABLED, true);
+        conf.set(BasicAuthOptions.BASIC_AUTH_PWD_FILE, passwordFile);
+        return conf;
+    }
+}
@@ -33,6 +33,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
 import java.net.InetSocketAddress;
+import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
@@ -109,6 +110,29 @@ class RestBasicAuthTest {
         }
     }
 
+    @Test
+    void testAuthOversizedHeader() throws Exception {
+        char[] password = new char[4096];
+        Arrays.fill(password, 'x');
+        Configuration oversizedCredsConf = getConfig();
+        oversizedCredsConf.set(
+                BasicAuthOptions.BASIC_AUTH_CLIENT_CREDENTIALS, "testusr:" + new String(password));
+        try (RestClient restClientWithOversizedCredentials =
+                new RestClient(oversizedCredsConf, EXECUTOR_RESOURCE.getExecutor())) {
+            InetSocketAddress serverAddress = serverEndpoint.getServerAddress();
+            assertNotNull(serverAddress);
+            restClientWithOversizedCredentials
+                    .sendRequest(
+                            serverAddress.getHostString(),
+                            serverAddress.getPort(),
+                            testVersionHandler.getMessageHeaders())
+                    .get();
+            fail();
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause().getMessage().contains("Authorization header too large"));
+        }
+    }
+
     private static Configuration getConfig() {
         final Configuration conf = new Configuration();
         conf.setString(RestOptions.BIND_PORT, "0");